@@ -0,0 +1,48 @@
+package com.thynkah.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Small shared pool for OpenAI response handling. Requests waiting on the API hold
+ * no thread at all, so a handful of threads is enough for hundreds of in-flight
+ * questions, as long as nothing blocks on them.
+ * <p>
+ * The retrieval that follows an embedding (shard loads, scoring, note fetches) blocks
+ * on the database, so it runs on its own bounded pool, sized below the connection pool.
+ * When its queue is full new work is rejected (the request fails) instead of piling up.
+ */
+@Configuration
+public class AiExecutorConfig {
+
+    @Bean(name = "aiExecutor", destroyMethod = "shutdown")
+    public ExecutorService aiExecutor(@Value("${thynkah.ai.worker-threads:4}") int threads) {
+        return Executors.newFixedThreadPool(Math.max(1, threads), daemonThreads("ai-worker-"));
+    }
+
+    @Bean(name = "dbExecutor", destroyMethod = "shutdown")
+    public ExecutorService dbExecutor(@Value("${thynkah.db.worker-threads:8}") int threads,
+                                      @Value("${thynkah.db.queue-size:1000}") int queueSize) {
+        int n = Math.max(1, threads);
+        return new ThreadPoolExecutor(n, n, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueSize)), daemonThreads("db-worker-"));
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger n = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, prefix + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+}
@@ -0,0 +1,90 @@
+package com.thynkah.config;
+
+import com.thynkah.repository.PromptRepository;
+import com.thynkah.service.AiScheduler;
+import com.thynkah.service.EmbeddingStore;
+import com.thynkah.service.NoteService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replays the most frequent recent /ask questions once the instance is ready: the top
+ * thynkah.prewarm.questions get their embedding cached, the top thynkah.prewarm.answers of
+ * those are also answered into the answer cache. Everything runs at background priority
+ * and does not hold up readiness; calls shed by the scheduler are simply skipped.
+ */
+@Component
+public class QuestionCacheWarmup {
+
+    private static final Logger log = LoggerFactory.getLogger(QuestionCacheWarmup.class);
+
+    private final PromptRepository prompts;
+    private final NoteService noteService;
+    private final EmbeddingStore embeddingStore;
+
+    @Value("${thynkah.prewarm.days:7}")
+    private int days;
+
+    @Value("${thynkah.prewarm.questions:50}")
+    private int questions;
+
+    @Value("${thynkah.prewarm.answers:10}")
+    private int answers;
+
+    public QuestionCacheWarmup(PromptRepository prompts, NoteService noteService, EmbeddingStore embeddingStore) {
+        this.prompts = prompts;
+        this.noteService = noteService;
+        this.embeddingStore = embeddingStore;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warm() {
+        if (questions <= 0) {
+            return;
+        }
+        List<Object[]> frequent;
+        try {
+            frequent = prompts.findFrequentQuestions("ask", LocalDateTime.now().minusDays(days),
+                    PageRequest.of(0, questions));
+        } catch (RuntimeException e) {
+            log.warn("Question cache warm-up skipped: {}", e.getMessage());
+            return;
+        }
+        if (frequent.isEmpty()) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        List<CompletableFuture<?>> pending = new ArrayList<>();
+        for (int i = 0; i < frequent.size(); i++) {
+            String owner = (String) frequent.get(i)[0];
+            String question = (String) frequent.get(i)[1];
+            if (question == null || question.isBlank()) {
+                continue;
+            }
+            try {
+                CompletableFuture<?> f = i < answers
+                        ? noteService.warmAnswer(owner, question)
+                        : embeddingStore.embedAsync(question, false, AiScheduler.Priority.BACKGROUND);
+                pending.add(f.exceptionally(e -> null));
+            } catch (RuntimeException e) {
+                log.debug("Could not warm question for {}: {}", owner, e.getMessage());
+            }
+        }
+        int answered = Math.min(answers, frequent.size());
+        CompletableFuture.allOf(pending.toArray(new CompletableFuture<?>[0])).whenComplete((r, e) ->
+                log.info("Question cache warm-up: {} questions (top {} answered) in {} ms", pending.size(), answered,
+                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+    }
+}
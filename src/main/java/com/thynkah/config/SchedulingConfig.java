@@ -0,0 +1,14 @@
+package com.thynkah.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * Enables @Scheduled jobs (change-journal tailing, question-log flush, neighbour and
+ * cluster maintenance, ...). They share spring.task.scheduling.pool.size threads;
+ * jobs that block for long (embedding migration) hand their work to their own thread.
+ */
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
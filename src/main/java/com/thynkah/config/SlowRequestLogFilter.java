@@ -0,0 +1,76 @@
+package com.thynkah.config;
+
+import com.thynkah.service.RequestSpans;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects the per-stage span breakdown for every request and logs it
+ * when the request is slower than thynkah.metrics.slow-request-ms.
+ */
+@Component
+public class SlowRequestLogFilter extends OncePerRequestFilter {
+
+    private static final Logger log = LoggerFactory.getLogger(SlowRequestLogFilter.class);
+
+    @Value("${thynkah.metrics.slow-request-ms:2000}")
+    private long slowRequestMs;
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request,
+                                    HttpServletResponse response,
+                                    FilterChain chain) throws ServletException, IOException {
+        RequestSpans spans = RequestSpans.begin();
+        long start = System.nanoTime();
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            RequestSpans.end();
+            if (request.isAsyncStarted()) {
+                // Async handler (CompletableFuture): the request ends when the future completes.
+                request.getAsyncContext().addListener(new AsyncListener() {
+                    @Override
+                    public void onComplete(AsyncEvent event) {
+                        logIfSlow(request, start, spans);
+                    }
+
+                    @Override
+                    public void onTimeout(AsyncEvent event) {
+                        log.warn("Request {} {} timed out: {}",
+                                request.getMethod(), request.getRequestURI(), spans.summary());
+                    }
+
+                    @Override
+                    public void onError(AsyncEvent event) {
+                    }
+
+                    @Override
+                    public void onStartAsync(AsyncEvent event) {
+                    }
+                });
+            } else {
+                logIfSlow(request, start, spans);
+            }
+        }
+    }
+
+    private void logIfSlow(HttpServletRequest request, long start, RequestSpans spans) {
+        long tookMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        if (tookMs >= slowRequestMs) {
+            log.warn("Slow request {} {} took {} ms: {}",
+                    request.getMethod(), request.getRequestURI(), tookMs, spans.summary());
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.thynkah.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.CacheControl;
+import org.springframework.web.servlet.config.annotation.ResourceHandlerRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * The service worker is registered under a fixed URL and must never be long-cached,
+ * otherwise browsers keep running an old worker after a deploy. The same goes for what
+ * it loads by plain URL (importScripts and its offline shell): a year-long cached copy
+ * would outlive the worker that expects it. These are served ahead of the default
+ * static handler, which may use year-long caching (prod profile); their content-hashed
+ * URLs, used by the pages, still are cached for a year.
+ */
+@Configuration
+public class StaticResourceConfig implements WebMvcConfigurer {
+
+    // keep in line with importScripts and SHELL in sw.js
+    private static final String[] WORKER_ASSETS = {
+            "/js/sw.js",
+            "/js/notes-db.js",
+            "/css/style.css",
+            "/manifest.json",
+            "/icons/icon-192.png",
+            "/icons/icon-512.png"
+    };
+
+    @Override
+    public void addResourceHandlers(ResourceHandlerRegistry registry) {
+        registry.addResourceHandler(WORKER_ASSETS)
+                .addResourceLocations("classpath:/static/")
+                .setCacheControl(CacheControl.noCache());
+    }
+}
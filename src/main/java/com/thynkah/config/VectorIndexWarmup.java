@@ -0,0 +1,41 @@
+package com.thynkah.config;
+
+import com.thynkah.service.VectorShardManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.availability.AvailabilityChangeEvent;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.context.ApplicationContext;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Opens the on-disk vector snapshots (and replays their WALs) before the instance
+ * reports ready. Runners finish before Spring Boot publishes ACCEPTING_TRAFFIC, so
+ * /actuator/health/readiness stays OUT_OF_SERVICE until this is done.
+ */
+@Component
+public class VectorIndexWarmup implements ApplicationRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(VectorIndexWarmup.class);
+
+    private final VectorShardManager shards;
+    private final ApplicationContext context;
+
+    public VectorIndexWarmup(VectorShardManager shards, ApplicationContext context) {
+        this.shards = shards;
+        this.context = context;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        AvailabilityChangeEvent.publish(context, ReadinessState.REFUSING_TRAFFIC);
+        long start = System.nanoTime();
+        int loaded = shards.preload();
+        log.info("Vector index warm-up: {} shard(s) opened in {} ms",
+                loaded, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+}
@@ -0,0 +1,52 @@
+package com.thynkah.controller;
+
+import com.thynkah.service.AiOverloadedException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Load-shedding answer for calls rejected by the AI scheduler or the bounded DB executor:
+ * 503 + Retry-After, no waiting.
+ */
+@RestControllerAdvice
+public class AiOverloadedHandler {
+
+  // the DB executor drains its queue in well under a second; there is no backlog estimate to offer
+  private static final long DB_RETRY_AFTER_SECONDS = 1;
+
+  @ExceptionHandler(AiOverloadedException.class)
+  public ResponseEntity<Map<String, Object>> overloaded(AiOverloadedException e) {
+    return busy(e.getMessage(), e.getRetryAfterSeconds());
+  }
+
+  @ExceptionHandler(RejectedExecutionException.class)
+  public ResponseEntity<Map<String, Object>> rejected(RejectedExecutionException e) {
+    return busy("Server busy (database queue full), retry in " + DB_RETRY_AFTER_SECONDS + "s", DB_RETRY_AFTER_SECONDS);
+  }
+
+  // blocking callers (e.g. note save embedding the text) see the shed call wrapped by join(),
+  // and async stages rejected by the DB executor fail with the rejection as their cause
+  @ExceptionHandler(CompletionException.class)
+  public ResponseEntity<Map<String, Object>> completion(CompletionException e) throws Throwable {
+    if (e.getCause() instanceof AiOverloadedException) {
+      return overloaded((AiOverloadedException) e.getCause());
+    }
+    if (e.getCause() instanceof RejectedExecutionException) {
+      return rejected((RejectedExecutionException) e.getCause());
+    }
+    throw e;
+  }
+
+  private static ResponseEntity<Map<String, Object>> busy(String message, long retryAfterSeconds) {
+    return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+        .header(HttpHeaders.RETRY_AFTER, Long.toString(retryAfterSeconds))
+        .body(Map.of("error", "BUSY", "message", message, "retryAfterSeconds", retryAfterSeconds));
+  }
+}
@@ -2,40 +2,44 @@ package com.thynkah.controller;
 
 import com.thynkah.model.Note;
 import com.thynkah.service.NoteService;
+import com.thynkah.service.QuestionLog;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 public class ChatController {
 
   private final NoteService noteService;
+  private final QuestionLog questionLog;
 
-  public ChatController(NoteService noteService) {
+  public ChatController(NoteService noteService, QuestionLog questionLog) {
     this.noteService = noteService;
+    this.questionLog = questionLog;
   }
 
   @PostMapping("/chat")
-  public Map<String, String> chat(@RequestBody Map<String, String> body) {
+  public CompletableFuture<Map<String, String>> chat(@RequestBody Map<String, String> body) {
     String question = body.get("question");
-    Map<String, String> response = new HashMap<>();
-
-    Note bestMatch = noteService.findMostRelevantNote(question);
-
-    if (bestMatch != null) {
-      response.put("reply", "🧠 Most relevant note:\n" + bestMatch.getText());
-    } else {
-      response.put("reply", "I couldn't find a matching note based on meaning. Try rephrasing?");
-    }
-
-    return response;
+    QuestionLog.Entry logEntry = questionLog.start("chat", question);
+
+    return logEntry.track(noteService.findMostRelevantNoteAsync(question).thenApply(bestMatch -> {
+      Map<String, String> response = new HashMap<>();
+      if (bestMatch != null) {
+        response.put("reply", "🧠 Most relevant note:\n" + bestMatch.getText());
+      } else {
+        response.put("reply", "I couldn't find a matching note based on meaning. Try rephrasing?");
+      }
+      return response;
+    }));
   }
 
   @GetMapping("/ask")
   @ResponseBody
-  public Note ask(@RequestParam String query) {
-    return noteService.findMostRelevantNote(query);
+  public CompletableFuture<Note> ask(@RequestParam String query) {
+    return questionLog.start("search", query).track(noteService.findMostRelevantNoteAsync(query));
   }
 
 
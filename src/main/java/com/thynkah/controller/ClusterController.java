@@ -0,0 +1,34 @@
+package com.thynkah.controller;
+
+import com.thynkah.service.ClusterIndex;
+import com.thynkah.service.OwnerContext;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+@RestController
+public class ClusterController {
+
+  private final ClusterIndex clusters;
+  private final OwnerContext owners;
+
+  public ClusterController(ClusterIndex clusters, OwnerContext owners) {
+    this.clusters = clusters;
+    this.owners = owners;
+  }
+
+  // Tag suggestions for a draft on /add, from the topic clusters nearest to its text
+  @PostMapping(value = "/tags/suggest", consumes = "application/json", produces = "application/json")
+  public CompletableFuture<List<String>> suggestTags(@RequestBody Map<String, String> body) {
+    return clusters.suggestTags(owners.current(), body.get("text"), 5);
+  }
+
+  // Recall and speedup of cluster-pruned retrieval against the exact scan, per nprobe
+  @GetMapping(value = "/clusters/report", produces = "application/json")
+  public Map<String, Object> report(@RequestParam(defaultValue = "50") int queries,
+                                    @RequestParam(defaultValue = "10") int k) {
+    return clusters.report(owners.current(), Math.min(Math.max(queries, 1), 500), Math.min(Math.max(k, 1), 100));
+  }
+}
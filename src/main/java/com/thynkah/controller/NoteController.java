@@ -1,20 +1,25 @@
 package com.thynkah.controller;
 
 import com.thynkah.model.Note;
-import com.thynkah.repository.NoteRepository;
+import com.thynkah.service.MarkdownService;
 import com.thynkah.service.NoteService;
+import com.thynkah.service.NoteSyncService;
+import com.thynkah.service.QuestionLog;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageRequest;
-import org.springframework.data.domain.Sort;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
+import javax.servlet.http.HttpServletResponse;
 import java.time.LocalDate;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -23,12 +28,22 @@ import java.util.stream.Stream;
 public class NoteController {
 
   private final NoteService noteService;
-  private final NoteRepository noteRepository;
+  private final MarkdownService markdownService;
+  private final NoteSyncService syncService;
+  private final QuestionLog questionLog;
+
+  // identifies the deployed templates in HTML ETags; blank = this instance's start time
+  @Value("${thynkah.release:}")
+  private String release;
+  private final String startedAt = Long.toString(System.currentTimeMillis(), 36);
 
   @Autowired
-  public NoteController(NoteService noteService, NoteRepository noteRepository) {
+  public NoteController(NoteService noteService, MarkdownService markdownService, NoteSyncService syncService,
+                        QuestionLog questionLog) {
     this.noteService = noteService;
-    this.noteRepository = noteRepository;
+    this.markdownService = markdownService;
+    this.syncService = syncService;
+    this.questionLog = questionLog;
   }
 
     @GetMapping("/add")
@@ -46,10 +61,40 @@ public class NoteController {
   // ✅ Fetch all notes as JSON
   @GetMapping("/notes")
   @ResponseBody
-  public List<Note> getAllNotes() {
+  public List<Note> getAllNotes(WebRequest request, HttpServletResponse response) {
+      if (notModified(request, response, "notes")) {
+          return null;
+      }
       return noteService.findAllForCurrentUser();
   }
 
+  // Offline client sync: notes changed or deleted since the client's cursor, in bounded batches
+  @GetMapping(value = "/notes/changes", produces = "application/json")
+  @ResponseBody
+  public NoteSyncService.Batch getChanges(@RequestParam(required = false) String since,
+                                          @RequestParam(defaultValue = "500") int limit,
+                                          HttpServletResponse response) {
+    response.setHeader(HttpHeaders.CACHE_CONTROL, "no-store");
+    return syncService.changesSince(since, limit);
+  }
+
+  // Nearest notes by meaning, from the background neighbour index (no AI call)
+  @GetMapping(value = "/notes/{id}/related", produces = "application/json")
+  @ResponseBody
+  public List<Map<String, Object>> getRelated(@PathVariable Long id) {
+    List<Map<String, Object>> out = new ArrayList<>();
+    noteService.findRelated(id).forEach((note, score) -> {
+      Map<String, Object> item = new LinkedHashMap<>();
+      item.put("id", note.getId());
+      item.put("text", note.getText());
+      item.put("tag", note.getTag());
+      item.put("createdAt", note.getCreatedAt());
+      item.put("score", score);
+      out.add(item);
+    });
+    return out;
+  }
+
   // ✅ Delete a note by ID
   @DeleteMapping("/notes/{id}")
   @ResponseBody
@@ -73,8 +118,11 @@ public class NoteController {
 
   @GetMapping("/tags")
   @ResponseBody
-  public List<String> getAllTags() {
-    return noteRepository.findAll().stream()
+  public List<String> getAllTags(WebRequest request, HttpServletResponse response) {
+    if (notModified(request, response, "tags")) {
+      return null;
+    }
+    return noteService.findAllForCurrentUser().stream()
           .flatMap(note -> {
             if (note.getTag() != null)
               return Arrays.stream(note.getTag().split(",")).map(String::trim);
@@ -89,29 +137,33 @@ public class NoteController {
     // Ask a question -> AI answer (using your notes)
     @PostMapping(value = "/ask", consumes = "application/json", produces = "application/json")
     @ResponseBody
-    public Map<String, Object> ask(@RequestBody Map<String, String> body) {
+    public CompletableFuture<Map<String, Object>> ask(@RequestBody Map<String, String> body) {
         String question = body.get("question");
+        QuestionLog.Entry logEntry = questionLog.start("ask", question);
 
         // AI-generated answer, with "today first, else recent" logic inside
-        String answer = noteService.answerQuestion(question);
-
-        // Optional: expose the note that was used, for "Most relevant note" display
-        Note bestNote = noteService.findMostRelevantNote(question);
-
-        Map<String, Object> result = new HashMap<>();
-        result.put("answer", answer);
-
-        if (bestNote != null) {
-            result.put("noteId", bestNote.getId());
-            result.put("noteText", bestNote.getText());
-            result.put("noteCreatedAt", bestNote.getCreatedAt());
-            result.put("noteTag", bestNote.getTag());
-        } else {
-            result.put("noteId", null);
-            result.put("noteText", null);
-        }
-
-        return result;
+        CompletableFuture<String> answerFuture = noteService.answerQuestionAsync(question);
+
+        // Optional: expose the note that was used, for "Most relevant note" display.
+        // Both share the same question embedding call via the gateway.
+        CompletableFuture<Note> bestNoteFuture = noteService.findMostRelevantNoteAsync(question);
+
+        return logEntry.track(answerFuture.thenCombine(bestNoteFuture, (answer, bestNote) -> {
+            Map<String, Object> result = new HashMap<>();
+            result.put("answer", answer);
+
+            if (bestNote != null) {
+                result.put("noteId", bestNote.getId());
+                result.put("noteText", bestNote.getText());
+                result.put("noteCreatedAt", bestNote.getCreatedAt());
+                result.put("noteTag", bestNote.getTag());
+            } else {
+                result.put("noteId", null);
+                result.put("noteText", null);
+            }
+
+            return result;
+        }));
     }
 
     // inside NoteController
@@ -126,7 +178,7 @@ public class NoteController {
 
     @PostMapping(value = "/ask/day", consumes = "application/json", produces = "application/json")
     @ResponseBody
-    public Map<String, Object> askForDay(@RequestBody Map<String, String> body) {
+    public CompletableFuture<Map<String, Object>> askForDay(@RequestBody Map<String, String> body) {
 
         String dateStr  = body.get("date");
         String question = body.get("question"); // optional
@@ -140,8 +192,9 @@ public class NoteController {
         if (question == null || question.isBlank()) {
             question = "Summarize everything important I did, thought, or noted on " + dateStr + ".";
         }
+        QuestionLog.Entry logEntry = questionLog.start("ask-day", question);
 
-        String answer = noteService.answerQuestionForDate(question, date);
+        CompletableFuture<String> answerFuture = noteService.answerQuestionForDateAsync(question, date);
 
         // Optional: also return the top “most relevant note” for that specific day
         List<Note> notesForDay = noteService.findNotesForDate(date);
@@ -153,49 +206,57 @@ public class NoteController {
                     .orElse(null);
         }
 
-        Map<String, Object> result = new HashMap<>();
-        result.put("answer", answer);
-
-        if (best != null) {
-            result.put("noteId", best.getId());
-            result.put("noteText", best.getText());
-            result.put("noteCreatedAt", best.getCreatedAt());
-            result.put("noteTag", best.getTag());
-        } else {
-            result.put("noteId", null);
-            result.put("noteText", null);
-        }
-
-        return result;
+        Note bestNote = best;
+        return logEntry.track(answerFuture.thenApply(answer -> {
+            Map<String, Object> result = new HashMap<>();
+            result.put("answer", answer);
+
+            if (bestNote != null) {
+                result.put("noteId", bestNote.getId());
+                result.put("noteText", bestNote.getText());
+                result.put("noteCreatedAt", bestNote.getCreatedAt());
+                result.put("noteTag", bestNote.getTag());
+            } else {
+                result.put("noteId", null);
+                result.put("noteText", null);
+            }
+
+            return result;
+        }));
     }
 
     @PostMapping(value = "/ask/note/{id}", consumes = "application/json", produces = "application/json")
     @ResponseBody
-    public Map<String, Object> askForNote(
+    public CompletableFuture<Map<String, Object>> askForNote(
             @PathVariable Long id,
             @RequestBody(required = false) Map<String, String> body) {
 
         String question = (body != null) ? body.get("question") : null;
+        QuestionLog.Entry logEntry = questionLog.start("ask-note", question);
 
-        String answer = noteService.answerQuestionForNote(question, id);
-
-        Map<String, Object> result = new HashMap<>();
-        result.put("answer", answer);
-        return result;
+        return logEntry.track(noteService.answerQuestionForNoteAsync(question, id).thenApply(answer -> {
+            Map<String, Object> result = new HashMap<>();
+            result.put("answer", answer);
+            return result;
+        }));
     }
 
     @GetMapping("/")
     public String home(
             @RequestParam(defaultValue = "0") int page,
             @RequestParam(defaultValue = "10") int size,
-            Model model
+            Model model,
+            WebRequest request,
+            HttpServletResponse response
     ) {
-        Page<Note> notesPage = noteRepository.findAll(
-                PageRequest.of(page, size, Sort.by(Sort.Direction.DESC, "createdAt"))
-        );
+        if (notModified(request, response, "home-" + page + "-" + size + "-" + release())) {
+            return null;
+        }
+        Page<Note> notesPage = noteService.getNotesPage(page, size);
 
         model.addAttribute("notesPage", notesPage);
         model.addAttribute("notes", notesPage.getContent()); // if your template iterates notes
+        model.addAttribute("noteHtml", markdownService.toHtml(notesPage.getContent()));
         model.addAttribute("page", page);
         model.addAttribute("size", size);
 
@@ -206,14 +267,18 @@ public class NoteController {
     public String browse(
             @RequestParam(defaultValue = "0") int page,
             @RequestParam(defaultValue = "10") int size,
-            Model model
+            Model model,
+            WebRequest request,
+            HttpServletResponse response
     ) {
-        Page<Note> notesPage = noteRepository.findAll(
-                PageRequest.of(page, size, Sort.by(Sort.Direction.DESC, "createdAt"))
-        );
+        if (notModified(request, response, "browse-" + page + "-" + size + "-" + release())) {
+            return null;
+        }
+        Page<Note> notesPage = noteService.getNotesPage(page, size);
 
         model.addAttribute("notesPage", notesPage);
         model.addAttribute("notes", notesPage.getContent());
+        model.addAttribute("noteHtml", markdownService.toHtml(notesPage.getContent()));
         model.addAttribute("page", page);
         model.addAttribute("size", size);
 
@@ -238,8 +303,13 @@ public class NoteController {
     @ResponseBody
     public Page<Note> getNotesPageJson(
             @RequestParam(defaultValue = "0") int page,
-            @RequestParam(defaultValue = "10") int size
+            @RequestParam(defaultValue = "10") int size,
+            WebRequest request,
+            HttpServletResponse response
     ) {
+        if (notModified(request, response, "page-" + page + "-" + size)) {
+            return null;
+        }
         return noteService.getNotesPage(page, size);
     }
 
@@ -263,16 +333,30 @@ public class NoteController {
             return ResponseEntity.badRequest().body("text is required");
         }
 
-        Optional<Note> opt = noteRepository.findById(id);
+        Optional<Note> opt = noteService.findOwned(id);
         if (!opt.isPresent()) {
             return ResponseEntity.notFound().build();
         }
 
-        Note note = opt.get();
-        note.setText(text);
-        noteRepository.save(note);
+        // through the service so the note is re-embedded, re-indexed and journaled
+        noteService.updateText(id, text);
 
         return ResponseEntity.ok().build();
     }
 
+    /* ---------- Conditional GET ---------- */
+
+    /**
+     * Strong ETag from the owner's note collection version (+ the view variant).
+     * Returns true when the client copy is current; Spring has then already set 304.
+     */
+    private boolean notModified(WebRequest request, HttpServletResponse response, String variant) {
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "private, no-cache");
+        return request.checkNotModified("\"" + noteService.collectionVersion() + "-" + variant + "\"");
+    }
+
+    private String release() {
+        return release == null || release.isBlank() ? startedAt : release;
+    }
+
 }
@@ -4,6 +4,7 @@ import com.thynkah.model.Prompt;
 import com.thynkah.repository.PromptRepository;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 @RestController
@@ -18,11 +19,13 @@ public class PromptController {
 
   @GetMapping
   public List<Prompt> getAllPrompts() {
-    return promptRepository.findAll();
+    return promptRepository.findByKindOrderByIdAsc(Prompt.SAVED); // logged questions are not listed
   }
 
   @PostMapping
   public Prompt savePrompt(@RequestBody Prompt prompt) {
+    prompt.setKind(Prompt.SAVED);
+    prompt.setCreatedAt(LocalDateTime.now());
     return promptRepository.save(prompt);
   }
 }
@@ -1,5 +1,7 @@
 package com.thynkah.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 import javax.persistence.*;
 import java.time.LocalDateTime;
 
@@ -18,6 +20,16 @@ public class Note {
   @Column(name = "createdat")
   private LocalDateTime createdAt;
 
+  // partition key: notes, search shards and caches are all per owner; set server-side only
+  @JsonIgnore
+  @Column(name = "owner_id", length = 64)
+  private String owner;
+
+  // topic cluster (see ClusterIndex); written only by the clustering job, never by entity saves
+  @JsonIgnore
+  @Column(name = "cluster_id", insertable = false, updatable = false)
+  private Long clusterId;
+
   public Long getId() {
     return id;
   }
@@ -46,6 +58,33 @@ public class Note {
     this.createdAt = createdAt;
   }
 
+  public Long getClusterId() {
+    return clusterId;
+  }
+
+  public String getOwner() {
+    return owner;
+  }
+
+  public void setOwner(String owner) {
+    this.owner = owner;
+  }
+
+  /** Detached field-by-field copy, so a cached instance is never changed by its readers. */
+  public Note copy() {
+    Note n = new Note();
+    n.id = id;
+    n.text = text;
+    n.tag = tag;
+    n.createdAt = createdAt;
+    n.owner = owner;
+    n.clusterId = clusterId;
+    n.embedding = embedding;
+    n.embeddingModel = embeddingModel;
+    n.embeddingDims = embeddingDims;
+    return n;
+  }
+
   @PrePersist
   protected void onCreate() {
     if (createdAt == null) {
@@ -57,6 +96,13 @@ public class Note {
   @Column(columnDefinition = "TEXT")
   private String embedding;
 
+  // model and vector length the embedding was produced with (null on rows embedded before this was tracked)
+  @Column(name = "embedding_model", length = 64)
+  private String embeddingModel;
+
+  @Column(name = "embedding_dims")
+  private Integer embeddingDims;
+
   public String getEmbedding() {
     return embedding;
   }
@@ -65,5 +111,21 @@ public class Note {
     this.embedding = embedding;
   }
 
+  public String getEmbeddingModel() {
+    return embeddingModel;
+  }
+
+  public void setEmbeddingModel(String embeddingModel) {
+    this.embeddingModel = embeddingModel;
+  }
+
+  public Integer getEmbeddingDims() {
+    return embeddingDims;
+  }
+
+  public void setEmbeddingDims(Integer embeddingDims) {
+    this.embeddingDims = embeddingDims;
+  }
+
 
 }
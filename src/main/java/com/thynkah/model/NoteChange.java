@@ -0,0 +1,73 @@
+package com.thynkah.model;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * One row per note mutation, in commit order. Every instance tails this table to
+ * bring its local shards and caches up to date (see ChangeJournal).
+ */
+@Entity
+@Table(name = "note_changes")
+public class NoteChange {
+
+  public static final String SAVE = "SAVE";
+  public static final String TEXT = "TEXT";
+  public static final String TAG = "TAG";
+  public static final String DELETE = "DELETE";
+
+  @Id
+  @GeneratedValue(strategy = GenerationType.IDENTITY)
+  private Long seq;
+
+  @Column(name = "note_id")
+  private Long noteId;
+
+  @Column(name = "owner_id", length = 64)
+  private String owner;
+
+  @Column(length = 16)
+  private String op;
+
+  // instance that made the change; it skips its own rows when tailing
+  @Column(length = 64)
+  private String origin;
+
+  @Column(name = "changed_at")
+  private LocalDateTime changedAt;
+
+  protected NoteChange() {
+  }
+
+  public NoteChange(Long noteId, String owner, String op, String origin) {
+    this.noteId = noteId;
+    this.owner = owner;
+    this.op = op;
+    this.origin = origin;
+    this.changedAt = LocalDateTime.now();
+  }
+
+  public Long getSeq() {
+    return seq;
+  }
+
+  public Long getNoteId() {
+    return noteId;
+  }
+
+  public String getOwner() {
+    return owner;
+  }
+
+  public String getOp() {
+    return op;
+  }
+
+  public String getOrigin() {
+    return origin;
+  }
+
+  public LocalDateTime getChangedAt() {
+    return changedAt;
+  }
+}
@@ -0,0 +1,71 @@
+package com.thynkah.model;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * A topic cluster of one owner's notes: its centroid (little-endian floats) and how
+ * many samples have been folded into it, which sets the mini-batch learning rate.
+ */
+@Entity
+@Table(name = "note_clusters")
+public class NoteCluster {
+
+  @Id
+  @GeneratedValue(strategy = GenerationType.IDENTITY)
+  private Long id;
+
+  @Column(name = "owner_id", length = 64)
+  private String owner;
+
+  private int dims;
+
+  @Lob
+  @Column(columnDefinition = "BLOB")
+  private byte[] centroid;
+
+  @Column(name = "sample_count")
+  private long sampleCount;
+
+  @Column(name = "updated_at")
+  private LocalDateTime updatedAt;
+
+  protected NoteCluster() {
+  }
+
+  public NoteCluster(String owner, int dims, byte[] centroid, long sampleCount) {
+    this.owner = owner;
+    this.dims = dims;
+    update(centroid, sampleCount);
+  }
+
+  public void update(byte[] centroid, long sampleCount) {
+    this.centroid = centroid;
+    this.sampleCount = sampleCount;
+    this.updatedAt = LocalDateTime.now();
+  }
+
+  public Long getId() {
+    return id;
+  }
+
+  public String getOwner() {
+    return owner;
+  }
+
+  public int getDims() {
+    return dims;
+  }
+
+  public byte[] getCentroid() {
+    return centroid;
+  }
+
+  public long getSampleCount() {
+    return sampleCount;
+  }
+
+  public LocalDateTime getUpdatedAt() {
+    return updatedAt;
+  }
+}
@@ -0,0 +1,65 @@
+package com.thynkah.model;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * A note's k nearest neighbours, best first, packed as (long note id, float score)
+ * pairs so a lookup is one primary-key read (see NeighborIndex).
+ */
+@Entity
+@Table(name = "note_neighbors")
+public class NoteNeighbors {
+
+  @Id
+  @Column(name = "note_id")
+  private Long noteId;
+
+  @Column(name = "owner_id", length = 64)
+  private String owner;
+
+  @Lob
+  @Column(name = "neighbors", columnDefinition = "BLOB")
+  private byte[] packed;
+
+  @Column(name = "updated_at")
+  private LocalDateTime updatedAt;
+
+  // refresh queue mark (see NeighborIndex); written only by repository queries, never by entity saves
+  @Column(name = "stale_at", insertable = false, updatable = false)
+  private LocalDateTime staleAt;
+
+  protected NoteNeighbors() {
+  }
+
+  public NoteNeighbors(Long noteId, String owner, byte[] packed) {
+    this.noteId = noteId;
+    this.owner = owner;
+    setPacked(packed);
+  }
+
+  public Long getNoteId() {
+    return noteId;
+  }
+
+  public String getOwner() {
+    return owner;
+  }
+
+  public byte[] getPacked() {
+    return packed;
+  }
+
+  public void setPacked(byte[] packed) {
+    this.packed = packed;
+    this.updatedAt = LocalDateTime.now();
+  }
+
+  public LocalDateTime getUpdatedAt() {
+    return updatedAt;
+  }
+
+  public LocalDateTime getStaleAt() {
+    return staleAt;
+  }
+}
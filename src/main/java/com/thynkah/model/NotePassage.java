@@ -0,0 +1,100 @@
+package com.thynkah.model;
+
+import javax.persistence.*;
+
+/**
+ * An overlapping slice of a long note with its own embedding.
+ * Rows are rebuilt by PassageService whenever the note text changes.
+ */
+@Entity
+@Table(name = "note_passages")
+public class NotePassage {
+
+  @Id
+  @GeneratedValue(strategy = GenerationType.IDENTITY)
+  private Long id;
+
+  @Column(name = "note_id")
+  private Long noteId;
+
+  // position of the passage within the note (0-based)
+  private int ordinal;
+
+  @Column(name = "start_offset")
+  private int startOffset;
+
+  @Column(name = "end_offset")
+  private int endOffset;
+
+  // SHA-256 of the passage text; unchanged passages keep their embedding on re-chunking
+  @Column(name = "text_hash", length = 64)
+  private String textHash;
+
+  @Lob
+  @Column(columnDefinition = "TEXT")
+  private String text;
+
+  @Lob
+  @Column(columnDefinition = "TEXT")
+  private String embedding;
+
+  public Long getId() {
+    return id;
+  }
+
+  public Long getNoteId() {
+    return noteId;
+  }
+
+  public void setNoteId(Long noteId) {
+    this.noteId = noteId;
+  }
+
+  public int getOrdinal() {
+    return ordinal;
+  }
+
+  public void setOrdinal(int ordinal) {
+    this.ordinal = ordinal;
+  }
+
+  public int getStartOffset() {
+    return startOffset;
+  }
+
+  public void setStartOffset(int startOffset) {
+    this.startOffset = startOffset;
+  }
+
+  public int getEndOffset() {
+    return endOffset;
+  }
+
+  public void setEndOffset(int endOffset) {
+    this.endOffset = endOffset;
+  }
+
+  public String getTextHash() {
+    return textHash;
+  }
+
+  public void setTextHash(String textHash) {
+    this.textHash = textHash;
+  }
+
+  public String getText() {
+    return text;
+  }
+
+  public void setText(String text) {
+    this.text = text;
+  }
+
+  public String getEmbedding() {
+    return embedding;
+  }
+
+  public void setEmbedding(String embedding) {
+    this.embedding = embedding;
+  }
+}
@@ -1,11 +1,22 @@
 package com.thynkah.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 import javax.persistence.*;
+import java.time.LocalDateTime;
 
+/**
+ * A saved prompt (kind SAVED, the /ask page dropdown) or a logged question (kind ASKED).
+ * Logged questions are written in JDBC batches by QuestionLog, with their latency
+ * breakdown and note ids; the entity maps only the columns that are queried.
+ */
 @Entity
 @Table(name = "prompts")  // explicitly set table name
 public class Prompt {
 
+  public static final String SAVED = "SAVED";
+  public static final String ASKED = "ASKED";
+
   @Id
   @GeneratedValue(strategy = GenerationType.IDENTITY)
   private Long id;
@@ -13,8 +24,31 @@ public class Prompt {
   @Column(name = "prompt") // match column name in the DB
   private String prompt;
 
-  @Column(name = "createdat") // match column name in the DB
-  private String createdAt;
+  @Column(name = "created_at")
+  private LocalDateTime createdAt;
+
+  // the pre-V10 text column, still written for instances running older code
+  @JsonIgnore
+  @Column(name = "createdat")
+  private String legacyCreatedAt;
+
+  @JsonIgnore
+  @Column(length = 16)
+  private String kind = SAVED;
+
+  @JsonIgnore
+  @Column(name = "owner_id", length = 64)
+  private String owner;
+
+  @JsonIgnore
+  @Column(length = 32)
+  private String endpoint;
+
+  @PrePersist
+  @PreUpdate
+  void writeLegacyCreatedAt() {
+    legacyCreatedAt = createdAt == null ? null : createdAt.toString();
+  }
 
   // Getters and setters
   public Long getId() { return id; }
@@ -22,6 +56,14 @@ public class Prompt {
   public String getPrompt() { return prompt; }
   public void setPrompt(String prompt) { this.prompt = prompt; }
 
-  public String getCreatedAt() { return createdAt; }
-  public void setCreatedAt(String createdAt) { this.createdAt = createdAt; }
+  public LocalDateTime getCreatedAt() { return createdAt; }
+  public void setCreatedAt(LocalDateTime createdAt) { this.createdAt = createdAt; }
+
+  public String getKind() { return kind; }
+  public void setKind(String kind) { this.kind = kind; }
+
+  public String getOwner() { return owner; }
+  public void setOwner(String owner) { this.owner = owner; }
+
+  public String getEndpoint() { return endpoint; }
 }
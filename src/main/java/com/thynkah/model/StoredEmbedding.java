@@ -0,0 +1,78 @@
+package com.thynkah.model;
+
+import org.springframework.data.domain.Persistable;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * An embedding vector keyed by SHA-256(model + text), shared by every note,
+ * passage or re-save that has the same content.
+ */
+@Entity
+@Table(name = "embedding_store")
+public class StoredEmbedding implements Persistable<String> {
+
+  @Id
+  @Column(name = "content_hash", length = 64)
+  private String contentHash;
+
+  private String model;
+
+  private int dims;
+
+  @Lob
+  @Column(columnDefinition = "TEXT")
+  private String vector;
+
+  @Column(name = "createdat")
+  private LocalDateTime createdAt;
+
+  protected StoredEmbedding() {
+  }
+
+  public StoredEmbedding(String contentHash, String model, int dims, String vector) {
+    this.contentHash = contentHash;
+    this.model = model;
+    this.dims = dims;
+    this.vector = vector;
+  }
+
+  @PrePersist
+  protected void onCreate() {
+    if (createdAt == null) {
+      createdAt = LocalDateTime.now();
+    }
+  }
+
+  @Override
+  public String getId() {
+    return contentHash;
+  }
+
+  // rows are insert-only; skipping merge() saves a SELECT per insert
+  @Override
+  public boolean isNew() {
+    return createdAt == null;
+  }
+
+  public String getContentHash() {
+    return contentHash;
+  }
+
+  public String getModel() {
+    return model;
+  }
+
+  public int getDims() {
+    return dims;
+  }
+
+  public String getVector() {
+    return vector;
+  }
+
+  public LocalDateTime getCreatedAt() {
+    return createdAt;
+  }
+}
@@ -0,0 +1,39 @@
+package com.thynkah.repository;
+
+import com.thynkah.model.NoteChange;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public interface NoteChangeRepository extends JpaRepository<NoteChange, Long> {
+
+    List<NoteChange> findBySeqGreaterThanOrderBySeqAsc(long seq, Pageable pageable);
+
+    @Query("select coalesce(max(c.seq), 0) from NoteChange c")
+    long maxSeq();
+
+    @Query("select coalesce(max(c.seq), 0) from NoteChange c where c.owner = :owner")
+    long maxSeqForOwner(@Param("owner") String owner);
+
+    // one owner's changes in (after, upTo], for client delta sync
+    @Query("select c from NoteChange c where c.owner = :owner and c.seq > :after and c.seq <= :upTo order by c.seq")
+    List<NoteChange> findForOwner(@Param("owner") String owner, @Param("after") long after,
+                                  @Param("upTo") long upTo, Pageable pageable);
+
+    @Query("select min(c.seq) from NoteChange c where c.changedAt >= :since")
+    Long minSeqSince(@Param("since") LocalDateTime since);
+
+    @Query("select max(c.seq) from NoteChange c group by c.owner")
+    List<Long> latestSeqPerOwner();
+
+    @Transactional
+    @Modifying
+    @Query("delete from NoteChange c where c.changedAt < :cutoff and c.seq not in :keep")
+    int deleteOlderThan(@Param("cutoff") LocalDateTime cutoff, @Param("keep") List<Long> keep);
+}
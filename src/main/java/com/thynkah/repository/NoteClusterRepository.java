@@ -0,0 +1,11 @@
+package com.thynkah.repository;
+
+import com.thynkah.model.NoteCluster;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.util.List;
+
+public interface NoteClusterRepository extends JpaRepository<NoteCluster, Long> {
+
+    List<NoteCluster> findByOwnerOrderByIdAsc(String owner);
+}
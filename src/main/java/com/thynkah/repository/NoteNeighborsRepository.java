@@ -0,0 +1,45 @@
+package com.thynkah.repository;
+
+import com.thynkah.model.NoteNeighbors;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+public interface NoteNeighborsRepository extends JpaRepository<NoteNeighbors, Long> {
+
+    // embedded notes that have no neighbour list yet: {note id, owner}
+    @Query("select n.id, n.owner from Note n where n.embedding is not null and n.owner is not null"
+            + " and not exists (select 1 from NoteNeighbors x where x.noteId = n.id)")
+    List<Object[]> findUnindexed(Pageable pageable);
+
+    // lists marked stale before the cutoff, oldest mark first: {note id, owner, stale_at}
+    @Query("select x.noteId, x.owner, x.staleAt from NoteNeighbors x where x.staleAt < :cutoff order by x.staleAt")
+    List<Object[]> findStale(@Param("cutoff") LocalDateTime cutoff, Pageable pageable);
+
+    long countByStaleAtIsNotNull();
+
+    // a changed note: marks its list stale, or creates an empty stale one
+    @Transactional
+    @Modifying
+    @Query(value = "insert into note_neighbors (note_id, owner_id, neighbors, updated_at, stale_at)"
+            + " values (:noteId, :owner, '', :at, :at) on duplicate key update stale_at = :at", nativeQuery = true)
+    int markStale(@Param("noteId") long noteId, @Param("owner") String owner, @Param("at") LocalDateTime at);
+
+    @Transactional
+    @Modifying
+    @Query("update NoteNeighbors x set x.staleAt = :at where x.noteId in :ids")
+    int markStale(@Param("ids") Collection<Long> noteIds, @Param("at") LocalDateTime at);
+
+    // only clears the mark that was read: a change marked since keeps the list queued
+    @Transactional
+    @Modifying
+    @Query("update NoteNeighbors x set x.staleAt = null where x.noteId = :id and x.staleAt <= :seen")
+    int clearStale(@Param("id") long noteId, @Param("seen") LocalDateTime seen);
+}
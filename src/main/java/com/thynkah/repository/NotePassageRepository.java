@@ -0,0 +1,30 @@
+package com.thynkah.repository;
+
+import com.thynkah.model.NotePassage;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.List;
+
+public interface NotePassageRepository extends JpaRepository<NotePassage, Long> {
+
+    List<NotePassage> findByNoteIdOrderByOrdinalAsc(Long noteId);
+
+    @Transactional
+    void deleteByNoteId(Long noteId);
+
+    @Query("select p.noteId as noteId, p.startOffset as startOffset, p.endOffset as endOffset, "
+            + "p.embedding as embedding from NotePassage p "
+            + "where p.embedding is not null and p.noteId in (select n.id from Note n where n.owner = :owner) "
+            + "order by p.noteId, p.ordinal")
+    List<PassageVector> findVectorsByOwner(@Param("owner") String owner);
+
+    @Query("select p.noteId as noteId, p.startOffset as startOffset, p.endOffset as endOffset, "
+            + "p.embedding as embedding from NotePassage p "
+            + "where p.embedding is not null and p.noteId in :noteIds "
+            + "order by p.noteId, p.ordinal")
+    List<PassageVector> findVectorsByNoteIdIn(@Param("noteIds") Collection<Long> noteIds);
+}
@@ -1,10 +1,18 @@
 package com.thynkah.repository;
 
 import com.thynkah.model.Note;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 public interface NoteRepository extends JpaRepository<Note, Long> {
     // All notes for a date range (today)
@@ -12,4 +20,54 @@ public interface NoteRepository extends JpaRepository<Note, Long> {
 
     // Fallback: last N notes, newest first
     List<Note> findTop50ByOrderByCreatedAtDesc();
+
+    /* ---------- Per-owner queries ---------- */
+
+    Optional<Note> findByIdAndOwner(Long id, String owner);
+
+    List<Note> findByOwnerOrderByCreatedAtDesc(String owner);
+
+    Page<Note> findByOwner(String owner, Pageable pageable);
+
+    List<Note> findByOwnerAndCreatedAtBetween(String owner, LocalDateTime start, LocalDateTime end);
+
+    // tag-only edit: one UPDATE instead of merge's select-then-update of the whole row
+    @Transactional
+    @Modifying
+    @Query("update Note n set n.tag = :tag where n.id = :id and n.owner = :owner")
+    int updateTag(@Param("id") Long id, @Param("owner") String owner, @Param("tag") String tag);
+
+    // keyset pages by id, for a client's full (bootstrap) sync
+    List<Note> findByOwnerAndIdGreaterThanOrderByIdAsc(String owner, Long id, Pageable pageable);
+
+    // id / date / vector only (no text), for building an owner's search shard
+    List<NoteVector> findVectorsByOwner(String owner);
+
+    // full vectors for the second (rerank) retrieval stage
+    List<NoteVector> findVectorsByIdIn(Collection<Long> ids);
+
+    // embedded notes whose vector came from another model, keyset-paged by id
+    @Query("select n from Note n where n.id > :after and n.embeddingModel is not null"
+            + " and n.embeddingModel <> :model order by n.id")
+    List<Note> findEmbeddedWithOtherModel(@Param("model") String model, @Param("after") long after, Pageable pageable);
+
+    /* ---------- Topic clusters ---------- */
+
+    // {note id, cluster id} of an owner's clustered notes
+    @Query("select n.id, n.clusterId from Note n where n.owner = :owner and n.clusterId is not null")
+    List<Object[]> findClusterAssignments(@Param("owner") String owner);
+
+    // {note id, owner} of embedded notes not clustered yet, keyset-paged by id
+    @Query("select n.id, n.owner from Note n where n.id > :after and n.embedding is not null"
+            + " and n.owner is not null and n.clusterId is null order by n.id")
+    List<Object[]> findUnclustered(@Param("after") long after, Pageable pageable);
+
+    @Transactional
+    @Modifying
+    @Query("update Note n set n.clusterId = :cluster where n.id in :ids")
+    int assignCluster(@Param("cluster") long cluster, @Param("ids") Collection<Long> ids);
+
+    @Query("select n.tag from Note n where n.owner = :owner and n.clusterId = :cluster"
+            + " and n.tag is not null order by n.createdAt desc")
+    List<String> findTagsInCluster(@Param("owner") String owner, @Param("cluster") long cluster, Pageable pageable);
 }
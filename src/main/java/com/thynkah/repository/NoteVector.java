@@ -0,0 +1,15 @@
+package com.thynkah.repository;
+
+import java.time.LocalDateTime;
+
+/** Projection of a note without its text, used to load search shards. */
+public interface NoteVector {
+
+    Long getId();
+
+    LocalDateTime getCreatedAt();
+
+    String getEmbedding();
+
+    String getEmbeddingModel();
+}
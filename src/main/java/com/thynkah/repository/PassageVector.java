@@ -0,0 +1,13 @@
+package com.thynkah.repository;
+
+/** Projection of an embedded passage: its span within the note and its vector, no text. */
+public interface PassageVector {
+
+    Long getNoteId();
+
+    int getStartOffset();
+
+    int getEndOffset();
+
+    String getEmbedding();
+}
@@ -1,7 +1,22 @@
 package com.thynkah.repository;
 
 import com.thynkah.model.Prompt;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.List;
 
 public interface PromptRepository extends JpaRepository<Prompt, Long> {
+
+    List<Prompt> findByKindOrderByIdAsc(String kind);
+
+    // {owner, question, times asked} of logged questions since a point in time, most frequent first
+    @Query("select p.owner, p.prompt, count(p) from Prompt p where p.kind = 'ASKED' and p.endpoint = :endpoint"
+            + " and p.createdAt >= :since and p.owner is not null group by p.owner, p.prompt order by count(p) desc")
+    List<Object[]> findFrequentQuestions(@Param("endpoint") String endpoint,
+                                         @Param("since") LocalDateTime since,
+                                         Pageable pageable);
 }
@@ -0,0 +1,7 @@
+package com.thynkah.repository;
+
+import com.thynkah.model.StoredEmbedding;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface StoredEmbeddingRepository extends JpaRepository<StoredEmbedding, String> {
+}
@@ -0,0 +1,120 @@
+package com.thynkah.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.thynkah.util.Hashing;
+import io.micrometer.core.instrument.Counter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Single entry point for every OpenAI call (embeddings and chat).
+ * <ul>
+ *   <li>admission, priorities and rate limits are handled by {@link AiScheduler}</li>
+ *   <li>identical concurrent requests (same operation + JSON payload, which includes the
+ *       model) share one upstream call; a higher-priority caller joining a waiting call
+ *       promotes it</li>
+ * </ul>
+ */
+@Component
+public class AiGateway {
+
+    private final OpenAiClient client;
+    private final AiScheduler scheduler;
+
+    // tokens reserved for a chat completion on top of its prompt (rate limiting only)
+    @Value("${openai.rate-limit.completion-reserve:500}")
+    private int completionReserve;
+
+    // payload keys are sorted so equal bodies always serialize (and hash) the same way
+    private final ObjectMapper mapper = new ObjectMapper()
+            .configure(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true);
+
+    private final Map<String, Pending> calls = new ConcurrentHashMap<>();
+    private final Counter coalesced;
+
+    private static final class Pending {
+        final CompletableFuture<JsonNode> future = new CompletableFuture<>();
+        AiScheduler.Ticket ticket;       // guarded by this; null until submitted
+        AiScheduler.Priority promoteTo;  // guarded by this; asked for by a joiner before the ticket existed
+
+        /** Promotes the waiting call, or remembers the priority until it has been submitted. */
+        void promote(AiScheduler scheduler, AiScheduler.Priority priority) {
+            AiScheduler.Ticket t;
+            synchronized (this) {
+                if (ticket == null) {
+                    if (promoteTo == null || priority.ordinal() < promoteTo.ordinal()) {
+                        promoteTo = priority;
+                    }
+                    return;
+                }
+                t = ticket;
+            }
+            scheduler.promote(t, priority);
+        }
+
+        void submitted(AiScheduler scheduler, AiScheduler.Ticket t) {
+            AiScheduler.Priority wanted;
+            synchronized (this) {
+                ticket = t;
+                wanted = promoteTo;
+            }
+            if (wanted != null) {
+                scheduler.promote(t, wanted);
+            }
+        }
+    }
+
+    public AiGateway(OpenAiClient client, AiScheduler scheduler, AiMetrics metrics) {
+        this.client = client;
+        this.scheduler = scheduler;
+        this.coalesced = metrics.registry().counter("thynkah.openai.coalesced");
+    }
+
+    /**
+     * Sends (or joins) a call. The future fails with IllegalStateException when
+     * the upstream call failed after retries, or with AiOverloadedException when
+     * the scheduler shed it.
+     */
+    public CompletableFuture<JsonNode> call(String operation, String url, Map<String, Object> body,
+                                            AiScheduler.Priority priority) {
+        String json;
+        try {
+            json = mapper.writeValueAsString(body);
+        } catch (JsonProcessingException e) {
+            return CompletableFuture.failedFuture(new IllegalStateException("Cannot serialize OpenAI request", e));
+        }
+        String key = operation + ":" + Hashing.sha256Hex(json);
+
+        Pending call = new Pending();
+        Pending existing = calls.putIfAbsent(key, call);
+        if (existing != null) {
+            coalesced.increment();
+            existing.promote(scheduler, priority);
+            return existing.future.copy();
+        }
+        call.future.whenComplete((r, e) -> calls.remove(key, call));
+
+        // timings belong to this request: the call may be dispatched later on another request's thread
+        RequestSpans spans = RequestSpans.current();
+        String model = String.valueOf(body.get("model"));
+        int tokens = TokenEstimator.estimate(json) + (body.containsKey("messages") ? completionReserve : 0);
+        AiScheduler.Submitted<JsonNode> submitted = scheduler.submit(priority, tokens,
+                () -> client.postAsync(operation, url, model, json, spans));
+        call.submitted(scheduler, submitted.ticket);
+        submitted.future.whenComplete((r, e) -> {
+            if (e != null) {
+                call.future.completeExceptionally(e);
+            } else {
+                call.future.complete(r);
+            }
+        });
+        return call.future.copy();
+    }
+}
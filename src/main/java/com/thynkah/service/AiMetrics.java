@@ -0,0 +1,119 @@
+package com.thynkah.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Micrometer instrumentation for the retrieval + LLM pipeline.
+ * Everything is published under the "thynkah." prefix and scraped from /actuator/prometheus.
+ */
+@Component
+public class AiMetrics {
+
+    private final MeterRegistry registry;
+    private final AtomicInteger lastScanSize = new AtomicInteger();
+
+    public AiMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        Gauge.builder("thynkah.retrieval.last.scan.size", lastScanSize, AtomicInteger::get)
+                .description("Embedded notes considered by the most recent retrieval scan")
+                .register(registry);
+    }
+
+    /* ---------- Timers ---------- */
+
+    /**
+     * Times a pipeline stage ("embedding.call", "db.load", ...) both as a
+     * Micrometer timer and as a span of the current request.
+     */
+    public <T> T time(String stage, Supplier<T> work) {
+        long start = System.nanoTime();
+        try {
+            return work.get();
+        } finally {
+            record(stage, System.nanoTime() - start);
+        }
+    }
+
+    public void record(String stage, long nanos) {
+        registry.timer("thynkah." + stage).record(nanos, TimeUnit.NANOSECONDS);
+        RequestSpans.add(stage, nanos);
+    }
+
+    /** For stages that finish on another thread: record into the spans captured at start. */
+    public void record(String stage, long nanos, RequestSpans spans) {
+        registry.timer("thynkah." + stage).record(nanos, TimeUnit.NANOSECONDS);
+        if (spans != null) {
+            spans.record(stage, nanos);
+        }
+    }
+
+    /* ---------- Counters ---------- */
+
+    public void failure(String operation) {
+        registry.counter("thynkah.openai.failures", "operation", operation).increment();
+    }
+
+    public void retry(String operation) {
+        registry.counter("thynkah.openai.retries", "operation", operation).increment();
+    }
+
+    public void emptyEmbedding() {
+        registry.counter("thynkah.embedding.empty").increment();
+    }
+
+    /** Token usage from the "usage" block of an OpenAI response. */
+    public void tokens(String operation, String model, JsonNode usage) {
+        if (usage == null || usage.isMissingNode()) {
+            return;
+        }
+        int prompt = usage.path("prompt_tokens").asInt(0);
+        int completion = usage.path("completion_tokens").asInt(0);
+        if (prompt > 0) {
+            registry.counter("thynkah.openai.tokens",
+                    "operation", operation, "model", model, "type", "prompt").increment(prompt);
+        }
+        if (completion > 0) {
+            registry.counter("thynkah.openai.tokens",
+                    "operation", operation, "model", model, "type", "completion").increment(completion);
+        }
+    }
+
+    /* ---------- Gauges ---------- */
+
+    public void lastScanSize(int size) {
+        lastScanSize.set(size);
+    }
+
+    /**
+     * Publishes hit/miss counters and a hit-ratio gauge for a cache.
+     * The functions are read on scrape, so the cache only has to keep plain counts.
+     */
+    public <T> void cache(String name, T cache, ToDoubleFunction<T> hits, ToDoubleFunction<T> misses) {
+        FunctionCounter.builder("thynkah.cache.requests", cache, hits)
+                .tags("cache", name, "result", "hit")
+                .register(registry);
+        FunctionCounter.builder("thynkah.cache.requests", cache, misses)
+                .tags("cache", name, "result", "miss")
+                .register(registry);
+        Gauge.builder("thynkah.cache.hit.ratio", cache, c -> {
+                    double h = hits.applyAsDouble(c);
+                    double total = h + misses.applyAsDouble(c);
+                    return total == 0 ? 0.0 : h / total;
+                })
+                .tag("cache", name)
+                .register(registry);
+    }
+
+    public MeterRegistry registry() {
+        return registry;
+    }
+}
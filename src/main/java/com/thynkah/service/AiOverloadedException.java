@@ -0,0 +1,20 @@
+package com.thynkah.service;
+
+/**
+ * An AI call was shed because its priority class already has a full queue.
+ * Surfaced to HTTP clients as 503 with a Retry-After header.
+ */
+public class AiOverloadedException extends RuntimeException {
+
+    private final long retryAfterSeconds;
+
+    public AiOverloadedException(AiScheduler.Priority priority, long retryAfterSeconds) {
+        super("AI service busy (" + priority.name().toLowerCase() + " queue full), retry in "
+                + retryAfterSeconds + "s");
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
@@ -0,0 +1,330 @@
+package com.thynkah.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Admission control in front of every OpenAI call.
+ * <ul>
+ *   <li>two priority classes: INTERACTIVE (questions, answers, suggestions) always goes
+ *       before BACKGROUND (note / passage embeddings), and each class has its own
+ *       concurrency limit, so an import can never take every slot</li>
+ *   <li>bounded per-class queues: a full queue fails the call at once with
+ *       {@link AiOverloadedException} (503 + Retry-After) instead of letting it time out</li>
+ *   <li>token buckets for the account's requests-per-minute and tokens-per-minute quota, so
+ *       calls are paced below it; an upstream 429 pauses dispatch for its Retry-After</li>
+ * </ul>
+ * Waiting calls hold no thread. Metrics: thynkah.ai.queue.depth / in.flight (per class),
+ * thynkah.ai.queue.wait (timer), thynkah.ai.shed (counter).
+ */
+@Component
+public class AiScheduler {
+
+    private static final Logger log = LoggerFactory.getLogger(AiScheduler.class);
+
+    public enum Priority { INTERACTIVE, BACKGROUND }
+
+    /** A queued call; its priority can be raised while it waits (see {@link #promote}). */
+    public static final class Ticket {
+        private Priority priority;
+        private final int tokens;
+        private final Runnable start;
+        private final long enqueuedAt = System.nanoTime();
+        private boolean started;
+
+        private Ticket(Priority priority, int tokens, Runnable start) {
+            this.priority = priority;
+            this.tokens = tokens;
+            this.start = start;
+        }
+    }
+
+    private final ExecutorService executor;
+    private final int maxInFlight;
+    private final Map<Priority, Integer> maxConcurrent = new EnumMap<>(Priority.class);
+    private final Map<Priority, Integer> maxQueue = new EnumMap<>(Priority.class);
+    private final Map<Priority, Deque<Ticket>> queues = new EnumMap<>(Priority.class);
+    private final Map<Priority, int[]> running = new EnumMap<>(Priority.class);
+    private final Map<Priority, Timer> waitTimers = new EnumMap<>(Priority.class);
+    private final Map<Priority, Counter> shed = new EnumMap<>(Priority.class);
+
+    private final TokenBucket requestBucket;
+    private final TokenBucket tokenBucket;
+    private long pausedUntil; // System.nanoTime() deadline after an upstream 429 (0 = not paused)
+    private boolean wakeScheduled;
+
+    public AiScheduler(AiMetrics metrics,
+                       @Qualifier("aiExecutor") ExecutorService executor,
+                       @Value("${openai.max-in-flight:64}") int maxInFlight,
+                       @Value("${thynkah.ai.interactive.max-concurrent:48}") int interactiveConcurrent,
+                       @Value("${thynkah.ai.background.max-concurrent:8}") int backgroundConcurrent,
+                       @Value("${thynkah.ai.interactive.max-queue:200}") int interactiveQueue,
+                       @Value("${thynkah.ai.background.max-queue:2000}") int backgroundQueue,
+                       @Value("${openai.rate-limit.requests-per-minute:0}") int requestsPerMinute,
+                       @Value("${openai.rate-limit.tokens-per-minute:0}") int tokensPerMinute) {
+        this.executor = executor;
+        this.maxInFlight = Math.max(1, maxInFlight);
+        maxConcurrent.put(Priority.INTERACTIVE, Math.max(1, interactiveConcurrent));
+        maxConcurrent.put(Priority.BACKGROUND, Math.max(1, backgroundConcurrent));
+        maxQueue.put(Priority.INTERACTIVE, Math.max(0, interactiveQueue));
+        maxQueue.put(Priority.BACKGROUND, Math.max(0, backgroundQueue));
+        this.requestBucket = new TokenBucket(requestsPerMinute);
+        this.tokenBucket = new TokenBucket(tokensPerMinute);
+
+        for (Priority p : Priority.values()) {
+            String cls = p.name().toLowerCase();
+            Deque<Ticket> queue = new ArrayDeque<>();
+            int[] slots = new int[1];
+            queues.put(p, queue);
+            running.put(p, slots);
+            Gauge.builder("thynkah.ai.queue.depth", this, s -> s.depth(p))
+                    .description("AI calls waiting for admission")
+                    .tag("class", cls)
+                    .register(metrics.registry());
+            Gauge.builder("thynkah.ai.in.flight", this, s -> s.inFlight(p))
+                    .description("AI calls admitted and not finished")
+                    .tag("class", cls)
+                    .register(metrics.registry());
+            waitTimers.put(p, Timer.builder("thynkah.ai.queue.wait")
+                    .description("Time AI calls spent queued before admission")
+                    .tag("class", cls)
+                    .register(metrics.registry()));
+            shed.put(p, Counter.builder("thynkah.ai.shed")
+                    .description("AI calls rejected because their queue was full")
+                    .tag("class", cls)
+                    .register(metrics.registry()));
+        }
+    }
+
+    /**
+     * Queues {@code call} and starts it once its class, the global window and the rate
+     * limits allow. {@code tokens} is the estimated token cost used for the TPM bucket.
+     * The future fails with {@link AiOverloadedException} when the queue is full; the
+     * ticket lets a waiting call be promoted.
+     */
+    public <T> Submitted<T> submit(Priority priority, int tokens, Supplier<CompletableFuture<T>> call) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Ticket[] self = new Ticket[1];
+        Ticket ticket = new Ticket(priority, Math.max(1, tokens), () -> {
+            CompletableFuture<T> started;
+            try {
+                started = call.get();
+            } catch (RuntimeException e) {
+                started = CompletableFuture.failedFuture(e);
+            }
+            started.whenComplete((r, e) -> {
+                finished(self[0]);
+                if (e != null) {
+                    result.completeExceptionally(e);
+                } else {
+                    result.complete(r);
+                }
+            });
+        });
+        self[0] = ticket;
+
+        synchronized (this) {
+            Deque<Ticket> queue = queues.get(priority);
+            if (queue.size() >= maxQueue.get(priority)) {
+                shed.get(priority).increment();
+                result.completeExceptionally(new AiOverloadedException(priority, retryAfterSeconds()));
+                return new Submitted<>(result, null);
+            }
+            queue.addLast(ticket);
+        }
+        drain();
+        return new Submitted<>(result, ticket);
+    }
+
+    /** A submitted call's future and its ticket (null when it was shed). */
+    public static final class Submitted<T> {
+        public final CompletableFuture<T> future;
+        public final Ticket ticket;
+
+        Submitted(CompletableFuture<T> future, Ticket ticket) {
+            this.future = future;
+            this.ticket = ticket;
+        }
+    }
+
+    /** Moves a still-waiting call up to {@code priority} (e.g. a question joined a background embedding). */
+    public void promote(Ticket ticket, Priority priority) {
+        if (ticket == null) {
+            return;
+        }
+        synchronized (this) {
+            if (ticket.started || ticket.priority.ordinal() <= priority.ordinal()) {
+                return;
+            }
+            if (queues.get(ticket.priority).remove(ticket)) {
+                ticket.priority = priority;
+                queues.get(priority).addLast(ticket);
+            }
+        }
+        drain();
+    }
+
+    /** Stops admitting calls for a while after the upstream answered 429. */
+    public void pause(long millis) {
+        synchronized (this) {
+            long until = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+            if (pausedUntil == 0 || until - pausedUntil > 0) {
+                pausedUntil = until;
+            }
+            // the quota is clearly used up: do not let the buckets burst right after the pause
+            requestBucket.drain();
+            tokenBucket.drain();
+        }
+        log.warn("OpenAI rate limit hit, pausing AI dispatch for {} ms", millis);
+    }
+
+    /* ---------- Dispatch ---------- */
+
+    private void finished(Ticket ticket) {
+        synchronized (this) {
+            running.get(ticket.priority)[0]--;
+        }
+        drain();
+    }
+
+    private void drain() {
+        while (true) {
+            Ticket next;
+            synchronized (this) {
+                next = nextAdmissible();
+                if (next == null) {
+                    return;
+                }
+                next.started = true;
+                running.get(next.priority)[0]++;
+            }
+            waitTimers.get(next.priority).record(System.nanoTime() - next.enqueuedAt, TimeUnit.NANOSECONDS);
+            next.start.run();
+        }
+    }
+
+    // caller holds the lock
+    private Ticket nextAdmissible() {
+        int total = 0;
+        for (int[] slots : running.values()) {
+            total += slots[0];
+        }
+        if (total >= maxInFlight) {
+            return null;
+        }
+        long now = System.nanoTime();
+        if (pausedUntil != 0) {
+            if (pausedUntil - now > 0) {
+                scheduleWake(pausedUntil - now);
+                return null;
+            }
+            pausedUntil = 0;
+        }
+        for (Priority p : Priority.values()) { // declaration order = priority order
+            Deque<Ticket> queue = queues.get(p);
+            if (queue.isEmpty() || running.get(p)[0] >= maxConcurrent.get(p)) {
+                continue;
+            }
+            Ticket head = queue.peekFirst();
+            long wait = Math.max(requestBucket.waitNanos(1, now), tokenBucket.waitNanos(head.tokens, now));
+            if (wait > 0) {
+                // lower classes must not overtake a rate-limited higher class
+                scheduleWake(wait);
+                return null;
+            }
+            requestBucket.take(1, now);
+            tokenBucket.take(head.tokens, now);
+            return queue.pollFirst();
+        }
+        return null;
+    }
+
+    // caller holds the lock
+    private void scheduleWake(long nanos) {
+        if (wakeScheduled) {
+            return;
+        }
+        wakeScheduled = true;
+        long millis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(nanos));
+        CompletableFuture.delayedExecutor(millis, TimeUnit.MILLISECONDS, executor).execute(() -> {
+            synchronized (this) {
+                wakeScheduled = false;
+            }
+            drain();
+        });
+    }
+
+    private synchronized int depth(Priority p) {
+        return queues.get(p).size();
+    }
+
+    private synchronized int inFlight(Priority p) {
+        return running.get(p)[0];
+    }
+
+    // caller holds the lock: a rough time until the queued work has gone through
+    private long retryAfterSeconds() {
+        int queued = 0;
+        for (Deque<Ticket> q : queues.values()) {
+            queued += q.size();
+        }
+        double perSecond = requestBucket.perMinute > 0 ? requestBucket.perMinute / 60.0 : maxInFlight;
+        return Math.max(1, (long) Math.ceil(queued / perSecond));
+    }
+
+    /**
+     * Continuous-refill token bucket holding up to one minute of quota.
+     * A zero quota disables it. Costs above the capacity are capped to it.
+     */
+    private static final class TokenBucket {
+        final int perMinute;
+        private double available;
+        private long refilledAt = System.nanoTime();
+
+        TokenBucket(int perMinute) {
+            this.perMinute = Math.max(0, perMinute);
+            this.available = this.perMinute;
+        }
+
+        long waitNanos(int cost, long now) {
+            if (perMinute == 0) {
+                return 0;
+            }
+            refill(now);
+            double missing = Math.min(cost, perMinute) - available;
+            return missing <= 0 ? 0 : (long) Math.ceil(missing * TimeUnit.MINUTES.toNanos(1) / perMinute);
+        }
+
+        void take(int cost, long now) {
+            if (perMinute == 0) {
+                return;
+            }
+            refill(now);
+            available -= Math.min(cost, perMinute);
+        }
+
+        void drain() {
+            available = Math.min(available, 0);
+        }
+
+        private void refill(long now) {
+            available = Math.min(perMinute, available + (now - refilledAt) * (double) perMinute / TimeUnit.MINUTES.toNanos(1));
+            refilledAt = now;
+        }
+    }
+}
@@ -0,0 +1,257 @@
+package com.thynkah.service;
+
+import com.thynkah.model.Note;
+import com.thynkah.model.NoteChange;
+import com.thynkah.repository.NoteChangeRepository;
+import com.thynkah.repository.NoteRepository;
+import io.micrometer.core.instrument.Gauge;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Cross-instance change journal. Every note mutation appends a row to note_changes;
+ * each instance tails the table in small batches and applies changes made by other
+ * instances to its local shards and caches, so nodes converge without full reloads.
+ * Own changes are skipped (they were applied locally when they were made).
+ */
+@Service
+public class ChangeJournal {
+
+    private static final Logger log = LoggerFactory.getLogger(ChangeJournal.class);
+
+    private final NoteChangeRepository changes;
+    private final NoteRepository notes;
+    private final PassageService passageService;
+    private final VectorShardManager shards;
+    private final VectorSnapshotStore snapshots;
+    private final MarkdownService markdownService;
+    private final NoteCache noteCache;
+    private final AiMetrics metrics;
+    private final String nodeId;
+    private final int batchSize;
+    private final int retentionDays;
+
+    @Value("${thynkah.journal.gap-wait-ms:5000}")
+    private long gapWaitMs;
+
+    // last journal seq applied on this node
+    private final AtomicLong cursor = new AtomicLong(-1);
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong lagSeconds = new AtomicLong();
+    // owner -> latest journal seq known here: loaded once, then advanced by record() and poll()
+    private final Map<String, Long> versions = new ConcurrentHashMap<>();
+
+    public ChangeJournal(NoteChangeRepository changes,
+                         NoteRepository notes,
+                         PassageService passageService,
+                         VectorShardManager shards,
+                         VectorSnapshotStore snapshots,
+                         MarkdownService markdownService,
+                         NoteCache noteCache,
+                         AiMetrics metrics,
+                         @Value("${thynkah.node-id:}") String nodeId,
+                         @Value("${thynkah.journal.batch-size:200}") int batchSize,
+                         @Value("${thynkah.journal.retention-days:7}") int retentionDays) {
+        this.changes = changes;
+        this.notes = notes;
+        this.passageService = passageService;
+        this.shards = shards;
+        this.snapshots = snapshots;
+        this.markdownService = markdownService;
+        this.noteCache = noteCache;
+        this.metrics = metrics;
+        this.nodeId = (nodeId == null || nodeId.isBlank()) ? UUID.randomUUID().toString() : nodeId;
+        this.batchSize = Math.max(1, batchSize);
+        this.retentionDays = Math.max(1, retentionDays);
+        Gauge.builder("thynkah.journal.lag", this, j -> Math.max(0, j.head.get() - j.cursor.get()))
+                .description("Journal entries not yet applied on this instance")
+                .register(metrics.registry());
+        Gauge.builder("thynkah.journal.lag.seconds", lagSeconds, AtomicLong::get)
+                .description("Age of the oldest journal entry not yet applied on this instance")
+                .baseUnit("seconds")
+                .register(metrics.registry());
+    }
+
+    /* ---------- Recording ---------- */
+
+    /** Appends a mutation of {@code note} to the journal. */
+    public void record(Note note, String op) {
+        if (note.getId() == null) {
+            return;
+        }
+        NoteChange saved = changes.save(new NoteChange(note.getId(), note.getOwner(), op, nodeId));
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            // readers must not see the new version while they can still read the old note
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    advance(saved.getOwner(), saved.getSeq());
+                }
+            });
+        } else {
+            advance(saved.getOwner(), saved.getSeq());
+        }
+    }
+
+    /**
+     * Latest journal position of an owner's notes (0 when they have no journaled change).
+     * Read from the database once per owner; changes made on other instances show up
+     * once they are tailed.
+     */
+    public long version(String owner) {
+        Long known = versions.get(owner);
+        if (known != null) {
+            return known;
+        }
+        return versions.merge(owner, changes.maxSeqForOwner(owner), Math::max);
+    }
+
+    private void advance(String owner, Long seq) {
+        if (owner != null && seq != null) {
+            // owners not asked about yet are loaded from the database on first use
+            versions.computeIfPresent(owner, (o, v) -> Math.max(v, seq));
+        }
+    }
+
+    /**
+     * Highest seq this instance has tailed past: every lower seq is committed (or
+     * abandoned), so clients can be handed a cursor up to here without missing a row.
+     */
+    public long stableSeq() {
+        long applied = cursor.get();
+        return applied >= 0 ? applied : changes.maxSeq();
+    }
+
+    /**
+     * True when every change after {@code since} is still in the journal, i.e. no row
+     * after it can have been removed by {@link #cleanup()}.
+     */
+    public boolean covers(long since) {
+        if (since < 0 || since > changes.maxSeq()) {
+            return false;
+        }
+        Long oldestRetained = changes.minSeqSince(LocalDateTime.now().minusDays(retentionDays));
+        return oldestRetained != null && since >= oldestRetained - 1;
+    }
+
+    /* ---------- Tailing ---------- */
+
+    @Scheduled(fixedDelayString = "${thynkah.journal.poll-ms:1000}")
+    public void poll() {
+        try {
+            if (cursor.get() < 0) {
+                // resume where the on-disk snapshots left off, or start at the head on a fresh node
+                long saved = snapshots.readCursor();
+                long headSeq = changes.maxSeq();
+                if (saved >= 0 && saved != headSeq && !covers(saved)) {
+                    // changes the snapshots miss were cleaned up: rebuild them instead of replaying
+                    log.warn("Journal no longer holds the changes after seq {}; rebuilding vector shards", saved);
+                    shards.reset();
+                    saved = headSeq;
+                    snapshots.writeCursor(saved);
+                }
+                cursor.set(saved >= 0 ? saved : headSeq);
+            }
+            List<NoteChange> fetched;
+            do {
+                fetched = changes.findBySeqGreaterThanOrderBySeqAsc(cursor.get(), PageRequest.of(0, batchSize));
+                List<NoteChange> batch = contiguous(fetched);
+                if (!batch.isEmpty()) {
+                    lagSeconds.set(Math.max(0, Duration.between(batch.get(0).getChangedAt(), LocalDateTime.now()).getSeconds()));
+                    metrics.time("journal.apply", () -> {
+                        apply(batch);
+                        return null;
+                    });
+                    // after the shards: an answer cached under the new version must see the change
+                    for (NoteChange c : batch) {
+                        advance(c.getOwner(), c.getSeq());
+                    }
+                    long last = batch.get(batch.size() - 1).getSeq();
+                    cursor.set(last);
+                    snapshots.writeCursor(last);
+                }
+                if (batch.size() < fetched.size()) {
+                    break; // waiting for a gap to fill
+                }
+            } while (fetched.size() == batchSize);
+            lagSeconds.set(0);
+            head.set(Math.max(cursor.get(), changes.maxSeq()));
+        } catch (RuntimeException e) {
+            log.warn("Change journal poll failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * AUTO_INCREMENT values are handed out before commit, so a lower seq can become
+     * visible after a higher one. Stop at a gap until it fills, unless it is older than
+     * gap-wait-ms (the insert was rolled back and the seq will never appear).
+     */
+    private List<NoteChange> contiguous(List<NoteChange> fetched) {
+        long expected = cursor.get() + 1;
+        LocalDateTime gapDeadline = LocalDateTime.now().minusNanos(TimeUnit.MILLISECONDS.toNanos(gapWaitMs));
+        for (int i = 0; i < fetched.size(); i++) {
+            NoteChange c = fetched.get(i);
+            if (c.getSeq() != expected && c.getChangedAt().isAfter(gapDeadline)) {
+                return fetched.subList(0, i);
+            }
+            expected = c.getSeq() + 1;
+        }
+        return fetched;
+    }
+
+    private void apply(List<NoteChange> batch) {
+        // several changes to one note collapse into a single refresh from its current row
+        Map<Long, NoteChange> latest = new LinkedHashMap<>();
+        for (NoteChange c : batch) {
+            if (!nodeId.equals(c.getOrigin())) {
+                latest.put(c.getNoteId(), c);
+            }
+        }
+        if (latest.isEmpty()) {
+            return;
+        }
+
+        Map<Long, Note> current = notes.findAllById(latest.keySet()).stream()
+                .collect(Collectors.toMap(Note::getId, Function.identity()));
+        for (NoteChange c : latest.values()) {
+            markdownService.evict(c.getNoteId());
+            noteCache.evict(c.getNoteId());
+            Note note = current.get(c.getNoteId());
+            if (note == null || NoteChange.DELETE.equals(c.getOp())) {
+                shards.remove(c.getOwner(), c.getNoteId());
+            } else if (!NoteChange.TAG.equals(c.getOp())) {
+                // tags are not part of the vector data
+                shards.upsert(note, passageService.forNote(note.getId()));
+            }
+        }
+        log.debug("Applied {} journal change(s) from other instances", latest.size());
+    }
+
+    @Scheduled(cron = "${thynkah.journal.cleanup-cron:0 30 3 * * *}")
+    public void cleanup() {
+        // each owner's latest row stays: it is their collection version
+        List<Long> keep = changes.latestSeqPerOwner();
+        if (keep.isEmpty()) {
+            return;
+        }
+        int removed = changes.deleteOlderThan(LocalDateTime.now().minusDays(retentionDays), keep);
+        if (removed > 0) {
+            log.info("Removed {} journal entries older than {} days", removed, retentionDays);
+        }
+    }
+}
@@ -0,0 +1,654 @@
+package com.thynkah.service;
+
+import com.thynkah.model.Note;
+import com.thynkah.model.NoteCluster;
+import com.thynkah.repository.NoteClusterRepository;
+import com.thynkah.repository.NoteRepository;
+import io.micrometer.core.instrument.Gauge;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
+
+/**
+ * Topic clusters per owner, learned with mini-batch k-means (Sculley, 2010) over the
+ * vectors of the owner's search shard. An owner is seeded once (k-means++ on a sample,
+ * a few random mini-batches, one assignment pass); after that, saved and re-embedded
+ * notes are the mini-batches: each is assigned to its nearest centroid, which moves
+ * towards it by 1/(samples seen), so clusters follow new notes without recomputation.
+ * <p>
+ * Centroids live in note_clusters and each note's cluster in notes.cluster_id. They power
+ * tag suggestions and, with thynkah.retrieval.nprobe &gt; 0, cluster-pruned retrieval that
+ * only scores notes of the nprobe nearest centroids (see {@link #report}).
+ * <p>
+ * Training runs on one instance at a time (a {@link ClusterLock}) and starts from the
+ * centroids as stored, so instances never overwrite each other's updates; the others
+ * re-read them every thynkah.clusters.reload-ms.
+ */
+@Service
+public class ClusterIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(ClusterIndex.class);
+
+    // notes.cluster_id for notes without a usable embedding (so they are not picked up again)
+    static final long UNCLUSTERABLE = 0L;
+
+    private final NoteClusterRepository clusterRepo;
+    private final NoteRepository notes;
+    private final VectorShardManager shards;
+    private final EmbeddingStore embeddingStore;
+    private final ClusterLock lock;
+    private final ExecutorService dbExecutor;
+    private final AiMetrics metrics;
+
+    @Value("${thynkah.clusters.max-k:64}")
+    private int maxK;
+    @Value("${thynkah.clusters.min-notes:40}")
+    private int minNotes;
+    @Value("${thynkah.clusters.batch-size:100}")
+    private int batchSize;
+    @Value("${thynkah.clusters.init-iterations:30}")
+    private int initIterations;
+    @Value("${thynkah.clusters.reload-ms:300000}")
+    private long reloadMs;
+    @Value("${thynkah.retrieval.nprobe:0}")
+    private int nprobe;
+
+    private final Map<String, State> states = new ConcurrentHashMap<>();
+    // note id -> owner, waiting to be folded into the clusters
+    private final Map<Long, String> pending = new ConcurrentHashMap<>();
+    // owners with too few notes to seed; left out of the backfill until one of their notes changes
+    private final Set<String> tooFew = ConcurrentHashMap.newKeySet();
+    private long backfillAfter;
+
+    public ClusterIndex(NoteClusterRepository clusterRepo,
+                        NoteRepository notes,
+                        VectorShardManager shards,
+                        EmbeddingStore embeddingStore,
+                        ClusterLock lock,
+                        @Qualifier("dbExecutor") ExecutorService dbExecutor,
+                        AiMetrics metrics) {
+        this.clusterRepo = clusterRepo;
+        this.notes = notes;
+        this.shards = shards;
+        this.embeddingStore = embeddingStore;
+        this.lock = lock;
+        this.dbExecutor = dbExecutor;
+        this.metrics = metrics;
+        Gauge.builder("thynkah.clusters.pending", pending, Map::size)
+                .description("Notes waiting to be assigned to a topic cluster")
+                .register(metrics.registry());
+    }
+
+    /** An immutable centroid; training publishes new ones instead of mutating shared arrays. */
+    private static final class Centroid {
+        final long id;
+        final float[] v;
+        final double norm;
+        final long count;
+
+        Centroid(long id, float[] v, long count) {
+            this.id = id;
+            this.v = v;
+            this.count = count;
+            double sum = 0.0;
+            for (float x : v) {
+                sum += x * x;
+            }
+            this.norm = Math.sqrt(sum);
+        }
+    }
+
+    /** One owner's clusters as known to this instance. */
+    private static final class State {
+        volatile List<Centroid> centroids;
+        final Map<Long, Long> assignment; // note id -> cluster id
+        final long loadedAt = System.currentTimeMillis();
+
+        State(List<Centroid> centroids, Map<Long, Long> assignment) {
+            this.centroids = centroids;
+            this.assignment = assignment;
+        }
+    }
+
+    /* ---------- Queueing ---------- */
+
+    public void noteChanged(Note note) {
+        if (note.getId() != null && note.getOwner() != null) {
+            tooFew.remove(note.getOwner());
+            pending.put(note.getId(), note.getOwner());
+        }
+    }
+
+    public void noteDeleted(String owner, Long noteId) {
+        pending.remove(noteId);
+        State s = states.get(owner);
+        if (s != null) {
+            s.assignment.remove(noteId);
+        }
+    }
+
+    /* ---------- Retrieval ---------- */
+
+    /**
+     * Narrows retrieval candidates to notes in the nprobe clusters nearest the query.
+     * Notes not assigned yet are always kept. Returns {@code candidates} unchanged when
+     * pruning is off or the owner has no clusters.
+     */
+    public List<VectorShard.Entry> prune(String owner, List<VectorShard.Entry> candidates, double[] query) {
+        if (nprobe <= 0) {
+            return candidates;
+        }
+        State s = state(owner);
+        if (s == null || s.centroids.size() <= nprobe) {
+            return candidates;
+        }
+        return prune(s, candidates, new VectorShard.Query(query), nprobe);
+    }
+
+    private static List<VectorShard.Entry> prune(State s, List<VectorShard.Entry> candidates,
+                                                 VectorShard.Query query, int probes) {
+        Set<Long> probe = new HashSet<>(nearest(s.centroids, query, probes));
+        List<VectorShard.Entry> out = new ArrayList<>();
+        for (VectorShard.Entry e : candidates) {
+            Long cluster = s.assignment.get(e.getNoteId());
+            if (cluster == null || probe.contains(cluster)) {
+                out.add(e);
+            }
+        }
+        return out;
+    }
+
+    /** Ids of the {@code n} centroids most similar to the query, best first. */
+    private static List<Long> nearest(List<Centroid> centroids, VectorShard.Query query, int n) {
+        List<Centroid> ranked = new ArrayList<>(centroids);
+        Map<Long, Double> score = new HashMap<>();
+        for (Centroid c : ranked) {
+            score.put(c.id, VectorShard.cosine(query, FloatBuffer.wrap(c.v), c.norm));
+        }
+        ranked.sort(Comparator.comparingDouble((Centroid c) -> score.get(c.id)).reversed());
+        return ranked.subList(0, Math.min(n, ranked.size())).stream().map(c -> c.id).collect(Collectors.toList());
+    }
+
+    /* ---------- Tag suggestions ---------- */
+
+    /**
+     * Tags for draft text: the most used tags in the two clusters nearest to it.
+     * Empty until the owner has clusters.
+     */
+    public CompletableFuture<List<String>> suggestTags(String owner, String text, int limit) {
+        if (text == null || text.isBlank()) {
+            return CompletableFuture.completedFuture(Collections.emptyList());
+        }
+        // not persisted: drafts change with every keystroke; a user is waiting
+        return embeddingStore.embedAsync(text, false, AiScheduler.Priority.INTERACTIVE).thenApplyAsync(RequestSpans.wrap(vector -> {
+            State s = state(owner);
+            if (vector.length == 0 || s == null || s.centroids.isEmpty()) {
+                return Collections.<String>emptyList();
+            }
+            VectorShard.Query query = new VectorShard.Query(toDoubles(vector));
+            Map<String, Integer> counts = new LinkedHashMap<>();
+            for (Long cluster : nearest(s.centroids, query, 2)) {
+                if (counts.size() >= limit) {
+                    break;
+                }
+                for (String tags : notes.findTagsInCluster(owner, cluster, PageRequest.of(0, 200))) {
+                    for (String tag : tags.split(",")) {
+                        String t = tag.trim();
+                        if (!t.isEmpty()) {
+                            counts.merge(t, 1, Integer::sum);
+                        }
+                    }
+                }
+            }
+            return counts.entrySet().stream()
+                    .sorted(Map.Entry.<String, Integer>comparingByValue().reversed())
+                    .limit(limit)
+                    .map(Map.Entry::getKey)
+                    .collect(Collectors.toList());
+        }), dbExecutor);
+    }
+
+    /* ---------- Background training ---------- */
+
+    @Scheduled(fixedDelayString = "${thynkah.clusters.refresh-ms:5000}")
+    public void refresh() {
+        try {
+            // pending notes stay queued while another instance is training
+            lock.runExclusive("clusters", this::trainPending);
+        } catch (RuntimeException e) {
+            log.warn("Cluster refresh failed: {}", e.getMessage());
+        }
+    }
+
+    private void trainPending() {
+        if (pending.isEmpty()) {
+            List<Object[]> rows = notes.findUnclustered(backfillAfter, PageRequest.of(0, batchSize));
+            for (Object[] row : rows) {
+                if (!tooFew.contains((String) row[1])) {
+                    pending.putIfAbsent((Long) row[0], (String) row[1]);
+                }
+            }
+            // wrap around so owners still below min-notes do not block everyone else
+            backfillAfter = rows.isEmpty() ? 0 : (Long) rows.get(rows.size() - 1)[0];
+        }
+        if (pending.isEmpty()) {
+            return;
+        }
+        Map<String, List<Long>> byOwner = new HashMap<>();
+        Iterator<Map.Entry<Long, String>> it = pending.entrySet().iterator();
+        for (int n = 0; n < batchSize && it.hasNext(); n++) {
+            Map.Entry<Long, String> e = it.next();
+            byOwner.computeIfAbsent(e.getValue(), o -> new ArrayList<>()).add(e.getKey());
+            it.remove();
+        }
+        metrics.time("clusters.train", () -> {
+            byOwner.forEach(this::train);
+            return null;
+        });
+    }
+
+    private void train(String owner, List<Long> noteIds) {
+        VectorShard shard = shards.shard(owner);
+        State s = state(owner);
+        if (s != null) {
+            // another instance may have moved (or dropped) the centroids since they were loaded
+            s.centroids = centroids(clusterRepo.findByOwnerOrderByIdAsc(owner));
+        }
+        if (s == null || s.centroids.isEmpty()) {
+            states.remove(owner);
+            initialize(owner, shard);
+            return;
+        }
+
+        List<VectorShard.Entry> batch = new ArrayList<>();
+        List<Long> unclusterable = new ArrayList<>();
+        for (Long id : noteIds) {
+            VectorShard.Entry e = shard.get(id);
+            if (e == null) {
+                continue; // deleted meanwhile
+            }
+            if (eligible(e)) {
+                batch.add(e);
+            } else {
+                unclusterable.add(id);
+            }
+        }
+        if (!unclusterable.isEmpty()) {
+            assign(UNCLUSTERABLE, unclusterable);
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        Trainer t = new Trainer(s.centroids);
+        long[] assigned = t.step(batch);
+        s.centroids = t.publish();
+        clusterRepo.saveAll(updated(s.centroids, t.touched));
+
+        Map<Long, List<Long>> moves = new HashMap<>();
+        for (int i = 0; i < batch.size(); i++) {
+            long id = batch.get(i).getNoteId();
+            Long previous = s.assignment.put(id, assigned[i]);
+            if (previous == null || previous != assigned[i]) {
+                moves.computeIfAbsent(assigned[i], c -> new ArrayList<>()).add(id);
+            }
+        }
+        moves.forEach(this::assign);
+    }
+
+    /** Seeds an owner's clusters from their shard and assigns every note. */
+    private void initialize(String owner, VectorShard shard) {
+        List<VectorShard.Entry> all = new ArrayList<>();
+        List<Long> unclusterable = new ArrayList<>();
+        for (VectorShard.Entry e : shard.entries()) {
+            if (eligible(e)) {
+                all.add(e);
+            } else {
+                unclusterable.add(e.getNoteId());
+            }
+        }
+        if (all.size() < Math.max(minNotes, 2)) {
+            tooFew.add(owner); // picked up again once one of their notes changes
+            return;
+        }
+        int k = (int) Math.max(2, Math.min(maxK, Math.round(Math.sqrt(all.size() / 2.0))));
+        int dims = all.stream().mapToInt(e -> e.vector.limit()).min().orElse(0);
+
+        Random random = new Random(owner.hashCode());
+        Trainer t = new Trainer(seed(all, k, dims, random));
+        for (int i = 0; i < initIterations; i++) {
+            t.step(sample(all, batchSize, random));
+        }
+        List<Centroid> trained = t.publish();
+
+        // persist centroids to get their ids, then record every note's cluster
+        List<NoteCluster> rows = new ArrayList<>();
+        for (Centroid c : trained) {
+            rows.add(new NoteCluster(owner, dims, pack(c.v), c.count));
+        }
+        rows = clusterRepo.saveAll(rows);
+        List<Centroid> centroids = new ArrayList<>();
+        for (int i = 0; i < trained.size(); i++) {
+            centroids.add(new Centroid(rows.get(i).getId(), trained.get(i).v, trained.get(i).count));
+        }
+
+        Map<Long, Long> assignment = new ConcurrentHashMap<>();
+        Map<Long, List<Long>> members = new HashMap<>();
+        for (VectorShard.Entry e : all) {
+            long cluster = nearest(centroids, new VectorShard.Query(toDoubles(e.getVector())), 1).get(0);
+            assignment.put(e.getNoteId(), cluster);
+            members.computeIfAbsent(cluster, c -> new ArrayList<>()).add(e.getNoteId());
+        }
+        members.forEach(this::assign);
+        if (!unclusterable.isEmpty()) {
+            assign(UNCLUSTERABLE, unclusterable);
+        }
+        states.put(owner, new State(centroids, assignment));
+        log.info("Clustered {} notes of {} into {} topics", all.size(), owner, k);
+    }
+
+    /** k-means++ seeding (distance = 1 - cosine) on a sample of the owner's notes. */
+    private static List<Centroid> seed(List<VectorShard.Entry> all, int k, int dims, Random random) {
+        List<VectorShard.Entry> pool = sample(all, Math.min(all.size(), 2000), random);
+        List<Centroid> seeds = new ArrayList<>();
+        seeds.add(new Centroid(-1, unit(pool.get(random.nextInt(pool.size())), dims), 0));
+        double[] dist = new double[pool.size()];
+        Arrays.fill(dist, Double.MAX_VALUE);
+        while (seeds.size() < k) {
+            Centroid last = seeds.get(seeds.size() - 1);
+            double total = 0.0;
+            for (int i = 0; i < pool.size(); i++) {
+                VectorShard.Query q = new VectorShard.Query(toDoubles(pool.get(i).getVector()));
+                double d = 1.0 - VectorShard.cosine(q, FloatBuffer.wrap(last.v), last.norm);
+                dist[i] = Math.min(dist[i], d * d);
+                total += dist[i];
+            }
+            double r = random.nextDouble() * total;
+            int pick = 0;
+            for (double acc = dist[0]; acc < r && pick < pool.size() - 1; acc += dist[++pick]) {
+                // walk to the sampled index
+            }
+            seeds.add(new Centroid(-1 - seeds.size(), unit(pool.get(pick), dims), 0));
+        }
+        return seeds;
+    }
+
+    /** Mini-batch k-means steps over copies of the current centroids. */
+    private static final class Trainer {
+        final long[] ids;
+        final float[][] v;
+        final long[] counts;
+        final Set<Long> touched = new HashSet<>();
+
+        Trainer(List<Centroid> centroids) {
+            int k = centroids.size();
+            ids = new long[k];
+            v = new float[k][];
+            counts = new long[k];
+            for (int i = 0; i < k; i++) {
+                Centroid c = centroids.get(i);
+                ids[i] = c.id;
+                v[i] = c.v.clone();
+                counts[i] = c.count;
+            }
+        }
+
+        /** Assigns the batch to the current centroids, then moves each centroid towards its members. */
+        long[] step(List<VectorShard.Entry> batch) {
+            List<Centroid> current = publish();
+            int[] nearest = new int[batch.size()];
+            long[] assigned = new long[batch.size()];
+            for (int i = 0; i < batch.size(); i++) {
+                VectorShard.Query q = new VectorShard.Query(toDoubles(batch.get(i).getVector()));
+                double best = -Double.MAX_VALUE;
+                for (int c = 0; c < current.size(); c++) {
+                    double sim = VectorShard.cosine(q, FloatBuffer.wrap(current.get(c).v), current.get(c).norm);
+                    if (sim > best) {
+                        best = sim;
+                        nearest[i] = c;
+                    }
+                }
+                assigned[i] = ids[nearest[i]];
+            }
+            for (int i = 0; i < batch.size(); i++) {
+                int c = nearest[i];
+                float[] x = unit(batch.get(i), v[c].length);
+                counts[c]++;
+                double lr = 1.0 / counts[c];
+                for (int d = 0; d < v[c].length; d++) {
+                    v[c][d] += (float) (lr * (x[d] - v[c][d]));
+                }
+                touched.add(ids[c]);
+            }
+            return assigned;
+        }
+
+        List<Centroid> publish() {
+            List<Centroid> out = new ArrayList<>(ids.length);
+            for (int i = 0; i < ids.length; i++) {
+                out.add(new Centroid(ids[i], v[i].clone(), counts[i]));
+            }
+            return out;
+        }
+    }
+
+    // bounded IN lists: a first assignment pass can cover thousands of notes per cluster
+    private void assign(long cluster, List<Long> noteIds) {
+        for (int i = 0; i < noteIds.size(); i += 1000) {
+            notes.assignCluster(cluster, noteIds.subList(i, Math.min(noteIds.size(), i + 1000)));
+        }
+    }
+
+    private List<NoteCluster> updated(List<Centroid> centroids, Set<Long> touched) {
+        Map<Long, Centroid> byId = centroids.stream()
+                .filter(c -> touched.contains(c.id))
+                .collect(Collectors.toMap(c -> c.id, c -> c));
+        List<NoteCluster> rows = clusterRepo.findAllById(byId.keySet());
+        for (NoteCluster row : rows) {
+            Centroid c = byId.get(row.getId());
+            row.update(pack(c.v), c.count);
+        }
+        return rows;
+    }
+
+    /* ---------- Recall / speedup report ---------- */
+
+    /**
+     * Compares cluster-pruned scans with the exact scan for the owner's own notes used
+     * as queries: recall@k of the pruned top-k against the exact top-k, share of notes
+     * scanned, and time per query, for a range of nprobe values.
+     */
+    public Map<String, Object> report(String owner, int queries, int k) {
+        Map<String, Object> out = new LinkedHashMap<>();
+        State s = state(owner);
+        List<VectorShard.Entry> all = shards.shard(owner).entries().stream()
+                .filter(this::eligible)
+                .collect(Collectors.toList());
+        out.put("notes", all.size());
+        out.put("clusters", s == null ? 0 : s.centroids.size());
+        out.put("nprobe", nprobe);
+        if (s == null || s.centroids.isEmpty() || all.isEmpty()) {
+            out.put("message", "No clusters yet (they are built once an owner has "
+                    + Math.max(minNotes, 2) + " embedded notes)");
+            return out;
+        }
+
+        Map<Long, Integer> sizes = new HashMap<>();
+        s.assignment.values().forEach(c -> sizes.merge(c, 1, Integer::sum));
+        out.put("clusterSizes", sizes.values().stream().sorted(Comparator.reverseOrder()).collect(Collectors.toList()));
+
+        List<VectorShard.Entry> sample = sample(all, Math.min(queries, all.size()), ThreadLocalRandom.current());
+        long exactNanos = 0;
+        List<Set<Long>> exact = new ArrayList<>();
+        for (VectorShard.Entry q : sample) {
+            long start = System.nanoTime();
+            exact.add(topK(all, q, k));
+            exactNanos += System.nanoTime() - start;
+        }
+        out.put("exactMicrosPerQuery", exactNanos / 1000 / sample.size());
+
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (int probes = 1; probes <= s.centroids.size(); probes *= 2) {
+            long nanos = 0;
+            long scanned = 0;
+            double recall = 0.0;
+            for (int i = 0; i < sample.size(); i++) {
+                VectorShard.Entry q = sample.get(i);
+                long start = System.nanoTime();
+                List<VectorShard.Entry> pruned = prune(s, all, new VectorShard.Query(toDoubles(q.getVector())), probes);
+                Set<Long> found = topK(pruned, q, k);
+                nanos += System.nanoTime() - start;
+                scanned += pruned.size();
+                Set<Long> truth = exact.get(i);
+                if (!truth.isEmpty()) {
+                    recall += (double) found.stream().filter(truth::contains).count() / truth.size();
+                }
+            }
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("nprobe", probes);
+            row.put("recallAtK", Math.round(1000.0 * recall / sample.size()) / 1000.0);
+            row.put("scannedFraction", Math.round(1000.0 * scanned / ((double) sample.size() * all.size())) / 1000.0);
+            row.put("microsPerQuery", nanos / 1000 / sample.size());
+            row.put("speedup", nanos == 0 ? null : Math.round(10.0 * exactNanos / nanos) / 10.0);
+            rows.add(row);
+        }
+        out.put("k", k);
+        out.put("queries", sample.size());
+        out.put("pruned", rows);
+        return out;
+    }
+
+    private static Set<Long> topK(List<VectorShard.Entry> entries, VectorShard.Entry q, int k) {
+        VectorShard.Query query = new VectorShard.Query(toDoubles(q.getVector()));
+        PriorityQueue<double[]> heap = new PriorityQueue<>(Comparator.comparingDouble(a -> a[0]));
+        for (VectorShard.Entry e : entries) {
+            if (e.getNoteId() == q.getNoteId()) {
+                continue;
+            }
+            double sim = VectorShard.cosine(query, e.vector, e.norm);
+            if (heap.size() < k) {
+                heap.add(new double[] {sim, e.getNoteId()});
+            } else if (sim > heap.peek()[0]) {
+                heap.poll();
+                heap.add(new double[] {sim, e.getNoteId()});
+            }
+        }
+        Set<Long> out = new HashSet<>();
+        for (double[] h : heap) {
+            out.add((long) h[1]);
+        }
+        return out;
+    }
+
+    /* ---------- State ---------- */
+
+    /** The owner's clusters, loaded from the database on first use and re-read periodically. */
+    private State state(String owner) {
+        State s = states.get(owner);
+        if (s != null && System.currentTimeMillis() - s.loadedAt < reloadMs) {
+            return s;
+        }
+        List<NoteCluster> rows = clusterRepo.findByOwnerOrderByIdAsc(owner);
+        if (rows.isEmpty()) {
+            states.remove(owner);
+            return null;
+        }
+        List<Centroid> centroids = centroids(rows);
+        Map<Long, Long> assignment = new ConcurrentHashMap<>();
+        for (Object[] row : notes.findClusterAssignments(owner)) {
+            long cluster = (Long) row[1];
+            if (cluster != UNCLUSTERABLE) {
+                assignment.put((Long) row[0], cluster);
+            }
+        }
+        State loaded = new State(centroids, assignment);
+        states.put(owner, loaded);
+        return loaded;
+    }
+
+    private static List<Centroid> centroids(List<NoteCluster> rows) {
+        return rows.stream()
+                .map(r -> new Centroid(r.getId(), unpack(r.getCentroid()), r.getSampleCount()))
+                .collect(Collectors.toList());
+    }
+
+    private boolean eligible(VectorShard.Entry e) {
+        return e.hasVector() && e.comparableWith(embeddingStore.model());
+    }
+
+    /* ---------- Vector helpers ---------- */
+
+    private static List<VectorShard.Entry> sample(List<VectorShard.Entry> all, int n, Random random) {
+        if (n >= all.size()) {
+            return new ArrayList<>(all);
+        }
+        List<VectorShard.Entry> copy = new ArrayList<>(all);
+        for (int i = 0; i < n; i++) {
+            Collections.swap(copy, i, i + random.nextInt(copy.size() - i));
+        }
+        return new ArrayList<>(copy.subList(0, n));
+    }
+
+    /** First {@code dims} components of the entry's vector, scaled to unit length. */
+    private static float[] unit(VectorShard.Entry e, int dims) {
+        FloatBuffer v = e.vector;
+        float[] out = new float[dims];
+        double sum = 0.0;
+        for (int i = 0; i < dims && i < v.limit(); i++) {
+            out[i] = v.get(i);
+            sum += out[i] * out[i];
+        }
+        double norm = Math.sqrt(sum);
+        if (norm > 0) {
+            for (int i = 0; i < dims; i++) {
+                out[i] = (float) (out[i] / norm);
+            }
+        }
+        return out;
+    }
+
+    private static double[] toDoubles(float[] v) {
+        double[] out = new double[v.length];
+        for (int i = 0; i < v.length; i++) {
+            out[i] = v[i];
+        }
+        return out;
+    }
+
+    private static double[] toDoubles(FloatBuffer v) {
+        double[] out = new double[v.limit()];
+        for (int i = 0; i < out.length; i++) {
+            out[i] = v.get(i);
+        }
+        return out;
+    }
+
+    static byte[] pack(float[] v) {
+        ByteBuffer buf = ByteBuffer.allocate(4 * v.length).order(ByteOrder.LITTLE_ENDIAN);
+        for (float x : v) {
+            buf.putFloat(x);
+        }
+        return buf.array();
+    }
+
+    static float[] unpack(byte[] packed) {
+        FloatBuffer buf = ByteBuffer.wrap(packed).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+        float[] out = new float[buf.remaining()];
+        buf.get(out);
+        return out;
+    }
+}
@@ -0,0 +1,51 @@
+package com.thynkah.service;
+
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Runs background work on one instance at a time, using a MySQL named lock
+ * (GET_LOCK). The lock belongs to the connection that took it, so it is held on one
+ * pooled connection for the duration of the work and is released by MySQL on its own
+ * when the instance dies.
+ */
+@Component
+public class ClusterLock {
+
+    private final JdbcTemplate jdbc;
+
+    public ClusterLock(JdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    /** Runs {@code work} if no other instance holds {@code name}; returns false when it was skipped. */
+    public boolean runExclusive(String name, Runnable work) {
+        Boolean ran = jdbc.execute((ConnectionCallback<Boolean>) con -> {
+            if (!call(con, "SELECT GET_LOCK(?, 0)", name)) {
+                return false;
+            }
+            try {
+                work.run();
+            } finally {
+                call(con, "SELECT RELEASE_LOCK(?)", name);
+            }
+            return true;
+        });
+        return Boolean.TRUE.equals(ran);
+    }
+
+    private static boolean call(Connection con, String sql, String name) throws SQLException {
+        try (PreparedStatement ps = con.prepareStatement(sql)) {
+            ps.setString(1, "thynkah." + name);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() && rs.getInt(1) == 1;
+            }
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package com.thynkah.service;
+
+import com.thynkah.model.Note;
+import io.micrometer.core.instrument.DistributionSummary;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+
+/**
+ * Builds the notes part of the chat prompt under a token budget.
+ * Notes are added in the order given (retrieval rank); notes longer than their share
+ * are cut down to the passages that best match the question instead of being sent whole.
+ */
+@Component
+public class ContextBuilder {
+
+    private static final Logger log = LoggerFactory.getLogger(ContextBuilder.class);
+
+    private static final Set<String> STOP_WORDS = new HashSet<>(Arrays.asList(
+            "the", "and", "for", "are", "but", "not", "you", "your", "was", "were", "with",
+            "what", "when", "where", "which", "who", "why", "how", "did", "does", "have", "has",
+            "had", "this", "that", "these", "those", "from", "about", "into", "they", "them",
+            "then", "than", "there", "their", "all", "any", "can", "could", "should", "would",
+            "will", "just", "like", "some", "out", "get", "got", "more", "most", "much", "very"));
+
+    // Below this many tokens a note is not worth a slot in the prompt.
+    private static final int MIN_NOTE_TOKENS = 40;
+
+    @Value("${thynkah.context.max-tokens:3000}")
+    private int maxTokens;
+
+    @Value("${thynkah.context.max-note-tokens:800}")
+    private int maxNoteTokens;
+
+    private final DistributionSummary contextTokens;
+
+    public ContextBuilder(AiMetrics metrics) {
+        this.contextTokens = DistributionSummary.builder("thynkah.context.tokens")
+                .description("Estimated tokens of note context sent to the chat model")
+                .baseUnit("tokens")
+                .register(metrics.registry());
+    }
+
+    /** Result of a build: the prompt text and how much of the budget it used. */
+    public static class PromptContext {
+        private final String text;
+        private final int tokens;
+        private final int notesIncluded;
+        private final int notesExcerpted;
+        private final int notesDropped;
+
+        PromptContext(String text, int tokens, int notesIncluded, int notesExcerpted, int notesDropped) {
+            this.text = text;
+            this.tokens = tokens;
+            this.notesIncluded = notesIncluded;
+            this.notesExcerpted = notesExcerpted;
+            this.notesDropped = notesDropped;
+        }
+
+        public String getText() { return text; }
+        public int getTokens() { return tokens; }
+        public int getNotesIncluded() { return notesIncluded; }
+        public int getNotesExcerpted() { return notesExcerpted; }
+        public int getNotesDropped() { return notesDropped; }
+    }
+
+    /**
+     * Greedy fill by rank: the best note may use up to max-note-tokens,
+     * later notes get whatever budget is left. A single note may use the whole budget.
+     */
+    public PromptContext build(String question, List<Note> rankedNotes) {
+        return build(question, rankedNotes, Collections.emptyMap(), false);
+    }
+
+    /**
+     * Same as {@link #build(String, List)}, but notes with an entry in
+     * {@code passagesByNote} contribute only those passages instead of their full text.
+     */
+    public PromptContext build(String question, List<Note> rankedNotes, Map<Long, List<String>> passagesByNote) {
+        return build(question, rankedNotes, passagesByNote, false);
+    }
+
+    /**
+     * Fair-share fill for unranked sets (e.g. every note of a day): each note gets
+     * an equal share of the remaining budget so late notes are not starved.
+     */
+    public PromptContext buildEvenly(String question, List<Note> notes) {
+        return build(question, notes, Collections.emptyMap(), true);
+    }
+
+    private PromptContext build(String question, List<Note> notes,
+                                Map<Long, List<String>> passagesByNote, boolean evenly) {
+        if (notes == null || notes.isEmpty()) {
+            return new PromptContext("There are NO relevant notes for this query.\n", 0, 0, 0, 0);
+        }
+
+        Set<String> terms = terms(question);
+        String intro = "Here are the user's most relevant notes (most recent / relevant first):\n\n";
+        StringBuilder sb = new StringBuilder(intro);
+        int used = TokenEstimator.estimate(intro);
+        int included = 0, excerpted = 0;
+
+        for (int i = 0; i < notes.size(); i++) {
+            Note n = notes.get(i);
+            if (n.getText() == null || n.getText().isBlank()) continue;
+
+            String header = "- Note from " + (n.getCreatedAt() != null ? n.getCreatedAt() : "an unknown date") + ":\n";
+            int headerTokens = TokenEstimator.estimate(header);
+            int remaining = maxTokens - used - headerTokens;
+            int share = evenly ? remaining / (notes.size() - i) : remaining;
+            int cap = Math.max(share, MIN_NOTE_TOKENS);
+            if (notes.size() > 1) {
+                cap = Math.min(maxNoteTokens, cap); // the per-note cap only matters when notes compete
+            }
+            if (remaining < MIN_NOTE_TOKENS) {
+                break;
+            }
+
+            List<String> passages = passagesByNote.get(n.getId());
+            String body = (passages != null && !passages.isEmpty())
+                    ? "… " + String.join("\n…\n", passages) + " …"
+                    : n.getText().trim();
+            int bodyTokens = TokenEstimator.estimate(body);
+            if (bodyTokens > cap) {
+                body = excerpt(body, terms, cap);
+                bodyTokens = TokenEstimator.estimate(body);
+                excerpted++;
+            }
+
+            sb.append(header).append(body).append("\n\n");
+            used += headerTokens + bodyTokens;
+            included++;
+        }
+
+        int dropped = notes.size() - included;
+        contextTokens.record(used);
+        log.debug("Prompt context: {} notes ({} excerpted, {} dropped), ~{} tokens",
+                included, excerpted, dropped, used);
+        return new PromptContext(sb.toString(), used, included, excerpted, dropped);
+    }
+
+    /* ---------- Excerpting ---------- */
+
+    /**
+     * Keeps the segments (paragraphs / sentences) around the best-matching one,
+     * in their original order, within maxTokens. Gaps are marked with "…".
+     */
+    String excerpt(String text, Set<String> terms, int maxTokens) {
+        List<String> segments = segments(text);
+        int[] cost = new int[segments.size()];
+        int best = 0;
+        int bestScore = -1;
+        for (int i = 0; i < segments.size(); i++) {
+            cost[i] = TokenEstimator.estimate(segments.get(i)) + 1;
+            int score = overlap(segments.get(i), terms);
+            if (score > bestScore) {
+                bestScore = score;
+                best = i;
+            }
+        }
+        if (bestScore <= 0) {
+            best = 0; // nothing matches: keep the beginning of the note
+        }
+
+        if (cost[best] > maxTokens) {
+            return truncate(segments.get(best), maxTokens);
+        }
+        boolean[] keep = new boolean[segments.size()];
+        keep[best] = true;
+        int used = cost[best];
+
+        // Grow around the best segment, then add any other matching segments that still fit.
+        int lo = best - 1, hi = best + 1;
+        while (lo >= 0 || hi < segments.size()) {
+            boolean grew = false;
+            if (hi < segments.size() && used + cost[hi] <= maxTokens) {
+                keep[hi] = true;
+                used += cost[hi++];
+                grew = true;
+            }
+            if (lo >= 0 && used + cost[lo] <= maxTokens) {
+                keep[lo] = true;
+                used += cost[lo--];
+                grew = true;
+            }
+            if (!grew) break;
+        }
+        if (bestScore > 0) {
+            for (int i = 0; i < segments.size(); i++) {
+                if (!keep[i] && overlap(segments.get(i), terms) > 0 && used + cost[i] <= maxTokens) {
+                    keep[i] = true;
+                    used += cost[i];
+                }
+            }
+        }
+
+        StringBuilder out = new StringBuilder();
+        for (int i = 0; i < segments.size(); i++) {
+            if (!keep[i]) continue;
+            boolean afterGap = i > 0 && !keep[i - 1];
+            if (afterGap) {
+                out.append(out.length() == 0 ? "… " : " … ");
+            } else if (out.length() > 0) {
+                out.append(' ');
+            }
+            out.append(segments.get(i));
+        }
+        if (!keep[segments.size() - 1]) {
+            out.append(" …");
+        }
+        return out.toString();
+    }
+
+    private static List<String> segments(String text) {
+        List<String> out = new ArrayList<>();
+        for (String paragraph : text.split("\\n\\s*\\n")) {
+            for (String sentence : paragraph.split("(?<=[.!?])\\s+")) {
+                String s = sentence.trim();
+                if (!s.isEmpty()) out.add(s);
+            }
+        }
+        return out;
+    }
+
+    private static String truncate(String text, int maxTokens) {
+        int end = Math.min(text.length(), maxTokens * 4);
+        while (end > 0 && TokenEstimator.estimate(text.substring(0, end)) > maxTokens) {
+            end = end * 9 / 10;
+        }
+        return text.substring(0, end) + " …";
+    }
+
+    static Set<String> terms(String question) {
+        Set<String> out = new HashSet<>();
+        if (question == null) return out;
+        for (String w : question.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+            if (w.length() >= 3 && !STOP_WORDS.contains(w)) {
+                out.add(w);
+            }
+        }
+        return out;
+    }
+
+    private static int overlap(String segment, Set<String> terms) {
+        if (terms.isEmpty()) return 0;
+        int score = 0;
+        for (String w : segment.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+            if (terms.contains(w)) score++;
+        }
+        return score;
+    }
+}
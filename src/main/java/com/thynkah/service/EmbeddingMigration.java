@@ -0,0 +1,107 @@
+package com.thynkah.service;
+
+import com.thynkah.model.Note;
+import com.thynkah.repository.NoteRepository;
+import io.micrometer.core.instrument.Counter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Re-embeds, a batch at a time, notes whose vector came from a model other than the active
+ * provider's (e.g. after switching thynkah.embedding.provider). Until a note is migrated it
+ * is simply not a search candidate: vectors of two models are never compared.
+ * A pass walks the notes by id; notes that fail are retried on the next pass.
+ * Off unless thynkah.embedding.migrate is set: re-embedding a whole corpus through a paid
+ * API is not something a provider switch should start on its own.
+ * <p>
+ * Batches block on embedding calls, so they run on a thread of their own rather than
+ * the shared scheduler thread, and only on the instance holding the "embedding-migration"
+ * {@link ClusterLock}, so instances do not re-embed the same notes.
+ */
+@Service
+public class EmbeddingMigration {
+
+    private static final Logger log = LoggerFactory.getLogger(EmbeddingMigration.class);
+
+    private final NoteRepository notes;
+    private final NoteService noteService;
+    private final EmbeddingStore embeddingStore;
+    private final ClusterLock lock;
+    private final Counter migrated;
+    private final boolean enabled;
+    private final int batchSize;
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "embedding-migration");
+        t.setDaemon(true);
+        return t;
+    });
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    private long after; // keyset position within the current pass (worker thread only)
+
+    public EmbeddingMigration(NoteRepository notes,
+                              NoteService noteService,
+                              EmbeddingStore embeddingStore,
+                              ClusterLock lock,
+                              AiMetrics metrics,
+                              @Value("${thynkah.embedding.migrate:false}") boolean enabled,
+                              @Value("${thynkah.embedding.migrate-batch-size:50}") int batchSize) {
+        this.notes = notes;
+        this.noteService = noteService;
+        this.embeddingStore = embeddingStore;
+        this.lock = lock;
+        this.migrated = metrics.registry().counter("thynkah.embedding.migrated");
+        this.enabled = enabled;
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    /** Hands the next batch to the worker unless the previous one is still running. */
+    @Scheduled(fixedDelayString = "${thynkah.embedding.migrate-ms:5000}")
+    public void schedule() {
+        if (!enabled || !running.compareAndSet(false, true)) {
+            return;
+        }
+        worker.execute(() -> {
+            try {
+                lock.runExclusive("embedding-migration", this::migrate);
+            } catch (RuntimeException e) {
+                log.warn("Embedding migration failed: {}", e.getMessage());
+            } finally {
+                running.set(false);
+            }
+        });
+    }
+
+    private void migrate() {
+        List<Note> batch = notes.findEmbeddedWithOtherModel(
+                embeddingStore.model(), after, PageRequest.of(0, batchSize));
+        if (batch.isEmpty()) {
+            after = 0;
+            return;
+        }
+        int done = 0;
+        for (Note note : batch) {
+            after = note.getId();
+            if (noteService.reembed(note)) {
+                done++;
+            }
+        }
+        migrated.increment(done);
+        log.info("Re-embedded {} of {} notes with {}", done, batch.size(), embeddingStore.model());
+    }
+
+    @PreDestroy
+    public void close() {
+        worker.shutdownNow();
+    }
+}
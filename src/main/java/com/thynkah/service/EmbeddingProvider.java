@@ -0,0 +1,33 @@
+package com.thynkah.service;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Turns text into a vector. One provider is active, chosen by thynkah.embedding.provider
+ * ({@code openai} or {@code local}). Every stored vector is tagged with {@link #model()},
+ * and only vectors of the active model are ever compared, so switching provider never
+ * mixes two vector spaces.
+ */
+public interface EmbeddingProvider {
+
+    /** Model id stored with each vector (notes.embedding_model, embedding_store.model). */
+    String model();
+
+    /**
+     * False for in-process providers: computing the vector is cheaper than looking it up,
+     * so {@link EmbeddingStore} neither caches nor persists their output.
+     */
+    default boolean isRemote() {
+        return true;
+    }
+
+    /**
+     * An empty vector means the embedding could not be produced. Fails only with
+     * AiOverloadedException, when the scheduler sheds the call.
+     */
+    CompletableFuture<float[]> embedAsync(String text, AiScheduler.Priority priority);
+
+    /** Results in input order; texts that could not be embedded get empty vectors. */
+    List<float[]> embedAll(List<String> texts);
+}
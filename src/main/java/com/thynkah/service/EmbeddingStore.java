@@ -0,0 +1,231 @@
+package com.thynkah.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.thynkah.model.StoredEmbedding;
+import com.thynkah.repository.StoredEmbeddingRepository;
+import com.thynkah.util.Hashing;
+import com.thynkah.util.LruCache;
+import io.micrometer.core.instrument.Counter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Content-addressed embeddings: SHA-256(model + text) -> vector.
+ * Looks in memory, then in embedding_store, and only calls the API for text
+ * that has never been embedded with the current model.
+ * Returned arrays are shared with the cache and must not be modified.
+ * In-process providers ({@link EmbeddingProvider#isRemote()} false) bypass both tiers.
+ */
+@Service
+public class EmbeddingStore {
+
+    private static final Logger log = LoggerFactory.getLogger(EmbeddingStore.class);
+
+    private final StoredEmbeddingRepository repo;
+    private final EmbeddingProvider provider;
+    private final ExecutorService dbExecutor;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final LruCache<String, float[]> memory;
+
+    private final Counter memoryHits;
+    private final Counter dbHits;
+    private final Counter apiCalls;
+    private final Counter apiCallsSaved;
+
+    public EmbeddingStore(StoredEmbeddingRepository repo,
+                          EmbeddingProvider provider,
+                          @Qualifier("dbExecutor") ExecutorService dbExecutor,
+                          AiMetrics metrics,
+                          @Value("${thynkah.embedding.store.cache-size:2000}") int cacheSize) {
+        this.repo = repo;
+        this.provider = provider;
+        this.dbExecutor = dbExecutor;
+        this.memory = new LruCache<>(cacheSize);
+        metrics.cache("embedding", memory, LruCache::hits, LruCache::misses);
+
+        this.memoryHits = metrics.registry().counter("thynkah.embedding.store.lookups", "result", "memory");
+        this.dbHits = metrics.registry().counter("thynkah.embedding.store.lookups", "result", "db");
+        this.apiCalls = metrics.registry().counter("thynkah.embedding.store.lookups", "result", "api");
+        this.apiCallsSaved = metrics.registry().counter("thynkah.embedding.api.saved");
+    }
+
+    /** Model id of the active provider: the only model whose vectors may be compared. */
+    public String model() {
+        return provider.model();
+    }
+
+    public static String contentHash(String model, String text) {
+        return Hashing.sha256Hex(model + "\n" + text);
+    }
+
+    /** Embedding for note / passage text; new vectors are persisted for reuse. */
+    public float[] embed(String text) {
+        return embed(text, true);
+    }
+
+    /**
+     * @param persist false for throwaway text such as questions: they are
+     *                remembered in memory only, never written to embedding_store
+     */
+    public float[] embed(String text, boolean persist) {
+        return embedAsync(text, persist).join();
+    }
+
+    /**
+     * Non-blocking while the API is called; an empty vector on error. Persisted (note)
+     * text is embedded at background priority, throwaway text (questions) at interactive.
+     */
+    public CompletableFuture<float[]> embedAsync(String text, boolean persist) {
+        return embedAsync(text, persist, persist ? AiScheduler.Priority.BACKGROUND : AiScheduler.Priority.INTERACTIVE);
+    }
+
+    /** Fails only with AiOverloadedException, when the scheduler sheds the call. */
+    public CompletableFuture<float[]> embedAsync(String text, boolean persist, AiScheduler.Priority priority) {
+        if (text == null) {
+            return CompletableFuture.completedFuture(new float[0]);
+        }
+        if (!provider.isRemote()) {
+            return provider.embedAsync(text, priority);
+        }
+        String hash = contentHash(provider.model(), text);
+        float[] cached = memory.get(hash);
+        if (cached != null) {
+            memoryHits.increment();
+            apiCallsSaved.increment();
+            return CompletableFuture.completedFuture(cached);
+        }
+        if (persist) {
+            Optional<StoredEmbedding> stored = repo.findById(hash);
+            if (stored.isPresent()) {
+                float[] vector = decode(stored.get().getVector());
+                if (vector.length > 0) {
+                    dbHits.increment();
+                    apiCallsSaved.increment();
+                    memory.put(hash, vector);
+                    return CompletableFuture.completedFuture(vector);
+                }
+            }
+        }
+
+        apiCalls.increment();
+        CompletableFuture<float[]> embedded = provider.embedAsync(text, priority).thenApply(vector -> {
+            if (vector.length > 0) {
+                memory.put(hash, vector);
+            }
+            return vector;
+        });
+        if (!persist) {
+            return embedded;
+        }
+        // the insert blocks: keep it off the thread that completed the API call
+        return embedded.thenApplyAsync(vector -> {
+            if (vector.length > 0) {
+                store(Collections.singletonList(new StoredEmbedding(
+                        hash, provider.model(), vector.length, Arrays.toString(vector))));
+            }
+            return vector;
+        }, dbExecutor);
+    }
+
+    /**
+     * Bulk variant: duplicates inside the batch and already-known texts are
+     * resolved locally, the rest go to the API in a single batched call.
+     */
+    public List<float[]> embedAll(List<String> texts) {
+        if (!provider.isRemote()) {
+            return provider.embedAll(texts);
+        }
+        List<String> hashes = new ArrayList<>();
+        Map<String, float[]> found = new HashMap<>();
+        Set<String> lookInDb = new LinkedHashSet<>();
+        for (String text : texts) {
+            String hash = contentHash(provider.model(), text);
+            hashes.add(hash);
+            if (found.containsKey(hash) || lookInDb.contains(hash)) {
+                apiCallsSaved.increment();
+                continue;
+            }
+            float[] cached = memory.get(hash);
+            if (cached != null) {
+                memoryHits.increment();
+                apiCallsSaved.increment();
+                found.put(hash, cached);
+            } else {
+                lookInDb.add(hash);
+            }
+        }
+
+        if (!lookInDb.isEmpty()) {
+            for (StoredEmbedding e : repo.findAllById(lookInDb)) {
+                float[] vector = decode(e.getVector());
+                if (vector.length == 0) continue;
+                dbHits.increment();
+                apiCallsSaved.increment();
+                memory.put(e.getContentHash(), vector);
+                found.put(e.getContentHash(), vector);
+                lookInDb.remove(e.getContentHash());
+            }
+        }
+
+        if (!lookInDb.isEmpty()) {
+            List<String> missingHashes = new ArrayList<>(lookInDb);
+            List<String> missingTexts = new ArrayList<>();
+            for (String hash : missingHashes) {
+                missingTexts.add(texts.get(hashes.indexOf(hash)));
+            }
+            apiCalls.increment(missingTexts.size());
+            List<float[]> vectors = provider.embedAll(missingTexts);
+
+            List<StoredEmbedding> toStore = new ArrayList<>();
+            for (int i = 0; i < missingHashes.size(); i++) {
+                float[] vector = vectors.get(i);
+                if (vector.length == 0) continue;
+                memory.put(missingHashes.get(i), vector);
+                found.put(missingHashes.get(i), vector);
+                toStore.add(new StoredEmbedding(missingHashes.get(i), provider.model(),
+                        vector.length, Arrays.toString(vector)));
+            }
+            store(toStore);
+        }
+
+        List<float[]> out = new ArrayList<>();
+        for (String hash : hashes) {
+            out.add(found.getOrDefault(hash, new float[0]));
+        }
+        return out;
+    }
+
+    private void store(List<StoredEmbedding> embeddings) {
+        if (embeddings.isEmpty()) return;
+        try {
+            repo.saveAll(embeddings);
+        } catch (DataIntegrityViolationException e) {
+            // another request / node stored some of the same content first (same vector);
+            // store the rest one by one
+            for (StoredEmbedding embedding : embeddings) {
+                try {
+                    repo.save(embedding);
+                } catch (DataIntegrityViolationException ignored) {
+                    log.debug("Embedding {} already stored", embedding.getContentHash());
+                }
+            }
+        }
+    }
+
+    private float[] decode(String json) {
+        try {
+            return mapper.readValue(json, float[].class);
+        } catch (Exception e) {
+            log.warn("Could not parse stored embedding: {}", e.getMessage());
+            return new float[0];
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.thynkah.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * In-process embeddings for dev, tests and offline deployments: no API key, no network,
+ * well under a millisecond per note.
+ * <p>
+ * Text is lower-cased and split into words; the features are words, word bigrams and
+ * character trigrams of each word (so "meeting" and "meetings" still overlap). Each
+ * feature is hashed and added with a random sign to {@value #PROJECTIONS} of the output
+ * dimensions, which is a sparse random projection of the (huge, implicit) feature space
+ * without ever materialising the matrix. The result is L2-normalised.
+ * <p>
+ * The vectors capture shared wording, not meaning: good enough to make search, related
+ * notes and clusters work without OpenAI, not a replacement for it. The model id includes
+ * the dimension count and seed, so changing either is treated as a different model.
+ */
+@Service
+@ConditionalOnProperty(name = "thynkah.embedding.provider", havingValue = "local")
+public class LocalEmbeddingProvider implements EmbeddingProvider {
+
+    static final int PROJECTIONS = 3;
+
+    private static final long WORD = 0x1L;
+    private static final long BIGRAM = 0x2L;
+    private static final long TRIGRAM = 0x3L;
+    private static final char BOUNDARY = '\u0002';
+
+    private static final float WORD_WEIGHT = 1.0f;
+    private static final float BIGRAM_WEIGHT = 0.5f;
+    private static final float TRIGRAM_WEIGHT = 0.25f;
+
+    private final int dims;
+    private final long seed;
+    private final String model;
+    private final AiMetrics metrics;
+
+    public LocalEmbeddingProvider(AiMetrics metrics,
+                                  @Value("${thynkah.embedding.local.dims:384}") int dims,
+                                  @Value("${thynkah.embedding.local.seed:1}") long seed) {
+        this.metrics = metrics;
+        this.dims = Math.max(16, dims);
+        this.seed = seed;
+        this.model = "local-ngram-" + this.dims + "-" + Long.toHexString(seed);
+    }
+
+    @Override
+    public String model() {
+        return model;
+    }
+
+    @Override
+    public boolean isRemote() {
+        return false;
+    }
+
+    @Override
+    public CompletableFuture<float[]> embedAsync(String text, AiScheduler.Priority priority) {
+        return CompletableFuture.completedFuture(metrics.time("embedding.local", () -> embed(text)));
+    }
+
+    @Override
+    public List<float[]> embedAll(List<String> texts) {
+        return metrics.time("embedding.local", () -> {
+            List<float[]> out = new ArrayList<>(texts.size());
+            for (String text : texts) {
+                out.add(embed(text));
+            }
+            return out;
+        });
+    }
+
+    /** Empty when the text has no letters or digits. */
+    float[] embed(String text) {
+        if (text == null) {
+            return new float[0];
+        }
+        String s = text.toLowerCase(Locale.ROOT);
+        float[] v = new float[dims];
+        boolean any = false;
+        long previous = 0;
+        int n = s.length();
+        int i = 0;
+        while (i < n) {
+            while (i < n && !Character.isLetterOrDigit(s.charAt(i))) {
+                i++;
+            }
+            int start = i;
+            while (i < n && Character.isLetterOrDigit(s.charAt(i))) {
+                i++;
+            }
+            if (start == i) {
+                break;
+            }
+            long word = hash(s, start, i);
+            add(v, word ^ WORD, WORD_WEIGHT);
+            if (any) {
+                add(v, mix(previous) + word ^ BIGRAM, BIGRAM_WEIGHT);
+            }
+            // trigrams of the word padded with boundary marks: "^ab", "abc", ..., "yz$"
+            for (int p = start - 1; p + 2 <= i; p++) {
+                long h = TRIGRAM;
+                for (int q = p; q < p + 3; q++) {
+                    char c = q < start || q >= i ? BOUNDARY : s.charAt(q);
+                    h = (h ^ c) * 0x100000001b3L;
+                }
+                add(v, h, TRIGRAM_WEIGHT);
+            }
+            previous = word;
+            any = true;
+        }
+        if (!any) {
+            return new float[0];
+        }
+        double norm = 0;
+        for (float x : v) {
+            norm += x * x;
+        }
+        float scale = (float) (1.0 / Math.sqrt(norm));
+        for (int d = 0; d < dims; d++) {
+            v[d] *= scale;
+        }
+        return v;
+    }
+
+    /** Adds {@code weight} with a pseudo-random sign to {@value #PROJECTIONS} dimensions chosen by the feature hash. */
+    private void add(float[] v, long feature, float weight) {
+        long h = mix(feature ^ seed);
+        for (int r = 0; r < PROJECTIONS; r++) {
+            int d = (int) (((h >>> 33) * v.length) >>> 31);
+            v[d] += (h & 1) == 0 ? weight : -weight;
+            h = mix(h + 0x9e3779b97f4a7c15L);
+        }
+    }
+
+    // FNV-1a over s[start, end)
+    private static long hash(String s, int start, int end) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = start; i < end; i++) {
+            h = (h ^ s.charAt(i)) * 0x100000001b3L;
+        }
+        return h;
+    }
+
+    // SplitMix64 finaliser
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
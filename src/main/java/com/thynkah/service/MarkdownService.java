@@ -1,15 +1,53 @@
 package com.thynkah.service;
 
+import com.thynkah.model.Note;
+import com.thynkah.util.LruCache;
 import org.commonmark.node.Node;
 import org.commonmark.parser.Parser;
 import org.commonmark.renderer.html.HtmlRenderer;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
 @Service
 public class MarkdownService {
 
     private final Parser parser = Parser.builder().build();
-    private final HtmlRenderer renderer = HtmlRenderer.builder().build();
+    // Rendered HTML goes straight into the browse page, so raw HTML in notes is escaped.
+    // Single newlines become <br> like the old client-side formatter did.
+    private final HtmlRenderer renderer = HtmlRenderer.builder()
+            .escapeHtml(true)
+            .sanitizeUrls(true)
+            .softbreak("<br />\n")
+            .build();
+
+    // note id -> HTML of the text version it was rendered from
+    private final LruCache<Long, Rendered> cache;
+
+    private static class Rendered {
+        final int textHash;
+        final int textLength;
+        final String html;
+
+        Rendered(String text, String html) {
+            this.textHash = text.hashCode();
+            this.textLength = text.length();
+            this.html = html;
+        }
+
+        boolean isFor(String text) {
+            return textLength == text.length() && textHash == text.hashCode();
+        }
+    }
+
+    public MarkdownService(AiMetrics metrics,
+                           @Value("${thynkah.markdown.cache-size:5000}") int cacheSize) {
+        this.cache = new LruCache<>(cacheSize);
+        metrics.cache("markdown", cache, LruCache::hits, LruCache::misses);
+    }
 
     public String toHtml(String markdown) {
         if (markdown == null || markdown.isBlank()) {
@@ -18,4 +56,37 @@ public class MarkdownService {
         Node document = parser.parse(markdown);
         return renderer.render(document);
     }
+
+    /**
+     * Rendered HTML for the current text of a note, parsed at most once per text version.
+     */
+    public String toHtml(Note note) {
+        String text = note.getText();
+        if (note.getId() == null || text == null || text.isBlank()) {
+            return toHtml(text);
+        }
+        Rendered cached = cache.get(note.getId(), r -> r.isFor(text));
+        if (cached != null) {
+            return cached.html;
+        }
+        String html = toHtml(text);
+        cache.put(note.getId(), new Rendered(text, html));
+        return html;
+    }
+
+    /** note id -> HTML, for rendering a whole page of notes. */
+    public Map<Long, String> toHtml(Collection<Note> notes) {
+        Map<Long, String> out = new HashMap<>();
+        for (Note n : notes) {
+            out.put(n.getId(), toHtml(n));
+        }
+        return out;
+    }
+
+    /** Drops the cached HTML of a note whose text changed or that was deleted. */
+    public void evict(Long noteId) {
+        if (noteId != null) {
+            cache.remove(noteId);
+        }
+    }
 }
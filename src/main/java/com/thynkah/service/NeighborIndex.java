@@ -0,0 +1,295 @@
+package com.thynkah.service;
+
+import com.thynkah.model.Note;
+import com.thynkah.model.NoteNeighbors;
+import com.thynkah.repository.NoteNeighborsRepository;
+import io.micrometer.core.instrument.Gauge;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * k-nearest-neighbour list per note, maintained in the background so "related notes"
+ * is a primary-key read instead of a scan. Saved / re-embedded notes are queued and
+ * their list is computed against the owner's shard; the note is then offered to the
+ * lists of its closest candidates, so the graph is updated incrementally rather than
+ * rebuilt. Deleted notes lose their row, their neighbours are re-queued, and stale ids
+ * are dropped when a list is read. Notes without a list (e.g. from before this existed)
+ * are picked up a batch at a time when the queue is empty.
+ * <p>
+ * The queue is the stale_at mark on note_neighbors, so it survives restarts and is
+ * shared by all instances; one instance at a time (a {@link ClusterLock}) works it off.
+ * A mark is only picked up after thynkah.neighbors.settle-ms, by which time the change
+ * has reached that instance's shards through the {@link ChangeJournal}.
+ */
+@Service
+public class NeighborIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(NeighborIndex.class);
+
+    private static final int PAIR_BYTES = 8 + 4;
+
+    private final NoteNeighborsRepository repo;
+    private final VectorShardManager shards;
+    private final ClusterLock lock;
+    private final AiMetrics metrics;
+    private final int k;
+    private final int candidates;
+    private final int batchSize;
+    private final long settleMs;
+
+    // queue length as last counted by the instance working it off
+    private final AtomicLong pending = new AtomicLong();
+
+    public NeighborIndex(NoteNeighborsRepository repo,
+                         VectorShardManager shards,
+                         ClusterLock lock,
+                         AiMetrics metrics,
+                         @Value("${thynkah.neighbors.k:10}") int k,
+                         @Value("${thynkah.neighbors.candidates:50}") int candidates,
+                         @Value("${thynkah.neighbors.batch-size:100}") int batchSize,
+                         @Value("${thynkah.neighbors.settle-ms:2000}") long settleMs) {
+        this.repo = repo;
+        this.shards = shards;
+        this.lock = lock;
+        this.metrics = metrics;
+        this.k = Math.max(1, k);
+        this.candidates = Math.max(this.k, candidates);
+        this.batchSize = Math.max(1, batchSize);
+        this.settleMs = Math.max(0, settleMs);
+        Gauge.builder("thynkah.neighbors.pending", pending, AtomicLong::get)
+                .description("Notes waiting for their neighbour list to be (re)computed")
+                .register(metrics.registry());
+    }
+
+    /** A neighbouring note and its cosine similarity. */
+    public static final class Neighbor {
+        private final long noteId;
+        private final float score;
+
+        Neighbor(long noteId, float score) {
+            this.noteId = noteId;
+            this.score = score;
+        }
+
+        public long getNoteId() { return noteId; }
+        public float getScore() { return score; }
+    }
+
+    /* ---------- Queueing ---------- */
+
+    /** Queues a saved or re-embedded note. */
+    public void noteChanged(Note note) {
+        if (note.getId() != null && note.getOwner() != null) {
+            repo.markStale(note.getId(), note.getOwner(), LocalDateTime.now());
+        }
+    }
+
+    /** Drops a deleted note's list and queues the lists likely to hold it. */
+    public void noteDeleted(String owner, Long noteId) {
+        if (owner == null || noteId == null) {
+            return;
+        }
+        repo.findById(noteId).filter(row -> owner.equals(row.getOwner())).ifPresent(row -> {
+            // lists are close to symmetric: the deleted note's neighbours are the likely holders
+            List<Long> holders = unpack(row.getPacked()).stream().map(Neighbor::getNoteId).collect(Collectors.toList());
+            if (!holders.isEmpty()) {
+                repo.markStale(holders, LocalDateTime.now());
+            }
+            repo.delete(row);
+        });
+    }
+
+    /* ---------- Reading ---------- */
+
+    /**
+     * Stored neighbours of an owner's note, best first. Empty when the list has not been
+     * computed yet (the note is queued, or picked up by the backfill). {@code exists} filters
+     * out notes deleted since the list was written; a list with such holes is queued for a
+     * refresh. Nothing is queued for notes that are not the owner's.
+     */
+    public List<Neighbor> related(String owner, long noteId, Function<Collection<Long>, Set<Long>> exists) {
+        Optional<NoteNeighbors> row = repo.findById(noteId).filter(r -> owner.equals(r.getOwner()));
+        if (!row.isPresent()) {
+            return Collections.emptyList();
+        }
+        List<Neighbor> list = unpack(row.get().getPacked());
+        Set<Long> live = exists.apply(list.stream().map(Neighbor::getNoteId).collect(Collectors.toList()));
+        if (live.size() < list.size()) {
+            if (row.get().getStaleAt() == null) {
+                repo.markStale(List.of(noteId), LocalDateTime.now());
+            }
+            list = list.stream().filter(n -> live.contains(n.getNoteId())).collect(Collectors.toList());
+        }
+        return list;
+    }
+
+    /* ---------- Background maintenance ---------- */
+
+    @Scheduled(fixedDelayString = "${thynkah.neighbors.refresh-ms:2000}")
+    public void refresh() {
+        try {
+            // queued notes stay marked while another instance is working them off
+            lock.runExclusive("neighbors", this::refreshPending);
+        } catch (RuntimeException e) {
+            log.warn("Neighbour refresh failed: {}", e.getMessage());
+        }
+    }
+
+    private void refreshPending() {
+        LocalDateTime settled = LocalDateTime.now().minusNanos(TimeUnit.MILLISECONDS.toNanos(settleMs));
+        Map<String, List<Long>> byOwner = new HashMap<>();
+        Map<Long, LocalDateTime> marks = new HashMap<>();
+        for (Object[] row : repo.findStale(settled, PageRequest.of(0, batchSize))) {
+            byOwner.computeIfAbsent((String) row[1], o -> new ArrayList<>()).add((Long) row[0]);
+            marks.put((Long) row[0], (LocalDateTime) row[2]);
+        }
+        if (byOwner.isEmpty()) {
+            for (Object[] row : repo.findUnindexed(PageRequest.of(0, batchSize))) {
+                byOwner.computeIfAbsent((String) row[1], o -> new ArrayList<>()).add((Long) row[0]);
+            }
+        }
+        if (!byOwner.isEmpty()) {
+            metrics.time("neighbors.refresh", () -> {
+                byOwner.forEach((owner, ids) -> recompute(owner, ids, marks));
+                return null;
+            });
+        }
+        pending.set(repo.countByStaleAtIsNotNull());
+    }
+
+    /** {@code marks}: the stale_at values read for queued notes (absent for backfilled ones). */
+    private void recompute(String owner, List<Long> noteIds, Map<Long, LocalDateTime> marks) {
+        VectorShard shard = shards.shard(owner);
+        for (Long id : noteIds) {
+            VectorShard.Entry self = shard.get(id);
+            if (self == null) {
+                // deleted: a list marked after its note's delete has nothing left to describe
+                if (marks.containsKey(id)) {
+                    repo.findById(id).ifPresent(repo::delete);
+                }
+                continue;
+            }
+            List<Neighbor> nearest = self.hasVector() ? nearest(shard, self) : Collections.emptyList();
+            List<Neighbor> own = nearest.subList(0, Math.min(k, nearest.size()));
+            NoteNeighbors row = repo.findById(id).orElseGet(() -> new NoteNeighbors(id, owner, null));
+            row.setPacked(pack(own));
+            repo.save(row);
+            LocalDateTime mark = marks.get(id);
+            if (mark != null) {
+                repo.clearStale(id, mark);
+            }
+            offer(owner, id, nearest);
+        }
+    }
+
+    /** Best {@code candidates} notes for {@code self}, re-scored with full vectors when shards hold prefixes. */
+    private List<Neighbor> nearest(VectorShard shard, VectorShard.Entry self) {
+        List<Neighbor> top = scan(shard.entries(), self, candidates);
+        if (!shards.usesPrefixVectors() || top.isEmpty()) {
+            return top;
+        }
+        List<Long> ids = top.stream().map(Neighbor::getNoteId).collect(Collectors.toList());
+        ids.add(self.getNoteId());
+        Map<Long, VectorShard.Entry> full = shards.fullVectors(ids);
+        VectorShard.Entry fullSelf = full.get(self.getNoteId());
+        if (fullSelf == null || !fullSelf.hasVector()) {
+            return top;
+        }
+        full.remove(self.getNoteId());
+        return scan(full.values(), fullSelf, candidates);
+    }
+
+    private List<Neighbor> scan(Collection<VectorShard.Entry> entries, VectorShard.Entry self, int limit) {
+        VectorShard.Query q = new VectorShard.Query(toDoubles(self.getVector()));
+        PriorityQueue<Neighbor> heap = new PriorityQueue<>(Comparator.comparingDouble(Neighbor::getScore));
+        for (VectorShard.Entry e : entries) {
+            if (e.getNoteId() == self.getNoteId() || !e.hasVector() || !e.comparableWith(self.getModel())) {
+                continue;
+            }
+            float score = (float) VectorShard.cosine(q, e.vector, e.norm);
+            if (heap.size() < limit) {
+                heap.add(new Neighbor(e.getNoteId(), score));
+            } else if (score > heap.peek().getScore()) {
+                heap.poll();
+                heap.add(new Neighbor(e.getNoteId(), score));
+            }
+        }
+        List<Neighbor> out = new ArrayList<>(heap);
+        out.sort(Comparator.comparingDouble(Neighbor::getScore).reversed());
+        return out;
+    }
+
+    /** Inserts {@code noteId} into the lists of its candidates where it beats their current k-th neighbour. */
+    private void offer(String owner, long noteId, List<Neighbor> nearest) {
+        if (nearest.isEmpty()) {
+            return;
+        }
+        Map<Long, Float> scores = new HashMap<>();
+        for (Neighbor n : nearest) {
+            scores.put(n.getNoteId(), n.getScore());
+        }
+        List<NoteNeighbors> changed = new ArrayList<>();
+        for (NoteNeighbors row : repo.findAllById(scores.keySet())) {
+            if (!owner.equals(row.getOwner())) {
+                continue;
+            }
+            float score = scores.get(row.getNoteId());
+            List<Neighbor> list = unpack(row.getPacked());
+            list.removeIf(n -> n.getNoteId() == noteId);
+            if (list.size() >= k && score <= list.get(list.size() - 1).getScore()) {
+                continue;
+            }
+            list.add(new Neighbor(noteId, score));
+            list.sort(Comparator.comparingDouble(Neighbor::getScore).reversed());
+            row.setPacked(pack(list.subList(0, Math.min(k, list.size()))));
+            changed.add(row);
+        }
+        if (!changed.isEmpty()) {
+            repo.saveAll(changed);
+        }
+    }
+
+    /* ---------- Packing ---------- */
+
+    static byte[] pack(List<Neighbor> neighbors) {
+        ByteBuffer buf = ByteBuffer.allocate(PAIR_BYTES * neighbors.size()).order(ByteOrder.LITTLE_ENDIAN);
+        for (Neighbor n : neighbors) {
+            buf.putLong(n.getNoteId()).putFloat(n.getScore());
+        }
+        return buf.array();
+    }
+
+    static List<Neighbor> unpack(byte[] packed) {
+        if (packed == null) {
+            return new ArrayList<>();
+        }
+        ByteBuffer buf = ByteBuffer.wrap(packed).order(ByteOrder.LITTLE_ENDIAN);
+        List<Neighbor> out = new ArrayList<>(packed.length / PAIR_BYTES);
+        while (buf.remaining() >= PAIR_BYTES) {
+            out.add(new Neighbor(buf.getLong(), buf.getFloat()));
+        }
+        return out;
+    }
+
+    private static double[] toDoubles(FloatBuffer v) {
+        double[] out = new double[v.limit()];
+        for (int i = 0; i < out.length; i++) {
+            out[i] = v.get(i);
+        }
+        return out;
+    }
+}
@@ -0,0 +1,113 @@
+package com.thynkah.service;
+
+import com.thynkah.model.Note;
+import com.thynkah.repository.NoteRepository;
+import com.thynkah.util.LruCache;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Optional;
+
+/**
+ * Bounded LRU cache of notes by id, in front of the single-note lookups (edit, tag,
+ * ask-about-this-note), so a note that is edited or asked about repeatedly is read from
+ * MySQL once. Write-through: every mutation in {@link NoteService} puts the saved row or
+ * evicts it, and {@link ChangeJournal} evicts notes changed on other instances.
+ * <p>
+ * Entries are copies without the embedding (it is the bulk of a row, and nothing that
+ * reads a single note needs it), and every read returns a fresh copy, so callers may
+ * modify what they get. A caller that saves such a note must set its embedding first.
+ * <p>
+ * A miss only populates the cache when no write happened while the row was loading, so a
+ * slow reader cannot put back a row older than a concurrent writer's. Writes inside a
+ * transaction are applied to the cache after it commits. Hit ratio is published as
+ * thynkah.cache.hit.ratio{cache="note"}.
+ */
+@Service
+public class NoteCache {
+
+    private final NoteRepository repo;
+    private final LruCache<Long, Note> cache;
+
+    private long writes; // guarded by this; bumped by every put / evict
+
+    public NoteCache(NoteRepository repo,
+                     AiMetrics metrics,
+                     @Value("${thynkah.notes.cache-size:1000}") int cacheSize) {
+        this.repo = repo;
+        this.cache = new LruCache<>(cacheSize);
+        metrics.cache("note", cache, LruCache::hits, LruCache::misses);
+    }
+
+    /**
+     * The owner's note, without its embedding; another owner's note is reported missing,
+     * without a query when it is cached.
+     */
+    public Optional<Note> find(Long id, String owner) {
+        if (id == null) {
+            return Optional.empty();
+        }
+        Note cached = cache.get(id);
+        if (cached != null) {
+            return owner.equals(cached.getOwner()) ? Optional.of(cached.copy()) : Optional.empty();
+        }
+        long stamp;
+        synchronized (this) {
+            stamp = writes;
+        }
+        Optional<Note> loaded = repo.findByIdAndOwner(id, owner).map(NoteCache::entry);
+        loaded.ifPresent(n -> {
+            synchronized (this) {
+                if (writes == stamp) {
+                    cache.put(id, n);
+                }
+            }
+        });
+        return loaded.map(Note::copy);
+    }
+
+    /** Stores the row as just saved (after the surrounding transaction commits, if any). */
+    public void put(Note saved) {
+        if (saved.getId() == null) {
+            return;
+        }
+        Note entry = entry(saved);
+        write(entry.getId(), () -> cache.put(entry.getId(), entry));
+    }
+
+    public void evict(Long id) {
+        write(id, () -> cache.remove(id));
+    }
+
+    private void write(Long id, Runnable change) {
+        synchronized (this) {
+            writes++;
+            change.run();
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            // until the commit other readers still load the old row: apply the change again then;
+            // after a rollback the entry put above was never written, so drop it
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    synchronized (NoteCache.this) {
+                        writes++;
+                        if (status == STATUS_COMMITTED) {
+                            change.run();
+                        } else {
+                            cache.remove(id);
+                        }
+                    }
+                }
+            });
+        }
+    }
+
+    private static Note entry(Note note) {
+        Note entry = note.copy();
+        entry.setEmbedding(null);
+        return entry;
+    }
+}
@@ -1,42 +1,72 @@
 package com.thynkah.service;
 
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.thynkah.model.Note;
+import com.thynkah.model.NoteChange;
 import com.thynkah.repository.NoteRepository;
+import com.thynkah.util.LruCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
-import org.springframework.http.HttpEntity;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.MediaType;
-import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
-import javax.annotation.PostConstruct;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 @Service
 public class NoteService {
 
-    @Value("${openai.api.key}")
-    private String openAiApiKey;          // <== THIS is the injected API key
+    private static final Logger log = LoggerFactory.getLogger(NoteService.class);
 
     private final NoteRepository repo;
-    private final EmbeddingService embeddingService;
-    private final RestTemplate restTemplate;
-    private final ObjectMapper mapper = new ObjectMapper();
+    private final EmbeddingStore embeddingStore;
+    private final AiGateway gateway;
+    private final ExecutorService dbExecutor;
+    private final AiMetrics metrics;
+    private final MarkdownService markdownService;
+    private final ContextBuilder contextBuilder;
+    private final PassageService passageService;
+    private final VectorShardManager shards;
+    private final OwnerContext owners;
+    private final ChangeJournal journal;
+    private final NeighborIndex neighbors;
+    private final ClusterIndex clusters;
+    private final NoteCache noteCache;
+    private final TransactionTemplate tx;
+
+    // owner + day + normalized question -> answer; stale once the owner's notes change
+    private final LruCache<String, CachedAnswer> answers;
+
+    private static class CachedAnswer {
+        final String answer;
+        final long version;
+        CachedAnswer(String answer, long version) {
+            this.answer = answer;
+            this.version = version;
+        }
+    }
 
-    private static final String EMBEDDING_URL = "https://api.openai.com/v1/embeddings";
     private static final String CHAT_URL      = "https://api.openai.com/v1/chat/completions";
+    private static final String CHAT_MODEL    = "gpt-4.1-mini"; // or whatever model you are using
+
+    // first-pass hits re-scored with full vectors when shards hold prefix vectors
+    @Value("${thynkah.retrieval.rerank-candidates:300}")
+    private int rerankCandidates;
 
 
 
@@ -44,122 +74,210 @@ public class NoteService {
         int safePage = Math.max(page, 0);
         int safeSize = Math.min(Math.max(size, 1), 200); // guardrail
         Pageable pageable = PageRequest.of(safePage, safeSize, Sort.by(Sort.Direction.DESC, "createdAt"));
-        return repo.findAll(pageable);
+        return repo.findByOwner(owners.current(), pageable);
     }
 
     @Autowired
     public NoteService(NoteRepository repo,
-                       EmbeddingService embeddingService) {
+                       EmbeddingStore embeddingStore,
+                       AiGateway gateway,
+                       @Qualifier("dbExecutor") ExecutorService dbExecutor,
+                       AiMetrics metrics,
+                       MarkdownService markdownService,
+                       ContextBuilder contextBuilder,
+                       PassageService passageService,
+                       VectorShardManager shards,
+                       OwnerContext owners,
+                       ChangeJournal journal,
+                       NeighborIndex neighbors,
+                       ClusterIndex clusters,
+                       NoteCache noteCache,
+                       TransactionTemplate tx,
+                       @Value("${thynkah.answers.cache-size:500}") int answerCacheSize) {
         this.repo = repo;
-        this.embeddingService = embeddingService;
-        this.restTemplate = new RestTemplate();
-    }
-
-    @PostConstruct
-    public void init() {
-        if (openAiApiKey == null || openAiApiKey.isEmpty()) {
-            throw new IllegalStateException("OpenAI API key is not configured!");
-        }
+        this.embeddingStore = embeddingStore;
+        this.gateway = gateway;
+        this.dbExecutor = dbExecutor;
+        this.metrics = metrics;
+        this.markdownService = markdownService;
+        this.contextBuilder = contextBuilder;
+        this.passageService = passageService;
+        this.shards = shards;
+        this.owners = owners;
+        this.journal = journal;
+        this.neighbors = neighbors;
+        this.clusters = clusters;
+        this.noteCache = noteCache;
+        this.tx = tx;
+        this.answers = new LruCache<>(answerCacheSize);
+        metrics.cache("answer", answers, LruCache::hits, LruCache::misses);
     }
 
     /* ---------- CRUD ---------- */
 
-    public Note save(Note note) {
-        if (note.getCreatedAt() == null) {
-            note.setCreatedAt(LocalDateTime.now());
-        }
-
-        String embedding = generateEmbedding(note.getText());
-        note.setEmbedding(embedding);
-
-        return repo.save(note);
+    /**
+     * Creates a note for the current owner. Only text, tag and creation time are taken
+     * from the request: an id sent by the client is ignored (edits go through
+     * {@link #updateText}), so it can never overwrite an existing note.
+     * Embedding calls run before the transaction; see write().
+     */
+    public Note save(Note input) {
+        Note note = new Note();
+        note.setText(input.getText());
+        note.setTag(input.getTag());
+        note.setCreatedAt(input.getCreatedAt() != null ? input.getCreatedAt() : LocalDateTime.now());
+        note.setOwner(owners.current());
+
+        embed(note, note.getText());
+        PassageService.Prepared passages = passageService.prepare(null, note.getText(), true);
+
+        Note saved = write(note, passages, NoteChange.SAVE);
+        neighbors.noteChanged(saved);
+        clusters.noteChanged(saved);
+        return saved;
     }
 
     public List<Note> findAll() {
         return repo.findAll();
     }
 
+    /**
+     * Version of the current owner's note collection: changes whenever one of their
+     * notes is saved, edited or deleted (on any instance). Used for ETags.
+     */
+    public String collectionVersion() {
+        String owner = owners.current();
+        return Integer.toHexString(owner.hashCode()) + "." + journal.version(owner);
+    }
+
+    /**
+     * A note of the current owner; other owners' notes are treated as missing.
+     * Served from {@link NoteCache}: the result is a copy, without its embedding, and may
+     * be modified (set the embedding before saving it).
+     */
+    public Optional<Note> findOwned(Long id) {
+        return noteCache.find(id, owners.current());
+    }
+
+    /**
+     * The note's precomputed nearest neighbours (note -> similarity, best first), or
+     * empty when it is not the current owner's or its list is still being computed.
+     */
+    public Map<Note, Double> findRelated(Long id) {
+        String owner = owners.current();
+        Map<Long, Note> loaded = new HashMap<>();
+        List<NeighborIndex.Neighbor> list = neighbors.related(owner, id, ids -> {
+            for (Note n : repo.findAllById(ids)) {
+                if (owner.equals(n.getOwner())) {
+                    loaded.put(n.getId(), n);
+                }
+            }
+            return loaded.keySet();
+        });
+        Map<Note, Double> out = new LinkedHashMap<>();
+        for (NeighborIndex.Neighbor n : list) {
+            out.put(loaded.get(n.getNoteId()), (double) n.getScore());
+        }
+        return out;
+    }
+
+    @Transactional
     public void delete(Long id) {
-        repo.deleteById(id);
+        findOwned(id).ifPresent(note -> {
+            repo.delete(note);
+            noteCache.evict(id);
+            passageService.delete(id);
+            markdownService.evict(id);
+            shards.remove(note.getOwner(), id);
+            journal.record(note, NoteChange.DELETE);
+            neighbors.noteDeleted(note.getOwner(), id);
+            clusters.noteDeleted(note.getOwner(), id);
+        });
     }
 
     public Note updateText(Long id, String newText) {
-        return repo.findById(id).map(note -> {
-            note.setText(newText);
-            note.setEmbedding(generateEmbedding(newText));
-            return repo.save(note);
-        }).orElseThrow(() -> new RuntimeException("Note not found with ID: " + id));
+        Note note = findOwned(id).orElseThrow(() -> new RuntimeException("Note not found with ID: " + id));
+        if (Objects.equals(note.getText(), newText) && note.getEmbeddingModel() != null) {
+            return note; // byte-identical re-save: nothing to re-embed
+        }
+        // unchanged passages would keep the old model's vectors
+        boolean sameModel = Objects.equals(note.getEmbeddingModel(), embeddingStore.model());
+        note.setText(newText);
+        embed(note, newText);
+        PassageService.Prepared passages = passageService.prepare(id, newText, sameModel);
+
+        markdownService.evict(id);
+        Note saved = write(note, passages, NoteChange.TEXT);
+        neighbors.noteChanged(saved);
+        clusters.noteChanged(saved);
+        return saved;
     }
 
+    /**
+     * Re-embeds a note (and its passages) whose vector came from another model, after the
+     * embedding provider was switched. No owner check: called by {@link EmbeddingMigration}.
+     * Keeps the old vector when embedding fails; returns whether the note was updated.
+     */
+    public boolean reembed(Note note) {
+        float[] vector = embeddingStore.embed(note.getText());
+        if (vector.length == 0) {
+            return false;
+        }
+        store(note, vector);
+        // every passage is re-embedded: unchanged ones would keep the old model's vectors
+        PassageService.Prepared passages = passageService.prepare(note.getId(), note.getText(), false);
+
+        Note saved = write(note, passages, NoteChange.TEXT);
+        neighbors.noteChanged(saved);
+        clusters.noteChanged(saved);
+        return true;
+    }
+
+    @Transactional
     public Note updateTag(Long id, String newTag) {
-        return repo.findById(id).map(note -> {
+        return findOwned(id).map(note -> {
+            if (repo.updateTag(id, note.getOwner(), newTag) == 0) {
+                noteCache.evict(id); // deleted meanwhile
+                throw new RuntimeException("Note not found with ID: " + id);
+            }
             note.setTag(newTag);
-            return repo.save(note);
+            noteCache.put(note);
+            journal.record(note, NoteChange.TAG);
+            return note;
         }).orElseThrow(() -> new RuntimeException("Note not found with ID: " + id));
     }
 
-    /* ---------- Embeddings helpers ---------- */
-
     /**
-     * Used only for legacy/debug fallback testing.
-     * For real embeddings, use EmbeddingService instead.
+     * Writes a note with its prepared passages, and its journal row, in one short
+     * transaction: the row, passages and journal entry commit (or roll back) together,
+     * and no connection is held while embeddings are computed.
      */
-    private String generateEmbedding(String text) {
-        try {
-            Map<String, Object> requestBody = new HashMap<>();
-            requestBody.put("input", text);
-            requestBody.put("model", "text-embedding-3-small");
-
-            HttpHeaders headers = new HttpHeaders();
-            headers.set("Authorization", "Bearer " + openAiApiKey);
-            headers.set("Content-Type", "application/json");
-
-            HttpEntity<Map<String, Object>> request =
-                    new HttpEntity<>(requestBody, headers);
-
-            ResponseEntity<String> response =
-                    restTemplate.postForEntity(EMBEDDING_URL, request, String.class);
-
-            JsonNode json = mapper.readTree(response.getBody());
-            JsonNode data = json.path("data");
+    private Note write(Note note, PassageService.Prepared passages, String op) {
+        return tx.execute(status -> {
+            Note saved = repo.save(note);
+            noteCache.put(saved);
+            shards.upsert(saved, passageService.write(saved, passages));
+            journal.record(saved, op);
+            return saved;
+        });
+    }
 
-            if (!data.isArray() || data.isEmpty()) {
-                System.err.println("Invalid embedding response: " + json);
-                return Collections.emptyList().toString();
-            }
+    /* ---------- Embeddings helpers ---------- */
 
-            JsonNode array = data.get(0).get("embedding");
-            List<Double> vector = new ArrayList<>();
-            for (JsonNode val : array) {
-                vector.add(val.asDouble());
-            }
-            return vector.toString();
-        } catch (Exception e) {
-            e.printStackTrace();
-            return Collections.emptyList().toString();
-        }
+    /**
+     * Embeds note text (reusing any stored vector for the same content), stores it the
+     * way notes.embedding expects ("[0.1, 0.2, ...]") and records model + dimensions.
+     */
+    private void embed(Note note, String text) {
+        store(note, embeddingStore.embed(text));
     }
 
-    public double[] parseEmbeddingVector(String jsonArray) {
-        try {
-            return mapper.readValue(jsonArray, double[].class);
-        } catch (Exception e) {
-            e.printStackTrace();
-            return new double[0];
-        }
+    private void store(Note note, float[] vector) {
+        note.setEmbedding(Arrays.toString(vector));
+        note.setEmbeddingModel(vector.length == 0 ? null : embeddingStore.model());
+        note.setEmbeddingDims(vector.length == 0 ? null : vector.length);
     }
 
-    private double cosineSimilarity(double[] a, double[] b) {
-        double dot = 0.0, normA = 0.0, normB = 0.0;
-        int len = Math.min(a.length, b.length);
-        for (int i = 0; i < len; i++) {
-            dot += a[i] * b[i];
-            normA += a[i] * a[i];
-            normB += b[i] * b[i];
-        }
-        if (normA == 0 || normB == 0) return 0.0;
-        return dot / (Math.sqrt(normA) * Math.sqrt(normB));
-    }
 
     private double[] toDoubleArray(float[] arr) {
         double[] out = new double[arr.length];
@@ -175,59 +293,161 @@ public class NoteService {
      * Used by the UI for “Most relevant note”.
      * Now also prefers recent notes.
      */
-    public Note findMostRelevantNote(String question) {
+    public CompletableFuture<Note> findMostRelevantNoteAsync(String question) {
         if (question == null || question.isBlank()) {
-            return null;
+            return CompletableFuture.completedFuture(null);
         }
 
-        List<Note> allNotes = repo.findAll(Sort.by(Sort.Direction.DESC, "createdAt"));
-        if (allNotes.isEmpty()) {
-            return null;
+        VectorShard shard = shards.shard(owners.current());
+        if (shard.size() == 0) {
+            return CompletableFuture.completedFuture(null);
         }
 
         String qLower = question.toLowerCase(Locale.ROOT);
         boolean aboutToday = qLower.contains("today");
-
         LocalDate today = LocalDate.now();
+
+        List<VectorShard.Entry> candidates = candidates(shard, aboutToday, today);
+
+        if (candidates.isEmpty()) {
+            // For "today", if there are no notes today, just say "no best note".
+            // (We do NOT fall back to old notes.)
+            return CompletableFuture.completedFuture(null);
+        }
+
+        // One embedding call for the question; scoring runs once it arrives
+        return embeddingStore.embedAsync(question, false)
+                .thenApplyAsync(RequestSpans.wrap(qVecFloat -> {
+                    double[] qVec = toDoubleArray(qVecFloat);
+                    List<ScoredNote> top = topNotes(retrieve(shard.getOwner(), candidates, qVec, aboutToday, today), 1);
+                    if (top.isEmpty()) {
+                        return null;
+                    }
+                    RequestSpans.used(List.of(top.get(0).note.getId()));
+                    return top.get(0).note;
+                }), dbExecutor);
+    }
+
+    /* ---------- Retrieval helpers (shared by findMostRelevantNote / answerQuestion) ---------- */
+
+    // Passages within this much of a note's best passage are sent to the chat model with it.
+    private static final double PASSAGE_MARGIN = 0.05;
+    private static final int MAX_PASSAGES_PER_NOTE = 3;
+
+    private static class ScoredNote {
+        final Note note;
+        final double score;
+        final List<String> passages; // winning passages, or null to use the whole note
+        ScoredNote(Note n, double s, List<String> passages) {
+            this.note = n;
+            this.score = s;
+            this.passages = passages;
+        }
+    }
+
+    // A scored shard entry, before its note text has been fetched.
+    private static class Hit {
+        final VectorShard.Entry entry;
+        final double score;
+        final List<VectorShard.Passage> passages; // winning passages, or null to use the whole note
+        Hit(VectorShard.Entry entry, double score, List<VectorShard.Passage> passages) {
+            this.entry = entry;
+            this.score = score;
+            this.passages = passages;
+        }
+    }
+
+    /**
+     * Shard entries that have an embedding comparable with the question's; for
+     * questions about "today", only notes created today.
+     */
+    private List<VectorShard.Entry> candidates(VectorShard shard, boolean aboutToday, LocalDate today) {
         LocalDateTime startToday = today.atStartOfDay();
         LocalDateTime endToday = startToday.plusDays(1);
-
-        // Filter to notes that actually have embeddings
-        List<Note> candidates = allNotes.stream()
-                .filter(n -> n.getEmbedding() != null && !n.getEmbedding().isBlank())
-                .filter(n -> {
+        return shard.entries().stream()
+                .filter(VectorShard.Entry::hasVector)
+                .filter(e -> e.comparableWith(embeddingStore.model()))
+                .filter(e -> {
                     if (!aboutToday) {
+                        // Generic question -> allow everything, recency will be handled in scoring
                         return true;
                     }
-                    // If the question is about "today", only consider notes from today
-                    if (n.getCreatedAt() == null) return false;
-                    LocalDateTime ts = n.getCreatedAt();
+                    if (e.getCreatedAt() == null) return false;
+                    LocalDateTime ts = e.getCreatedAt();
                     return !ts.isBefore(startToday) && ts.isBefore(endToday);
                 })
                 .collect(Collectors.toList());
+    }
 
-        if (candidates.isEmpty()) {
-            // For "today", if there are no notes today, just say "no best note".
-            // (We do NOT fall back to old notes.)
-            return null;
+    /**
+     * Ranks candidates against the question vector. When shards hold prefix vectors,
+     * the first pass scans those and the best rerank-candidates hits are scored again
+     * with their full vectors; the rest keep their first-pass order behind them.
+     * With thynkah.retrieval.nprobe set, only notes in the nearest topic clusters are scanned
+     * ("today" questions already have a small candidate set and are never pruned).
+     */
+    private List<Hit> retrieve(String owner, List<VectorShard.Entry> all, double[] qVec,
+                               boolean aboutToday, LocalDate today) {
+        List<VectorShard.Entry> candidates = aboutToday ? all : clusters.prune(owner, all, qVec);
+        metrics.lastScanSize(candidates.size());
+        VectorShard.Query query = new VectorShard.Query(qVec);
+        List<Hit> hits = metrics.time("retrieval.scoring", () -> scoreNotes(candidates, query, aboutToday, today));
+        if (!shards.usesPrefixVectors() || hits.isEmpty()) {
+            return hits;
         }
 
-        // One embedding call for the question
-        float[] qVecFloat = embeddingService.generateEmbedding(question);
-        double[] qVec = toDoubleArray(qVecFloat);
-
-        Note best = null;
-        double bestScore = Double.NEGATIVE_INFINITY;
-
-        for (Note n : candidates) {
-            double[] noteVec = parseEmbeddingVector(n.getEmbedding());
-            if (noteVec.length == 0) continue;
+        List<Hit> head = hits.subList(0, Math.min(rerankCandidates, hits.size()));
+        return metrics.time("retrieval.rerank", () -> {
+            Map<Long, VectorShard.Entry> full = shards.fullVectors(
+                    head.stream().map(h -> h.entry.getNoteId()).collect(Collectors.toList()));
+            List<VectorShard.Entry> fullEntries = head.stream()
+                    .map(h -> full.getOrDefault(h.entry.getNoteId(), h.entry))
+                    .collect(Collectors.toList());
+            List<Hit> reranked = scoreNotes(fullEntries, query, aboutToday, today);
+            reranked.addAll(hits.subList(head.size(), hits.size()));
+            return reranked;
+        });
+    }
 
-            double sim = cosineSimilarity(qVec, noteVec);
+    /**
+     * Scores shard entries by similarity * recency weight, best first.
+     * Long notes are scored by their passages: the note similarity is the best
+     * passage, nudged up when a second passage also matches, and the passages
+     * close to the best one are kept for the prompt.
+     */
+    private List<Hit> scoreNotes(List<VectorShard.Entry> candidates, VectorShard.Query query,
+                                 boolean aboutToday, LocalDate today) {
+        List<Hit> scored = new ArrayList<>();
+        for (VectorShard.Entry e : candidates) {
+            double sim = VectorShard.cosine(query, e.vector, e.norm);
+            List<VectorShard.Passage> winners = null;
+
+            List<VectorShard.Passage> ps = e.passages;
+            if (!ps.isEmpty()) {
+                double[] pSims = new double[ps.size()];
+                double best = Double.NEGATIVE_INFINITY, second = Double.NEGATIVE_INFINITY;
+                for (int j = 0; j < pSims.length; j++) {
+                    VectorShard.Passage p = ps.get(j);
+                    pSims[j] = VectorShard.cosine(query, p.vector, p.norm);
+                    if (pSims[j] > best) {
+                        second = best;
+                        best = pSims[j];
+                    } else if (pSims[j] > second) {
+                        second = pSims[j];
+                    }
+                }
+                sim = second > Double.NEGATIVE_INFINITY ? 0.8 * best + 0.2 * second : best;
+                winners = new ArrayList<>();
+                for (int j = 0; j < pSims.length && winners.size() < MAX_PASSAGES_PER_NOTE; j++) {
+                    if (pSims[j] >= best - PASSAGE_MARGIN) {
+                        winners.add(ps.get(j));
+                    }
+                }
+            }
 
             long daysOld = 0;
-            if (n.getCreatedAt() != null) {
-                daysOld = ChronoUnit.DAYS.between(n.getCreatedAt().toLocalDate(), today);
+            if (e.getCreatedAt() != null) {
+                daysOld = ChronoUnit.DAYS.between(e.getCreatedAt().toLocalDate(), today);
             }
 
             // For generic questions, push very old notes down.
@@ -236,15 +456,43 @@ public class NoteService {
                     ? 1.0
                     : 1.0 / (1.0 + Math.max(0, daysOld) / 7.0);
 
-            double score = sim * recencyWeight;
+            scored.add(new Hit(e, sim * recencyWeight, winners));
+        }
+        scored.sort(Comparator.comparingDouble((Hit h) -> h.score).reversed());
+        return scored;
+    }
 
-            if (score > bestScore) {
-                bestScore = score;
-                best = n;
+    /**
+     * Fetches the notes behind the first {@code k} hits in one query and cuts their
+     * winning passages out of the note text. Notes deleted meanwhile are skipped.
+     */
+    private List<ScoredNote> topNotes(List<Hit> hits, int k) {
+        List<Hit> top = hits.subList(0, Math.min(k, hits.size()));
+        if (top.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<Long> ids = top.stream().map(h -> h.entry.getNoteId()).collect(Collectors.toList());
+        Map<Long, Note> byId = metrics.time("db.load", () -> repo.findAllById(ids)).stream()
+                .collect(Collectors.toMap(Note::getId, n -> n));
+
+        List<ScoredNote> out = new ArrayList<>();
+        for (Hit h : top) {
+            Note n = byId.get(h.entry.getNoteId());
+            if (n == null) continue;
+            List<String> passages = null;
+            String text = n.getText();
+            if (h.passages != null && text != null) {
+                passages = new ArrayList<>();
+                for (VectorShard.Passage p : h.passages) {
+                    if (p.start >= 0 && p.start < p.end && p.end <= text.length()) {
+                        passages.add(text.substring(p.start, p.end));
+                    }
+                }
+                if (passages.isEmpty()) passages = null;
             }
+            out.add(new ScoredNote(n, h.score, passages));
         }
-
-        return best;
+        return out;
     }
 
 
@@ -254,97 +502,86 @@ public class NoteService {
 
     /**
      * Generic Q&A entry point used by POST /ask.
+     * No thread is held while the question embedding and the chat call are in flight.
+     * Answers are cached per owner, day and question until one of the owner's notes changes.
      */
-    public String answerQuestion(String question) {
-        if (question == null || question.isBlank()) {
-            return "Please type a question.";
-        }
+    public CompletableFuture<String> answerQuestionAsync(String question) {
+        return answer(owners.current(), question, AiScheduler.Priority.INTERACTIVE);
+    }
 
-        List<Note> allNotes = repo.findAll(Sort.by(Sort.Direction.DESC, "createdAt"));
-        if (allNotes.isEmpty()) {
-            return "You don't have any notes yet, so I can't answer from your history.";
+    /** Answers a frequent question ahead of time, at background priority, to fill the answer cache. */
+    public CompletableFuture<String> warmAnswer(String owner, String question) {
+        return answer(owner, question, AiScheduler.Priority.BACKGROUND);
+    }
+
+    private CompletableFuture<String> answer(String owner, String question, AiScheduler.Priority priority) {
+        if (question == null || question.isBlank()) {
+            return CompletableFuture.completedFuture("Please type a question.");
         }
 
         String qLower = question.toLowerCase(Locale.ROOT);
         boolean aboutToday = qLower.contains("today");
-
         LocalDate today = LocalDate.now();
-        LocalDateTime startToday = today.atStartOfDay();
-        LocalDateTime endToday = startToday.plusDays(1);
 
-        // 1) Filter notes that have embeddings
-        List<Note> candidates = allNotes.stream()
-                .filter(n -> n.getEmbedding() != null && !n.getEmbedding().isBlank())
-                .filter(n -> {
-                    if (!aboutToday) {
-                        // Generic question -> allow everything, recency will be handled in scoring
-                        return true;
-                    }
-                    // Question explicitly about "today" -> ONLY notes from today
-                    if (n.getCreatedAt() == null) return false;
-                    LocalDateTime ts = n.getCreatedAt();
-                    return !ts.isBefore(startToday) && ts.isBefore(endToday);
-                })
-                .collect(Collectors.toList());
+        String cacheKey = owner + "\n" + today + "\n" + qLower.trim().replaceAll("\\s+", " ");
+        long version = journal.version(owner);
+        CachedAnswer cached = answers.get(cacheKey, a -> a.version == version);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached.answer);
+        }
+        Consumer<String> remember = a -> answers.put(cacheKey, new CachedAnswer(a, version));
+
+        VectorShard shard = shards.shard(owner);
+        if (shard.size() == 0) {
+            return CompletableFuture.completedFuture(
+                    "You don't have any notes yet, so I can't answer from your history.");
+        }
+
+        // 1) Notes that have embeddings (only today's when the question is about "today")
+        List<VectorShard.Entry> candidates = candidates(shard, aboutToday, today);
 
         if (candidates.isEmpty()) {
             // If user asked about "today" and we have no notes for today,
             // do NOT pull in old stuff. Tell the model there is no context.
             if (aboutToday) {
-                return callChatModel(question, Collections.emptyList());
+                return callChatModelAsync(question, contextBuilder.build(question, Collections.emptyList()),
+                        priority, remember);
             }
             // Generic question but no embedded notes at all
-            return "I couldn't find any notes with embeddings yet. Try adding some recent notes first.";
+            return CompletableFuture.completedFuture(
+                    "I couldn't find any notes with embeddings yet. Try adding some recent notes first.");
         }
 
         // 2) Embed the question once
-        float[] qVecFloat = embeddingService.generateEmbedding(question);
-        double[] qVec = toDoubleArray(qVecFloat);
-
-        // 3) Score notes by similarity * recency weight
-        LocalDateTime now = LocalDateTime.now();
-
-        class Scored {
-            final Note note;
-            final double score;
-            Scored(Note n, double s) { this.note = n; this.score = s; }
-        }
-
-        List<Scored> scored = candidates.stream()
-                .map(n -> {
-                    double[] noteVec = parseEmbeddingVector(n.getEmbedding());
-                    if (noteVec.length == 0) return null;
-
-                    double sim = cosineSimilarity(qVec, noteVec);
-
-                    long daysOld = 0;
-                    if (n.getCreatedAt() != null) {
-                        daysOld = ChronoUnit.DAYS.between(n.getCreatedAt().toLocalDate(), today);
+        return embeddingStore.embedAsync(question, false, priority)
+                .thenApplyAsync(RequestSpans.wrap(qVecFloat -> {
+                    double[] qVec = toDoubleArray(qVecFloat);
+
+                    // 3) Score notes by similarity * recency weight, fetch text for the top-K only
+                    List<ScoredNote> top = topNotes(retrieve(shard.getOwner(), candidates, qVec, aboutToday, today), 8);
+                    RequestSpans.used(top.stream().map(s -> s.note.getId()).collect(Collectors.toList()));
+                    return top;
+                }), dbExecutor)
+                .thenCompose(scored -> {
+                    if (scored.isEmpty()) {
+                        // Should be rare – everything had empty/invalid embedding
+                        return CompletableFuture.completedFuture(
+                                "I couldn't match your question to any of your notes yet.");
                     }
 
-                    double recencyWeight = aboutToday
-                            ? 1.0
-                            : 1.0 / (1.0 + Math.max(0, daysOld) / 7.0);
-
-                    double score = sim * recencyWeight;
-                    return new Scored(n, score);
-                })
-                .filter(Objects::nonNull)
-                .sorted(Comparator.comparingDouble((Scored s) -> s.score).reversed())
-                .collect(Collectors.toList());
-
-        if (scored.isEmpty()) {
-            // Should be rare – everything had empty/invalid embedding
-            return "I couldn't match your question to any of your notes yet.";
-        }
-
-        // 4) Take top-K as context for the chat model
-        int topK = Math.min(8, scored.size());
-        List<Note> topNotes = scored.subList(0, topK).stream()
-                .map(s -> s.note)
-                .collect(Collectors.toList());
+                    // 4) Top-K as context for the chat model (the context builder enforces the token budget)
+                    List<Note> topNotes = new ArrayList<>();
+                    Map<Long, List<String>> topPassages = new HashMap<>();
+                    for (ScoredNote s : scored) {
+                        topNotes.add(s.note);
+                        if (s.passages != null) {
+                            topPassages.put(s.note.getId(), s.passages);
+                        }
+                    }
 
-        return callChatModel(question, topNotes);
+                    return callChatModelAsync(question, contextBuilder.build(question, topNotes, topPassages),
+                            priority, remember);
+                });
     }
 
 
@@ -356,8 +593,13 @@ public class NoteService {
 
     /* ---------- OpenAI Chat call (multi-note context) ---------- */
 
-    private String callChatModel(String question, List<Note> contextNotes) {
-        try {
+    private CompletableFuture<String> callChatModelAsync(String question, ContextBuilder.PromptContext context) {
+        return callChatModelAsync(question, context, AiScheduler.Priority.INTERACTIVE, a -> { });
+    }
+
+    /** {@code onAnswer} receives the model's answer; fallback and error messages are not passed to it. */
+    private CompletableFuture<String> callChatModelAsync(String question, ContextBuilder.PromptContext context,
+                                                         AiScheduler.Priority priority, Consumer<String> onAnswer) {
             String systemPrompt =
                     "You are Thynkah, a personal memory and planning assistant. "
                             + "You ONLY know what is written in the notes I give you. "
@@ -372,31 +614,14 @@ public class NoteService {
                             + "If the provided notes are empty or clearly unrelated to the question, "
                             + "say explicitly that there is nothing relevant in their notes yet instead of guessing.";
 
-            StringBuilder sb = new StringBuilder();
-            if (contextNotes != null && !contextNotes.isEmpty()) {
-                sb.append("Here are the user's most relevant notes (most recent / relevant first):\n\n");
-                for (Note n : contextNotes) {
-                    sb.append("- Note from ");
-                    if (n.getCreatedAt() != null) {
-                        sb.append(n.getCreatedAt());
-                    } else {
-                        sb.append("an unknown date");
-                    }
-                    sb.append(":\n");
-                    sb.append(n.getText()).append("\n\n");
-                }
-            } else {
-                sb.append("There are NO relevant notes for this query.\n");
-            }
-
             String userPrompt =
                     "User question:\n" + question + "\n\n"
                             + "Use ONLY the notes below to answer. "
                             + "If they don't contain enough information, say so explicitly.\n\n"
-                            + sb;
+                            + context.getText();
 
             Map<String, Object> body = new HashMap<>();
-            body.put("model", "gpt-4.1-mini"); // or whatever model you are using
+            body.put("model", CHAT_MODEL);
 
             List<Map<String, String>> messages = new ArrayList<>();
             messages.add(Map.of(
@@ -410,32 +635,29 @@ public class NoteService {
             body.put("messages", messages);
             body.put("temperature", 0.2);
 
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_JSON);
-            headers.setBearerAuth(openAiApiKey);
-
-            HttpEntity<Map<String, Object>> request = new HttpEntity<>(body, headers);
-            ResponseEntity<String> response = restTemplate.postForEntity(CHAT_URL, request, String.class);
-
-            if (!response.getStatusCode().is2xxSuccessful() || response.getBody() == null) {
-                return "I couldn't reach the AI service right now.";
-            }
-
-            JsonNode root = mapper.readTree(response.getBody());
-            JsonNode choices = root.path("choices");
-            if (choices.isArray() && choices.size() > 0) {
-                JsonNode message = choices.get(0).path("message");
-                JsonNode content = message.path("content");
-                if (!content.isMissingNode()) {
-                    return content.asText().trim();
-                }
-            }
-
-            return "I couldn't get a meaningful answer from the AI.";
-        } catch (Exception e) {
-            e.printStackTrace();
-            return "Error while contacting AI: " + e.getMessage();
-        }
+            return gateway.call("chat", CHAT_URL, body, priority)
+                    .thenApply(root -> {
+                        JsonNode choices = root.path("choices");
+                        if (choices.isArray() && choices.size() > 0) {
+                            JsonNode message = choices.get(0).path("message");
+                            JsonNode content = message.path("content");
+                            if (!content.isMissingNode()) {
+                                String answer = content.asText().trim();
+                                onAnswer.accept(answer);
+                                return answer;
+                            }
+                        }
+
+                        return "I couldn't get a meaningful answer from the AI.";
+                    })
+                    .exceptionally(e -> {
+                        Throwable cause = (e instanceof CompletionException && e.getCause() != null) ? e.getCause() : e;
+                        if (cause instanceof AiOverloadedException) {
+                            throw (AiOverloadedException) cause; // answered as 503 + Retry-After
+                        }
+                        log.error("Error while contacting AI", cause);
+                        return "Error while contacting AI: " + cause.getMessage();
+                    });
     }
 
 
@@ -443,18 +665,19 @@ public class NoteService {
     public List<Note> findNotesForDate(LocalDate date) {
         LocalDateTime start = date.atStartOfDay();
         LocalDateTime end   = date.plusDays(1).atStartOfDay().minusNanos(1);
-        return repo.findByCreatedAtBetween(start, end);
+        return repo.findByOwnerAndCreatedAtBetween(owners.current(), start, end);
     }
 
 
 
-    public String answerQuestionForDate(String question, LocalDate date) {
+    public CompletableFuture<String> answerQuestionForDateAsync(String question, LocalDate date) {
         List<Note> contextNotes = findNotesForDate(date);
 
         if (contextNotes == null || contextNotes.isEmpty()) {
             // no notes that day – fall back to normal behaviour
-            return answerQuestion(question);
+            return answerQuestionAsync(question);
         }
+        RequestSpans.used(contextNotes.stream().map(Note::getId).collect(Collectors.toList()));
 
         String q = question;
         if (q == null || q.trim().isEmpty()) {
@@ -473,13 +696,15 @@ public class NoteService {
                 + "  and do NOT say that I should clean or fix it.\n"
                 + "- Only list concrete tasks if I clearly wrote that I need or intend to do them.";
 
-        return callChatModel(q, contextNotes);
+        // every note of a long journal day would blow the prompt up; share the budget evenly
+        return callChatModelAsync(q, contextBuilder.buildEvenly(question, contextNotes));
     }
 
 
-    public String answerQuestionForNote(String question, Long noteId) {
-        Note note = repo.findById(noteId)
+    public CompletableFuture<String> answerQuestionForNoteAsync(String question, Long noteId) {
+        Note note = findOwned(noteId)
                 .orElseThrow(() -> new IllegalArgumentException("Note not found: " + noteId));
+        RequestSpans.used(List.of(note.getId()));
 
         String q = question;
         if (q == null || q.trim().isEmpty()) {
@@ -492,15 +717,14 @@ public class NoteService {
                 + "- If I describe something unpleasant (e.g. a dirty shower), treat it as an observation.\n"
                 + "- Only turn something into a task if I clearly wrote it as a plan, intention or reminder.";
 
-        return callChatModel(q, Collections.singletonList(note));
+        return callChatModelAsync(q, contextBuilder.build(question, Collections.singletonList(note)));
     }
 
 
 
 
     public List<Note> findAllForCurrentUser() {
-        // single-user for now; later you can filter by userId
-        return repo.findAll(Sort.by(Sort.Direction.DESC, "createdAt"));
+        return repo.findByOwnerOrderByCreatedAtDesc(owners.current());
     }
 
 }
@@ -0,0 +1,173 @@
+package com.thynkah.service;
+
+import com.thynkah.model.Note;
+import com.thynkah.model.NoteChange;
+import com.thynkah.repository.NoteChangeRepository;
+import com.thynkah.repository.NoteRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Delta sync for offline clients. A client keeps an opaque cursor and asks for what
+ * changed since it; the answer is read from the change journal, so a reconnect costs
+ * O(changes) instead of refetching every note.
+ * <p>
+ * Cursor forms: {@code "<seq>"} = journal position; {@code "<seq>.<id>"} = full
+ * (bootstrap) sync in progress, pinned at journal position seq, notes up to id sent.
+ * A client starts (or restarts, when its cursor is older than journal retention)
+ * with a bootstrap: notes are paged by id, then it continues from the pinned seq,
+ * so changes made during the bootstrap are replayed rather than lost.
+ */
+@Service
+public class NoteSyncService {
+
+    private final NoteRepository notes;
+    private final NoteChangeRepository changes;
+    private final ChangeJournal journal;
+    private final OwnerContext owners;
+    private final int maxBatch;
+
+    public NoteSyncService(NoteRepository notes,
+                           NoteChangeRepository changes,
+                           ChangeJournal journal,
+                           OwnerContext owners,
+                           @Value("${thynkah.sync.batch-size:500}") int maxBatch) {
+        this.notes = notes;
+        this.changes = changes;
+        this.journal = journal;
+        this.owners = owners;
+        this.maxBatch = Math.max(1, maxBatch);
+    }
+
+    /** Next batch for the current owner after {@code cursor} (null/blank = start with a full sync). */
+    public Batch changesSince(String cursor, int limit) {
+        String owner = owners.current();
+        int size = Math.min(Math.max(limit, 1), maxBatch);
+
+        long seq = -1;
+        Long afterId = null;
+        if (cursor != null && !cursor.isBlank()) {
+            try {
+                int dot = cursor.indexOf('.');
+                if (dot < 0) {
+                    seq = Long.parseLong(cursor.trim());
+                } else {
+                    seq = Long.parseLong(cursor.substring(0, dot));
+                    afterId = Long.parseLong(cursor.substring(dot + 1));
+                }
+            } catch (NumberFormatException e) {
+                seq = -1; // unreadable cursor: resync from scratch
+                afterId = null;
+            }
+        }
+
+        if (seq >= 0 && afterId != null) {
+            return bootstrap(owner, seq, afterId, size, false);
+        }
+        if (seq >= 0 && seq >= journal.version(owner) && seq <= journal.stableSeq()) {
+            return new Batch(Long.toString(seq), false, false, List.of(), List.of());
+        }
+        if (seq < 0 || !journal.covers(seq)) {
+            return bootstrap(owner, journal.stableSeq(), 0L, size, true);
+        }
+        return delta(owner, seq, size);
+    }
+
+    /* ---------- Delta (journal) ---------- */
+
+    private Batch delta(String owner, long since, int size) {
+        List<NoteChange> batch = changes.findForOwner(owner, since, journal.stableSeq(), PageRequest.of(0, size));
+        if (batch.isEmpty()) {
+            return new Batch(Long.toString(since), false, false, List.of(), List.of());
+        }
+
+        // several changes to one note collapse into its current row (or a tombstone)
+        Set<Long> ids = new LinkedHashSet<>();
+        for (NoteChange c : batch) {
+            ids.add(c.getNoteId());
+        }
+        Map<Long, Note> current = notes.findAllById(ids).stream()
+                .filter(n -> owner.equals(n.getOwner()))
+                .collect(Collectors.toMap(Note::getId, Function.identity()));
+
+        List<SyncedNote> upserts = new ArrayList<>();
+        List<Long> deleted = new ArrayList<>();
+        for (Long id : ids) {
+            Note note = current.get(id);
+            if (note == null) {
+                deleted.add(id);
+            } else {
+                upserts.add(new SyncedNote(note));
+            }
+        }
+        long last = batch.get(batch.size() - 1).getSeq();
+        return new Batch(Long.toString(last), false, batch.size() == size, upserts, deleted);
+    }
+
+    /* ---------- Bootstrap (full) ---------- */
+
+    private Batch bootstrap(String owner, long pinnedSeq, long afterId, int size, boolean reset) {
+        List<Note> page = notes.findByOwnerAndIdGreaterThanOrderByIdAsc(owner, afterId, PageRequest.of(0, size));
+        List<SyncedNote> upserts = page.stream().map(SyncedNote::new).collect(Collectors.toList());
+        if (page.size() < size) {
+            // done: continue with the journal from where the bootstrap was pinned
+            return new Batch(Long.toString(pinnedSeq), reset, true, upserts, List.of());
+        }
+        long lastId = page.get(page.size() - 1).getId();
+        return new Batch(pinnedSeq + "." + lastId, reset, true, upserts, List.of());
+    }
+
+    /* ---------- Response ---------- */
+
+    /**
+     * One sync step. {@code reset}: drop the local copy before applying (first page of a
+     * bootstrap). {@code more}: call again with {@code cursor} right away.
+     */
+    public static final class Batch {
+        private final String cursor;
+        private final boolean reset;
+        private final boolean more;
+        private final List<SyncedNote> notes;
+        private final List<Long> deleted;
+
+        Batch(String cursor, boolean reset, boolean more, List<SyncedNote> notes, List<Long> deleted) {
+            this.cursor = cursor;
+            this.reset = reset;
+            this.more = more;
+            this.notes = notes;
+            this.deleted = deleted;
+        }
+
+        public String getCursor() { return cursor; }
+        public boolean isReset() { return reset; }
+        public boolean isMore() { return more; }
+        public List<SyncedNote> getNotes() { return notes; }
+        public List<Long> getDeleted() { return deleted; }
+    }
+
+    /** What a client stores per note: no embedding or other server-side columns. */
+    public static final class SyncedNote {
+        private final Long id;
+        private final String text;
+        private final String tag;
+        private final LocalDateTime createdAt;
+
+        SyncedNote(Note note) {
+            this.id = note.getId();
+            this.text = note.getText();
+            this.tag = note.getTag();
+            this.createdAt = note.getCreatedAt();
+        }
+
+        public Long getId() { return id; }
+        public String getText() { return text; }
+        public String getTag() { return tag; }
+        public LocalDateTime getCreatedAt() { return createdAt; }
+    }
+}
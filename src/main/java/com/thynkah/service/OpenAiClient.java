@@ -0,0 +1,172 @@
+package com.thynkah.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Non-blocking HTTP client for the OpenAI API: auth, retries on 429/5xx/network
+ * errors, and the call/failure/retry/token metrics for every request. A 429 also pauses
+ * {@link AiScheduler} for the server's Retry-After, so queued calls do not pile onto it.
+ * Nothing here blocks a thread while waiting for OpenAI.
+ */
+@Component
+public class OpenAiClient {
+
+    private static final Logger log = LoggerFactory.getLogger(OpenAiClient.class);
+
+    @Value("${openai.api.key}")
+    private String apiKey;
+
+    @Value("${openai.retry.max-attempts:3}")
+    private int maxAttempts;
+
+    @Value("${openai.retry.backoff-ms:500}")
+    private long backoffMs;
+
+    @Value("${openai.timeout-ms:60000}")
+    private long timeoutMs;
+
+    @Value("${thynkah.embedding.provider:openai}")
+    private String embeddingProvider;
+
+    private final AiMetrics metrics;
+    private final AiScheduler scheduler;
+    private final ExecutorService executor;
+    private final HttpClient http;
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    public OpenAiClient(AiMetrics metrics, AiScheduler scheduler, @Qualifier("aiExecutor") ExecutorService executor) {
+        this.metrics = metrics;
+        this.scheduler = scheduler;
+        this.executor = executor;
+        this.http = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(10))
+                .executor(executor)
+                .build();
+    }
+
+    @PostConstruct
+    public void init() {
+        if (apiKey == null || apiKey.isEmpty()) {
+            if ("openai".equals(embeddingProvider)) {
+                throw new IllegalStateException("OpenAI API key is not configured!");
+            }
+            // local embeddings: search works offline, only generated answers need the key
+            log.warn("OpenAI API key is not configured; answers and chat calls will fail");
+        }
+    }
+
+    /**
+     * POSTs an already-serialized JSON body. The future completes with the parsed
+     * response, or exceptionally with IllegalStateException once all attempts failed.
+     * The whole call (including retries) is timed as "{operation}.call" and added to
+     * {@code spans}, the submitting request's breakdown (null = none). They are passed in
+     * because the call may be started on a thread serving another request.
+     */
+    public CompletableFuture<JsonNode> postAsync(String operation, String url, String model, String jsonBody,
+                                                 RequestSpans spans) {
+        long start = System.nanoTime();
+
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url))
+                .timeout(Duration.ofMillis(timeoutMs))
+                .header("Authorization", "Bearer " + apiKey)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(jsonBody))
+                .build();
+
+        CompletableFuture<JsonNode> result = new CompletableFuture<>();
+        attempt(operation, model, request, 1, result);
+        result.whenComplete((json, e) -> metrics.record(operation + ".call", System.nanoTime() - start, spans));
+        return result;
+    }
+
+    private void attempt(String operation, String model, HttpRequest request, int attempt,
+                         CompletableFuture<JsonNode> result) {
+        int attempts = Math.max(1, maxAttempts);
+        http.sendAsync(request, HttpResponse.BodyHandlers.ofString()).whenComplete((response, error) -> {
+            if (error != null) {
+                if (attempt < attempts) {
+                    log.warn("OpenAI {} I/O error (attempt {}/{}): {}", operation, attempt, attempts, error.getMessage());
+                    retryLater(operation, model, request, attempt, 0, result);
+                } else {
+                    fail(operation, result, "OpenAI " + operation + " failed: " + error.getMessage(), error);
+                }
+                return;
+            }
+
+            int status = response.statusCode();
+            long retryAfterMs = 0;
+            if (status == 429) {
+                retryAfterMs = retryAfterMs(response);
+                scheduler.pause(retryAfterMs);
+            }
+            if (status == 429 || status >= 500) {
+                if (attempt < attempts) {
+                    log.warn("OpenAI {} returned {} (attempt {}/{}), retrying", operation, status, attempt, attempts);
+                    retryLater(operation, model, request, attempt, retryAfterMs, result);
+                } else {
+                    fail(operation, result, "OpenAI " + operation + " failed: " + status + " " + response.body(), null);
+                }
+                return;
+            }
+            if (status >= 400 || response.body() == null) {
+                fail(operation, result, "OpenAI " + operation + " failed: " + status + " " + response.body(), null);
+                return;
+            }
+
+            try {
+                JsonNode json = mapper.readTree(response.body());
+                metrics.tokens(operation, model, json.path("usage"));
+                result.complete(json);
+            } catch (Exception e) {
+                fail(operation, result, "OpenAI " + operation + " returned invalid JSON: " + e.getMessage(), e);
+            }
+        });
+    }
+
+    private void retryLater(String operation, String model, HttpRequest request, int attempt, long minDelayMs,
+                            CompletableFuture<JsonNode> result) {
+        metrics.retry(operation);
+        long delay = Math.max(minDelayMs, backoffMs * (1L << (attempt - 1)));
+        CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS, executor)
+                .execute(() -> attempt(operation, model, request, attempt + 1, result));
+    }
+
+    /** Server-suggested wait of a 429 ("retry-after-ms" or "retry-after" seconds), else the base backoff. */
+    private long retryAfterMs(HttpResponse<String> response) {
+        try {
+            Optional<String> ms = response.headers().firstValue("retry-after-ms");
+            if (ms.isPresent()) {
+                return Math.max(0, (long) Double.parseDouble(ms.get().trim()));
+            }
+            Optional<String> seconds = response.headers().firstValue("retry-after");
+            if (seconds.isPresent()) {
+                return Math.max(0, (long) (Double.parseDouble(seconds.get().trim()) * 1000));
+            }
+        } catch (NumberFormatException e) {
+            // HTTP-date form or garbage: fall back to the backoff
+        }
+        return backoffMs;
+    }
+
+    private void fail(String operation, CompletableFuture<JsonNode> result, String message, Throwable cause) {
+        metrics.failure(operation);
+        result.completeExceptionally(new IllegalStateException(message, cause));
+    }
+}
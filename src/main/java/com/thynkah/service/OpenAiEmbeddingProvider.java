@@ -0,0 +1,107 @@
+package com.thynkah.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/** Embeddings from the OpenAI API, through {@link AiGateway} (the default provider). */
+@Service
+@ConditionalOnProperty(name = "thynkah.embedding.provider", havingValue = "openai", matchIfMissing = true)
+public class OpenAiEmbeddingProvider implements EmbeddingProvider {
+
+  private static final Logger log = LoggerFactory.getLogger(OpenAiEmbeddingProvider.class);
+
+  public static final String MODEL = "text-embedding-3-small";
+
+  private final AiGateway gateway;
+  private final AiMetrics metrics;
+  private final String EMBEDDING_URL = "https://api.openai.com/v1/embeddings";
+
+  public OpenAiEmbeddingProvider(AiGateway gateway, AiMetrics metrics) {
+    this.gateway = gateway;
+    this.metrics = metrics;
+  }
+
+  @Override
+  public String model() {
+    return MODEL;
+  }
+
+  @Override
+  public CompletableFuture<float[]> embedAsync(String text, AiScheduler.Priority priority) {
+    Map<String, Object> requestBody = new HashMap<>();
+    requestBody.put("input", text);
+    requestBody.put("model", MODEL);
+
+    return gateway.call("embedding", EMBEDDING_URL, requestBody, priority)
+        .thenApply(json -> {
+          JsonNode data = json.path("data");
+
+          if (!data.isArray() || data.isEmpty()) {
+            log.warn("Invalid embedding response: {}", json);
+            metrics.emptyEmbedding();
+            return new float[0];
+          }
+
+          return toVector(data.get(0).get("embedding"));
+        })
+        .exceptionally(e -> {
+          Throwable cause = (e instanceof CompletionException && e.getCause() != null) ? e.getCause() : e;
+          if (cause instanceof AiOverloadedException) {
+            throw (AiOverloadedException) cause;
+          }
+          log.error("Embedding call failed", e);
+          metrics.emptyEmbedding();
+          return new float[0];
+        });
+  }
+
+  /**
+   * Embeds several texts in one API call (OpenAI accepts an array input).
+   * Results are in input order; a failed (or shed) call yields empty vectors.
+   * Always background priority: batches come from note / passage indexing.
+   */
+  @Override
+  public List<float[]> embedAll(List<String> texts) {
+    List<float[]> out = new ArrayList<>();
+    for (int i = 0; i < texts.size(); i++) {
+      out.add(new float[0]);
+    }
+    if (texts.isEmpty()) {
+      return out;
+    }
+    try {
+      Map<String, Object> requestBody = new HashMap<>();
+      requestBody.put("input", texts);
+      requestBody.put("model", MODEL);
+
+      JsonNode data = gateway.call("embedding", EMBEDDING_URL, requestBody, AiScheduler.Priority.BACKGROUND).join().path("data");
+      for (JsonNode item : data) {
+        int index = item.path("index").asInt(-1);
+        JsonNode embeddingArray = item.path("embedding");
+        if (index < 0 || index >= texts.size() || !embeddingArray.isArray()) continue;
+        out.set(index, toVector(embeddingArray));
+      }
+    } catch (Exception e) {
+      log.error("Batch embedding call failed", e);
+    }
+    for (float[] v : out) {
+      if (v.length == 0) metrics.emptyEmbedding();
+    }
+    return out;
+  }
+
+  private static float[] toVector(JsonNode embeddingArray) {
+    float[] embedding = new float[embeddingArray.size()];
+    for (int i = 0; i < embeddingArray.size(); i++) {
+      embedding[i] = (float) embeddingArray.get(i).asDouble();
+    }
+    return embedding;
+  }
+}
@@ -0,0 +1,32 @@
+package com.thynkah.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.security.Principal;
+
+/**
+ * Resolves whose notes the current request works on: the authenticated principal
+ * when there is one, otherwise thynkah.default-owner (single-user installs).
+ * Must be called on the request thread, before any async hand-off.
+ */
+@Component
+public class OwnerContext {
+
+    @Value("${thynkah.default-owner:local}")
+    private String defaultOwner;
+
+    public String current() {
+        RequestAttributes attrs = RequestContextHolder.getRequestAttributes();
+        if (attrs instanceof ServletRequestAttributes) {
+            Principal principal = ((ServletRequestAttributes) attrs).getRequest().getUserPrincipal();
+            if (principal != null && principal.getName() != null && !principal.getName().isBlank()) {
+                return principal.getName();
+            }
+        }
+        return defaultOwner;
+    }
+}
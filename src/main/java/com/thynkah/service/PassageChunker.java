@@ -0,0 +1,122 @@
+package com.thynkah.service;
+
+import java.text.BreakIterator;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Splits long note text into overlapping passages on sentence boundaries.
+ * Passages prefer to end at paragraph breaks, so an edit in one paragraph
+ * usually leaves the passages of the other paragraphs byte-identical.
+ */
+public final class PassageChunker {
+
+    private PassageChunker() {
+    }
+
+    /** A passage as [start, end) offsets into the note text. */
+    public static class Chunk {
+        public final int start;
+        public final int end;
+        public final String text;
+
+        Chunk(int start, int end, String text) {
+            this.start = start;
+            this.end = end;
+            this.text = text;
+        }
+    }
+
+    private static class Span {
+        final int start;
+        final int end;
+        final int tokens;
+        final boolean paragraphEnd;
+
+        Span(int start, int end, int tokens, boolean paragraphEnd) {
+            this.start = start;
+            this.end = end;
+            this.tokens = tokens;
+            this.paragraphEnd = paragraphEnd;
+        }
+    }
+
+    public static List<Chunk> chunk(String text, int targetTokens, int overlapTokens) {
+        List<Chunk> out = new ArrayList<>();
+        List<Span> spans = sentences(text, targetTokens);
+        int i = 0;
+        while (i < spans.size()) {
+            int tokens = 0;
+            int j = i;
+            while (j < spans.size() && (j == i || tokens + spans.get(j).tokens <= targetTokens)) {
+                tokens += spans.get(j).tokens;
+                j++;
+                // close early on a paragraph break once the passage is reasonably full
+                if (spans.get(j - 1).paragraphEnd && tokens >= targetTokens * 3 / 5) {
+                    break;
+                }
+            }
+
+            int start = spans.get(i).start;
+            int end = spans.get(j - 1).end;
+            out.add(new Chunk(start, end, text.substring(start, end)));
+            if (j >= spans.size()) {
+                break;
+            }
+
+            // next passage re-reads the last sentences of this one (overlap), unless
+            // this one ended on a paragraph break
+            int next = j;
+            if (!spans.get(j - 1).paragraphEnd) {
+                int overlap = 0;
+                while (next - 1 > i && overlap + spans.get(next - 1).tokens <= overlapTokens) {
+                    next--;
+                    overlap += spans.get(next).tokens;
+                }
+            }
+            i = next;
+        }
+        return out;
+    }
+
+    /** Sentence spans (trimmed); sentences longer than maxTokens are cut at word boundaries. */
+    private static List<Span> sentences(String text, int maxTokens) {
+        List<Span> spans = new ArrayList<>();
+        BreakIterator it = BreakIterator.getSentenceInstance(Locale.ROOT);
+        it.setText(text);
+        int start = it.first();
+        for (int end = it.next(); end != BreakIterator.DONE; start = end, end = it.next()) {
+            int s = start, e = end;
+            while (s < e && Character.isWhitespace(text.charAt(s))) s++;
+            while (e > s && Character.isWhitespace(text.charAt(e - 1))) e--;
+            if (s == e) continue;
+
+            boolean paragraphEnd = text.substring(e, end).chars().filter(c -> c == '\n').count() >= 2
+                    || end == text.length();
+            splitLong(text, s, e, maxTokens, paragraphEnd, spans);
+        }
+        return spans;
+    }
+
+    private static void splitLong(String text, int start, int end, int maxTokens, boolean paragraphEnd, List<Span> out) {
+        int tokens = TokenEstimator.estimate(text.substring(start, end));
+        if (tokens <= maxTokens) {
+            out.add(new Span(start, end, tokens, paragraphEnd));
+            return;
+        }
+        int maxChars = Math.max(16, maxTokens * 3);
+        int s = start;
+        while (s < end) {
+            int e = Math.min(end, s + maxChars);
+            if (e < end) {
+                int space = text.lastIndexOf(' ', e);
+                if (space > s) e = space;
+            }
+            String piece = text.substring(s, e);
+            out.add(new Span(s, e, TokenEstimator.estimate(piece), paragraphEnd && e == end));
+            s = e;
+            while (s < end && Character.isWhitespace(text.charAt(s))) s++;
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.thynkah.service;
+
+import com.thynkah.model.Note;
+import com.thynkah.model.NotePassage;
+import com.thynkah.repository.NotePassageRepository;
+import com.thynkah.repository.PassageVector;
+import com.thynkah.util.Hashing;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps passage-level embeddings for long notes in note_passages.
+ * Short notes have no passages and are scored by their note embedding only.
+ */
+@Service
+public class PassageService {
+
+    @Value("${thynkah.passages.min-note-tokens:400}")
+    private int minNoteTokens;
+
+    @Value("${thynkah.passages.size-tokens:200}")
+    private int sizeTokens;
+
+    @Value("${thynkah.passages.overlap-tokens:40}")
+    private int overlapTokens;
+
+    private final NotePassageRepository repo;
+    private final EmbeddingStore embeddingStore;
+    private final AiMetrics metrics;
+
+    public PassageService(NotePassageRepository repo, EmbeddingStore embeddingStore, AiMetrics metrics) {
+        this.repo = repo;
+        this.embeddingStore = embeddingStore;
+        this.metrics = metrics;
+    }
+
+    /**
+     * A note's passages after re-chunking, embedded but not yet written. Built outside
+     * any transaction by {@link #prepare}, then applied by {@link #write}.
+     */
+    public static class Prepared {
+        private final List<NotePassage> keep;
+        private final List<NotePassage> stale;
+
+        Prepared(List<NotePassage> keep, List<NotePassage> stale) {
+            this.keep = keep;
+            this.stale = stale;
+        }
+    }
+
+    /**
+     * Re-chunks a note's text and embeds the passages that need it. Passages whose text
+     * did not change keep their embedding (unless {@code reuse} is false, e.g. after an
+     * embedding model switch), so editing one paragraph only re-embeds the passages it
+     * touches. Reads but writes nothing; {@code noteId} is null for a note not saved yet.
+     */
+    public Prepared prepare(Long noteId, String text, boolean reuse) {
+        List<NotePassage> existing = noteId == null
+                ? Collections.emptyList()
+                : repo.findByNoteIdOrderByOrdinalAsc(noteId);
+        if (text == null || TokenEstimator.estimate(text) < minNoteTokens) {
+            return new Prepared(Collections.emptyList(), existing);
+        }
+
+        Map<String, Deque<NotePassage>> byHash = new HashMap<>();
+        if (reuse) {
+            for (NotePassage p : existing) {
+                byHash.computeIfAbsent(p.getTextHash(), k -> new ArrayDeque<>()).add(p);
+            }
+        }
+
+        List<PassageChunker.Chunk> chunks = PassageChunker.chunk(text, sizeTokens, overlapTokens);
+        List<NotePassage> keep = new ArrayList<>();
+        List<NotePassage> toEmbed = new ArrayList<>();
+        for (int i = 0; i < chunks.size(); i++) {
+            PassageChunker.Chunk chunk = chunks.get(i);
+            String hash = Hashing.sha256Hex(chunk.text);
+            Deque<NotePassage> same = byHash.get(hash);
+            NotePassage p = (same == null || same.isEmpty()) ? null : same.poll();
+            if (p == null) {
+                p = new NotePassage();
+                p.setNoteId(noteId);
+                p.setTextHash(hash);
+                p.setText(chunk.text);
+            }
+            if (p.getEmbedding() == null || p.getEmbedding().isBlank()) {
+                toEmbed.add(p);
+            }
+            p.setOrdinal(i);
+            p.setStartOffset(chunk.start);
+            p.setEndOffset(chunk.end);
+            keep.add(p);
+        }
+
+        Set<NotePassage> kept = Collections.newSetFromMap(new IdentityHashMap<>());
+        kept.addAll(keep);
+        List<NotePassage> stale = existing.stream()
+                .filter(p -> !kept.contains(p))
+                .collect(Collectors.toList());
+
+        if (!toEmbed.isEmpty()) {
+            List<float[]> vectors = embeddingStore.embedAll(
+                    toEmbed.stream().map(NotePassage::getText).collect(Collectors.toList()));
+            for (int i = 0; i < toEmbed.size(); i++) {
+                float[] v = vectors.get(i);
+                // left empty on failure; the next edit retries it
+                toEmbed.get(i).setEmbedding(v.length == 0 ? null : Arrays.toString(v));
+            }
+        }
+        metrics.registry().counter("thynkah.passages.embedded").increment(toEmbed.size());
+        metrics.registry().counter("thynkah.passages.reused").increment(keep.size() - toEmbed.size());
+
+        return new Prepared(keep, stale);
+    }
+
+    /**
+     * Replaces a saved note's passages with prepared ones. Returns the note's passages
+     * (empty for short notes).
+     */
+    public List<NotePassage> write(Note note, Prepared prepared) {
+        if (!prepared.stale.isEmpty()) {
+            repo.deleteAll(prepared.stale);
+        }
+        if (prepared.keep.isEmpty()) {
+            return Collections.emptyList();
+        }
+        for (NotePassage p : prepared.keep) {
+            p.setNoteId(note.getId());
+        }
+        return repo.saveAll(prepared.keep);
+    }
+
+    /** A note's current passages in order. */
+    public List<NotePassage> forNote(Long noteId) {
+        return repo.findByNoteIdOrderByOrdinalAsc(noteId);
+    }
+
+    public void delete(Long noteId) {
+        repo.deleteByNoteId(noteId);
+    }
+
+    /** Embedded passages of an owner's notes (spans + vectors, no text), in note order. */
+    public List<PassageVector> loadVectors(String owner) {
+        return metrics.time("db.load", () -> repo.findVectorsByOwner(owner));
+    }
+
+    /** Embedded passages of the given notes (spans + vectors, no text), in note order. */
+    public List<PassageVector> loadVectors(Collection<Long> noteIds) {
+        if (noteIds.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return repo.findVectorsByNoteIdIn(noteIds);
+    }
+}
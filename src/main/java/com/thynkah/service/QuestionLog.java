@@ -0,0 +1,140 @@
+package com.thynkah.service;
+
+import com.thynkah.model.Prompt;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Write-behind log of the questions asked on the /ask family of endpoints: question,
+ * owner, latency breakdown (embedding / retrieval / chat) and the notes retrieved.
+ * Requests only append to a bounded in-memory buffer; a scheduled flush writes it to
+ * prompts (kind ASKED) in JDBC batches. When the buffer is full entries are dropped
+ * (thynkah.question_log.dropped) rather than slowing requests down.
+ */
+@Service
+public class QuestionLog {
+
+    private static final Logger log = LoggerFactory.getLogger(QuestionLog.class);
+
+    private static final String INSERT = "INSERT INTO prompts"
+            + " (kind, owner_id, endpoint, prompt, created_at, createdat, total_ms, embed_ms, retrieval_ms, chat_ms, note_ids)"
+            + " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final int MAX_NOTE_IDS_CHARS = 1024;
+
+    private final JdbcTemplate jdbc;
+    private final OwnerContext owners;
+    private final AiMetrics metrics;
+    private final boolean enabled;
+    private final int batchSize;
+    private final BlockingQueue<Object[]> buffer;
+    private final Counter dropped;
+
+    public QuestionLog(JdbcTemplate jdbc,
+                       OwnerContext owners,
+                       AiMetrics metrics,
+                       @Value("${thynkah.question-log.enabled:true}") boolean enabled,
+                       @Value("${thynkah.question-log.buffer-size:10000}") int bufferSize,
+                       @Value("${thynkah.question-log.batch-size:500}") int batchSize) {
+        this.jdbc = jdbc;
+        this.owners = owners;
+        this.metrics = metrics;
+        this.enabled = enabled;
+        this.batchSize = Math.max(1, batchSize);
+        this.buffer = new ArrayBlockingQueue<>(Math.max(1, bufferSize));
+        this.dropped = metrics.registry().counter("thynkah.question_log.dropped");
+        Gauge.builder("thynkah.question_log.pending", buffer, BlockingQueue::size)
+                .description("Logged questions waiting to be written")
+                .register(metrics.registry());
+    }
+
+    /**
+     * Starts timing a question. Call on the request thread, before any work is done,
+     * then pass the endpoint's result through {@link Entry#track}.
+     */
+    public Entry start(String endpoint, String question) {
+        return new Entry(endpoint, question, owners.current(), RequestSpans.current());
+    }
+
+    public final class Entry {
+        private final String endpoint;
+        private final String question;
+        private final String owner;
+        private final RequestSpans spans;
+        private final LocalDateTime createdAt = LocalDateTime.now();
+        private final long startNanos = System.nanoTime();
+
+        private Entry(String endpoint, String question, String owner, RequestSpans spans) {
+            this.endpoint = endpoint;
+            this.question = question == null ? "" : question;
+            this.owner = owner;
+            this.spans = spans;
+        }
+
+        /** Logs the entry when {@code result} completes (successfully or not); returns {@code result}. */
+        public <T> CompletableFuture<T> track(CompletableFuture<T> result) {
+            if (enabled) {
+                result.whenComplete((r, e) -> finish());
+            }
+            return result;
+        }
+
+        private void finish() {
+            long totalMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+            Integer embedMs = null, retrievalMs = null, chatMs = null;
+            String noteIds = null;
+            if (spans != null) {
+                embedMs = (int) spans.millis("embedding.call", "embedding.local");
+                retrievalMs = (int) spans.millis("retrieval.scoring", "retrieval.rerank", "db.load");
+                chatMs = (int) spans.millis("chat.call");
+                noteIds = spans.noteIds().stream().map(String::valueOf).collect(Collectors.joining(","));
+                if (noteIds.length() > MAX_NOTE_IDS_CHARS) {
+                    noteIds = noteIds.substring(0, noteIds.lastIndexOf(',', MAX_NOTE_IDS_CHARS));
+                }
+            }
+            Object[] row = {Prompt.ASKED, owner, endpoint, question, Timestamp.valueOf(createdAt), createdAt.toString(),
+                    (int) Math.min(Integer.MAX_VALUE, totalMs), embedMs, retrievalMs, chatMs, noteIds};
+            if (!buffer.offer(row)) {
+                dropped.increment();
+            }
+        }
+    }
+
+    /* ---------- Flushing ---------- */
+
+    @Scheduled(fixedDelayString = "${thynkah.question-log.flush-ms:1000}")
+    public void flush() {
+        List<Object[]> batch = new ArrayList<>(batchSize);
+        while (buffer.drainTo(batch, batchSize) > 0) {
+            try {
+                metrics.time("question_log.flush", () -> jdbc.batchUpdate(INSERT, batch));
+            } catch (RuntimeException e) {
+                // the log is best-effort: a failed batch is dropped, requests are never held up
+                dropped.increment(batch.size());
+                log.warn("Could not write {} logged questions: {}", batch.size(), e.getMessage());
+            }
+            batch.clear();
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        flush();
+    }
+}
@@ -0,0 +1,121 @@
+package com.thynkah.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Per-request breakdown of where time went (embedding, chat, db load, ...).
+ * Bound to the request thread by {@link com.thynkah.config.SlowRequestLogFilter}
+ * and filled in by {@link AiMetrics} whenever a pipeline stage is timed. Also
+ * collects the notes an answer was built from, for {@link QuestionLog}.
+ */
+public final class RequestSpans {
+
+    private static final ThreadLocal<RequestSpans> CURRENT = new ThreadLocal<>();
+
+    // stage -> {total nanos, count}
+    private final Map<String, long[]> spans = new LinkedHashMap<>();
+    private final Set<Long> noteIds = new LinkedHashSet<>();
+
+    public static RequestSpans begin() {
+        RequestSpans spans = new RequestSpans();
+        CURRENT.set(spans);
+        return spans;
+    }
+
+    public static RequestSpans current() {
+        return CURRENT.get();
+    }
+
+    public static void end() {
+        CURRENT.remove();
+    }
+
+    /** Adds time to the current request's breakdown; no-op outside a request. */
+    public static void add(String stage, long nanos) {
+        RequestSpans spans = CURRENT.get();
+        if (spans != null) {
+            spans.record(stage, nanos);
+        }
+    }
+
+    /** Records notes the current request retrieved for its answer; no-op outside a request. */
+    public static void used(Collection<Long> ids) {
+        RequestSpans spans = CURRENT.get();
+        if (spans != null) {
+            synchronized (spans) {
+                spans.noteIds.addAll(ids);
+            }
+        }
+    }
+
+    /**
+     * Binds the calling request's spans to {@code fn} so stages timed inside it
+     * are still attributed to the request when it runs on a worker thread.
+     */
+    public static <T, R> Function<T, R> wrap(Function<T, R> fn) {
+        RequestSpans spans = CURRENT.get();
+        if (spans == null) {
+            return fn;
+        }
+        return t -> {
+            RequestSpans previous = CURRENT.get();
+            CURRENT.set(spans);
+            try {
+                return fn.apply(t);
+            } finally {
+                if (previous == null) {
+                    CURRENT.remove();
+                } else {
+                    CURRENT.set(previous);
+                }
+            }
+        };
+    }
+
+    public synchronized void record(String stage, long nanos) {
+        long[] slot = spans.computeIfAbsent(stage, k -> new long[2]);
+        slot[0] += nanos;
+        slot[1]++;
+    }
+
+    /** Total milliseconds spent in the given stages. */
+    public synchronized long millis(String... stages) {
+        long nanos = 0;
+        for (String stage : stages) {
+            long[] slot = spans.get(stage);
+            if (slot != null) {
+                nanos += slot[0];
+            }
+        }
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    public synchronized List<Long> noteIds() {
+        return new ArrayList<>(noteIds);
+    }
+
+    /** e.g. "embedding.call=412ms, db.load=38ms, chat.call=2103ms" */
+    public synchronized String summary() {
+        if (spans.isEmpty()) {
+            return "(no instrumented stages)";
+        }
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, long[]> e : spans.entrySet()) {
+            if (sb.length() > 0) sb.append(", ");
+            sb.append(e.getKey()).append('=')
+              .append(TimeUnit.NANOSECONDS.toMillis(e.getValue()[0])).append("ms");
+            if (e.getValue()[1] > 1) {
+                sb.append(" (x").append(e.getValue()[1]).append(')');
+            }
+        }
+        return sb.toString();
+    }
+}
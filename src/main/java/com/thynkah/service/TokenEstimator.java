@@ -0,0 +1,35 @@
+package com.thynkah.service;
+
+/**
+ * Cheap local token estimate for prompt budgeting (no tokenizer download, no API call).
+ * Roughly matches cl100k-style tokenizers on English text: ~4 characters per token,
+ * every punctuation mark and non-ASCII character counted as its own token.
+ * It errs on the high side so budgets stay under the real limit.
+ */
+public final class TokenEstimator {
+
+    private TokenEstimator() {
+    }
+
+    public static int estimate(String text) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+        int tokens = 0;
+        int wordChars = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 128 && Character.isLetterOrDigit(c)) {
+                wordChars++;
+                continue;
+            }
+            tokens += (wordChars + 3) / 4;
+            wordChars = 0;
+            if (!Character.isWhitespace(c)) {
+                tokens++;
+            }
+        }
+        tokens += (wordChars + 3) / 4;
+        return tokens;
+    }
+}
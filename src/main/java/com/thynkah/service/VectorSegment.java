@@ -0,0 +1,282 @@
+package com.thynkah.service;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * On-disk snapshot of one owner's shard, opened with memory mapping so the
+ * vectors stay off-heap and nothing has to be parsed at startup.
+ * <pre>
+ * header (32 bytes, little-endian):
+ *   int magic, int version, int dims, int count, long crc32 (of everything after the header),
+ *   int graphBytes, int reserved
+ * body:
+ *   owner (short length + UTF-8), graph (graphBytes, optional neighbour graph), count entries
+ * entry:
+ *   long noteId, long createdAt epoch second (Long.MIN_VALUE = null), int nanos,
+ *   model (short length + UTF-8, -1 = null), int dims + floats,
+ *   int passages, each: int start, int end, int dims + floats
+ * </pre>
+ * The entry encoding is shared with {@link VectorWal}.
+ */
+public final class VectorSegment {
+
+    static final int MAGIC = 0x54484B56; // "THKV"
+    static final int VERSION = 1;
+    private static final int HEADER_BYTES = 32;
+
+    private final String owner;
+    private final int dims;
+    private final List<VectorShard.Entry> entries;
+    private final ByteBuffer graph;
+    private final long mappedBytes;
+
+    private VectorSegment(String owner, int dims, List<VectorShard.Entry> entries, ByteBuffer graph, long mappedBytes) {
+        this.owner = owner;
+        this.dims = dims;
+        this.entries = entries;
+        this.graph = graph;
+        this.mappedBytes = mappedBytes;
+    }
+
+    public String owner() { return owner; }
+    public int dims() { return dims; }
+    public List<VectorShard.Entry> entries() { return entries; }
+    public ByteBuffer graph() { return graph.duplicate().order(ByteOrder.LITTLE_ENDIAN); }
+    public long mappedBytes() { return mappedBytes; }
+
+    /* ---------- Write ---------- */
+
+    /**
+     * Writes a segment next to {@code file} and atomically moves it into place.
+     * {@code dims} is the prefix length the vectors were cut to (0 = full vectors).
+     */
+    public static void write(Path file, String owner, int dims, Collection<VectorShard.Entry> entries,
+                             ByteBuffer graph) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        ByteBuffer graphBytes = graph == null ? ByteBuffer.allocate(0) : graph.duplicate();
+        CRC32 crc = new CRC32();
+        int count = 0;
+
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ch.position(HEADER_BYTES);
+
+            byte[] ownerBytes = owner.getBytes(StandardCharsets.UTF_8);
+            ByteBuffer head = ByteBuffer.allocate(2 + ownerBytes.length).order(ByteOrder.LITTLE_ENDIAN);
+            head.putShort((short) ownerBytes.length).put(ownerBytes).flip();
+            writeFully(ch, head, crc);
+            writeFully(ch, graphBytes.duplicate(), crc);
+
+            ByteBuffer buf = ByteBuffer.allocate(64 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+            for (VectorShard.Entry e : entries) {
+                int size = size(e);
+                if (buf.capacity() < size) {
+                    buf = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+                }
+                buf.clear();
+                put(buf, e);
+                buf.flip();
+                writeFully(ch, buf, crc);
+                count++;
+            }
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putInt(dims).putInt(count)
+                    .putLong(crc.getValue()).putInt(graphBytes.remaining()).putInt(0).flip();
+            ch.position(0);
+            while (header.hasRemaining()) {
+                ch.write(header);
+            }
+            ch.force(true);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void writeFully(FileChannel ch, ByteBuffer buf, CRC32 crc) throws IOException {
+        crc.update(buf.duplicate());
+        while (buf.hasRemaining()) {
+            ch.write(buf);
+        }
+    }
+
+    /* ---------- Open ---------- */
+
+    /**
+     * Maps a segment and checks magic, version and checksum.
+     * Entry vectors are views into the mapping, not copies.
+     */
+    public static VectorSegment open(Path file) throws IOException {
+        MappedByteBuffer map;
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (ch.size() < HEADER_BYTES) {
+                throw new IOException("Segment too short: " + file);
+            }
+            map = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        }
+        ByteBuffer buf = map.order(ByteOrder.LITTLE_ENDIAN);
+
+        if (buf.getInt() != MAGIC) {
+            throw new IOException("Not a vector segment: " + file);
+        }
+        int version = buf.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported segment version " + version + ": " + file);
+        }
+        int dims = buf.getInt();
+        int count = buf.getInt();
+        long expectedCrc = buf.getLong();
+        int graphBytes = buf.getInt();
+        buf.getInt(); // reserved
+
+        CRC32 crc = new CRC32();
+        crc.update(buf.duplicate().position(HEADER_BYTES));
+        if (crc.getValue() != expectedCrc) {
+            throw new IOException("Segment checksum mismatch: " + file);
+        }
+
+        try {
+            String owner = getString(buf);
+            ByteBuffer graph = slice(buf, graphBytes);
+            List<VectorShard.Entry> entries = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                entries.add(get(buf));
+            }
+            return new VectorSegment(owner, dims, entries, graph, map.capacity());
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException("Corrupt segment: " + file, e);
+        }
+    }
+
+    /** Reads just the owner from a segment header (no mapping, no checksum). */
+    public static String readOwner(Path file) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buf = ByteBuffer.allocate(HEADER_BYTES + 2 + Short.MAX_VALUE).order(ByteOrder.LITTLE_ENDIAN);
+            while (buf.hasRemaining() && ch.read(buf) > 0) {
+                // fill
+            }
+            buf.flip();
+            if (buf.remaining() < HEADER_BYTES + 2 || buf.getInt(0) != MAGIC) {
+                throw new IOException("Not a vector segment: " + file);
+            }
+            buf.position(HEADER_BYTES);
+            return getString(buf);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Corrupt segment: " + file, e);
+        }
+    }
+
+    /* ---------- Entry codec (shared with VectorWal) ---------- */
+
+    static int size(VectorShard.Entry e) {
+        int size = 8 + 8 + 4 + 2 + utf8Length(e.getModel()) + 4 + 4 * e.vector.limit() + 4;
+        for (VectorShard.Passage p : e.getPassages()) {
+            size += 4 + 4 + 4 + 4 * p.vector.limit();
+        }
+        return size;
+    }
+
+    static void put(ByteBuffer buf, VectorShard.Entry e) {
+        buf.putLong(e.getNoteId());
+        LocalDateTime createdAt = e.getCreatedAt();
+        buf.putLong(createdAt == null ? Long.MIN_VALUE : createdAt.toEpochSecond(ZoneOffset.UTC));
+        buf.putInt(createdAt == null ? 0 : createdAt.getNano());
+        putString(buf, e.getModel());
+        putFloats(buf, e.vector);
+        buf.putInt(e.getPassages().size());
+        for (VectorShard.Passage p : e.getPassages()) {
+            buf.putInt(p.getStart());
+            buf.putInt(p.getEnd());
+            putFloats(buf, p.vector);
+        }
+    }
+
+    /** Decodes one entry; its vectors are views into {@code buf}. */
+    static VectorShard.Entry get(ByteBuffer buf) {
+        long noteId = buf.getLong();
+        long epochSecond = buf.getLong();
+        int nanos = buf.getInt();
+        LocalDateTime createdAt = epochSecond == Long.MIN_VALUE
+                ? null
+                : LocalDateTime.ofEpochSecond(epochSecond, nanos, ZoneOffset.UTC);
+        String model = getString(buf);
+        FloatBuffer vector = getFloats(buf);
+        int passageCount = buf.getInt();
+        if (passageCount < 0) {
+            throw new IllegalArgumentException("negative passage count");
+        }
+        List<VectorShard.Passage> passages = passageCount == 0 ? Collections.emptyList() : new ArrayList<>(passageCount);
+        for (int i = 0; i < passageCount; i++) {
+            int start = buf.getInt();
+            int end = buf.getInt();
+            passages.add(new VectorShard.Passage(start, end, getFloats(buf)));
+        }
+        return new VectorShard.Entry(noteId, createdAt, model, vector, passages);
+    }
+
+    private static void putFloats(ByteBuffer buf, FloatBuffer v) {
+        int n = v.limit();
+        buf.putInt(n);
+        for (int i = 0; i < n; i++) {
+            buf.putFloat(v.get(i));
+        }
+    }
+
+    private static FloatBuffer getFloats(ByteBuffer buf) {
+        int n = buf.getInt();
+        if (n < 0) {
+            throw new IllegalArgumentException("negative vector length");
+        }
+        return slice(buf, 4 * n).asFloatBuffer();
+    }
+
+    private static ByteBuffer slice(ByteBuffer buf, int bytes) {
+        if (bytes < 0 || bytes > buf.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        ByteBuffer out = buf.slice().limit(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        buf.position(buf.position() + bytes);
+        return out;
+    }
+
+    private static void putString(ByteBuffer buf, String s) {
+        if (s == null) {
+            buf.putShort((short) -1);
+            return;
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        buf.putShort((short) bytes.length);
+        buf.put(bytes);
+    }
+
+    private static String getString(ByteBuffer buf) {
+        short len = buf.getShort();
+        if (len < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[len];
+        buf.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int utf8Length(String s) {
+        return s == null ? 0 : s.getBytes(StandardCharsets.UTF_8).length;
+    }
+}
@@ -0,0 +1,238 @@
+package com.thynkah.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.nio.FloatBuffer;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One owner's resident search data: a vector per note plus passage vectors for long
+ * notes. No note text is kept; text is fetched only for the notes that win retrieval.
+ * Vectors may be renormalized prefixes of the stored embeddings (thynkah.embedding.prefix-dims),
+ * in which case the winners are re-ranked with full vectors.
+ * Vectors are FloatBuffers: heap-backed when built from the database, or views of a
+ * memory-mapped {@link VectorSegment} (off-heap) when the shard was opened from disk.
+ * Readers may scan while mutations are applied (the entry map is concurrent).
+ */
+public class VectorShard {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    // rough per-object overheads used for the memory budget
+    private static final int ENTRY_OVERHEAD = 96;
+    private static final int PASSAGE_OVERHEAD = 56;
+
+    /** A note's vector; {@code vector} is empty when the note has no usable embedding. */
+    public static final class Entry {
+        final long noteId;
+        final LocalDateTime createdAt;
+        final String model;
+        final FloatBuffer vector;
+        final double norm;
+        final List<Passage> passages;
+
+        public Entry(long noteId, LocalDateTime createdAt, String model, float[] vector, List<Passage> passages) {
+            this(noteId, createdAt, model, FloatBuffer.wrap(vector), passages);
+        }
+
+        public Entry(long noteId, LocalDateTime createdAt, String model, FloatBuffer vector, List<Passage> passages) {
+            this.noteId = noteId;
+            this.createdAt = createdAt;
+            this.model = model;
+            this.vector = vector;
+            this.norm = norm(vector, vector.limit());
+            this.passages = passages == null ? Collections.emptyList() : passages;
+        }
+
+        public long getNoteId() { return noteId; }
+        public LocalDateTime getCreatedAt() { return createdAt; }
+        public String getModel() { return model; }
+        public List<Passage> getPassages() { return passages; }
+        public FloatBuffer getVector() { return vector.duplicate(); }
+        public boolean hasVector() { return vector.limit() > 0; }
+
+        /** Vectors from another model are not comparable; rows without a model predate tracking. */
+        public boolean comparableWith(String queryModel) {
+            return model == null || model.equals(queryModel);
+        }
+
+        /** Estimated heap use; mapped (off-heap) vectors only count their object overhead. */
+        long bytes() {
+            long b = ENTRY_OVERHEAD + heapBytes(vector);
+            for (Passage p : passages) {
+                b += PASSAGE_OVERHEAD + heapBytes(p.vector);
+            }
+            return b;
+        }
+    }
+
+    /** A passage's span within its note's text, and its vector. */
+    public static final class Passage {
+        final int start;
+        final int end;
+        final FloatBuffer vector;
+        final double norm;
+
+        public Passage(int start, int end, float[] vector) {
+            this(start, end, FloatBuffer.wrap(vector));
+        }
+
+        public Passage(int start, int end, FloatBuffer vector) {
+            this.start = start;
+            this.end = end;
+            this.vector = vector;
+            this.norm = norm(vector, vector.limit());
+        }
+
+        public int getStart() { return start; }
+        public int getEnd() { return end; }
+        public FloatBuffer getVector() { return vector.duplicate(); }
+    }
+
+    private final String owner;
+    private final Map<Long, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong bytes = new AtomicLong();
+    private final long mappedBytes;
+
+    public VectorShard(String owner) {
+        this(owner, 0);
+    }
+
+    /** A shard whose initial entries live in a mapped segment of {@code mappedBytes}. */
+    public VectorShard(String owner, long mappedBytes) {
+        this.owner = owner;
+        this.mappedBytes = mappedBytes;
+    }
+
+    public String getOwner() {
+        return owner;
+    }
+
+    public void put(Entry entry) {
+        Entry old = entries.put(entry.noteId, entry);
+        bytes.addAndGet(entry.bytes() - (old == null ? 0 : old.bytes()));
+    }
+
+    public void remove(long noteId) {
+        Entry old = entries.remove(noteId);
+        if (old != null) {
+            bytes.addAndGet(-old.bytes());
+        }
+    }
+
+    /** The note's entry, or null when it is not in this shard. */
+    public Entry get(long noteId) {
+        return entries.get(noteId);
+    }
+
+    public Collection<Entry> entries() {
+        return entries.values();
+    }
+
+    /** Number of notes the owner has (with or without an embedding). */
+    public int size() {
+        return entries.size();
+    }
+
+    /** Estimated heap used by the vectors of this shard. */
+    public long bytes() {
+        return bytes.get();
+    }
+
+    /** Size of the memory-mapped segment backing this shard (0 when built from the database). */
+    public long mappedBytes() {
+        return mappedBytes;
+    }
+
+    /* ---------- Vector helpers ---------- */
+
+    /** Parses a stored "[0.1, 0.2, ...]" embedding; empty on null / invalid input. */
+    public static float[] parse(String json) {
+        if (json == null || json.isBlank()) {
+            return new float[0];
+        }
+        try {
+            return MAPPER.readValue(json, float[].class);
+        } catch (Exception e) {
+            return new float[0];
+        }
+    }
+
+    /**
+     * First {@code dims} components scaled back to unit length. text-embedding-3 vectors
+     * are trained so that such prefixes are usable embeddings on their own.
+     * Returns {@code v} itself when it is not longer than {@code dims} or dims is 0.
+     */
+    public static float[] prefix(float[] v, int dims) {
+        if (dims <= 0 || v.length <= dims) {
+            return v;
+        }
+        float[] out = Arrays.copyOf(v, dims);
+        double n = norm(FloatBuffer.wrap(out), dims);
+        if (n > 0) {
+            for (int i = 0; i < dims; i++) {
+                out[i] = (float) (out[i] / n);
+            }
+        }
+        return out;
+    }
+
+    private static double norm(FloatBuffer v, int len) {
+        double sum = 0.0;
+        for (int i = 0; i < len; i++) {
+            double x = v.get(i);
+            sum += x * x;
+        }
+        return Math.sqrt(sum);
+    }
+
+    private static long heapBytes(FloatBuffer v) {
+        return v.isDirect() ? 0 : 4L * v.limit();
+    }
+
+    /** A query vector that can be compared against prefixes of any length. */
+    public static final class Query {
+        final double[] v;
+        private final double[] sumSq; // sumSq[i] = sum of squares of v[0..i]
+
+        public Query(double[] v) {
+            this.v = v;
+            this.sumSq = new double[v.length];
+            double sum = 0.0;
+            for (int i = 0; i < v.length; i++) {
+                sum += v[i] * v[i];
+                sumSq[i] = sum;
+            }
+        }
+
+        double norm(int len) {
+            return len == 0 ? 0.0 : Math.sqrt(sumSq[len - 1]);
+        }
+    }
+
+    /**
+     * Cosine similarity over the common prefix of query and vector, so prefix
+     * vectors and full vectors of the same model can be mixed.
+     */
+    static double cosine(Query q, FloatBuffer v, double vNorm) {
+        int len = Math.min(q.v.length, v.limit());
+        if (len == 0) return 0.0;
+        double dot = 0.0;
+        for (int i = 0; i < len; i++) {
+            dot += q.v[i] * v.get(i);
+        }
+        if (v.limit() > len) {
+            vNorm = norm(v, len);
+        }
+        double qNorm = q.norm(len);
+        if (qNorm == 0 || vNorm == 0) return 0.0;
+        return dot / (qNorm * vNorm);
+    }
+}
@@ -0,0 +1,332 @@
+package com.thynkah.service;
+
+import com.thynkah.model.Note;
+import com.thynkah.model.NotePassage;
+import com.thynkah.repository.NoteRepository;
+import com.thynkah.repository.NoteVector;
+import com.thynkah.repository.PassageVector;
+import com.thynkah.util.LruCache;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-owner search shards. A shard is loaded from the database the first time its
+ * owner queries, kept up to date by note mutations while resident, and evicted
+ * (least recently used first) when all resident shards exceed
+ * thynkah.index.memory-budget-mb. Query cost scales with the owner's own corpus.
+ * With thynkah.embedding.prefix-dims set, shards hold short prefix vectors and
+ * {@link #fullVectors} supplies the full ones for re-ranking.
+ * When thynkah.index.segment-dir is set, shards are opened from memory-mapped
+ * snapshots instead ({@link VectorSnapshotStore}) and every change is logged to the
+ * snapshot's WAL, so a restart does not need to re-read and re-parse the embeddings.
+ */
+@Component
+public class VectorShardManager {
+
+    private static final Logger log = LoggerFactory.getLogger(VectorShardManager.class);
+
+    private final NoteRepository noteRepo;
+    private final PassageService passageService;
+    private final VectorSnapshotStore snapshots;
+    private final AiMetrics metrics;
+    private final long budgetBytes;
+    private final int prefixDims;
+
+    // access-ordered: iteration starts at the least recently used shard
+    private final LinkedHashMap<String, VectorShard> resident = new LinkedHashMap<>(16, 0.75f, true);
+    // one lock per owner so a shard is loaded once, and mutations never race a load
+    private final Map<String, Object> ownerLocks = new ConcurrentHashMap<>();
+
+    private final Counter loads;
+    private final Counter evictions;
+
+    // full-dimension vectors of recently re-ranked notes
+    private final LruCache<Long, VectorShard.Entry> fullCache;
+
+    public VectorShardManager(NoteRepository noteRepo,
+                              PassageService passageService,
+                              VectorSnapshotStore snapshots,
+                              AiMetrics metrics,
+                              @Value("${thynkah.index.memory-budget-mb:256}") long budgetMb,
+                              @Value("${thynkah.embedding.prefix-dims:0}") int prefixDims,
+                              @Value("${thynkah.retrieval.full-vector-cache-size:1000}") int fullCacheSize) {
+        this.noteRepo = noteRepo;
+        this.passageService = passageService;
+        this.snapshots = snapshots;
+        this.metrics = metrics;
+        this.budgetBytes = Math.max(1, budgetMb) * 1024 * 1024;
+        this.prefixDims = Math.max(0, prefixDims);
+        this.fullCache = new LruCache<>(fullCacheSize);
+        metrics.cache("full-vectors", fullCache, LruCache::hits, LruCache::misses);
+        this.loads = metrics.registry().counter("thynkah.index.shard.loads");
+        this.evictions = metrics.registry().counter("thynkah.index.shard.evictions");
+        Gauge.builder("thynkah.index.size", this, VectorShardManager::residentEntries)
+                .description("Notes held by resident shards")
+                .register(metrics.registry());
+        Gauge.builder("thynkah.index.shards", this, VectorShardManager::residentShards)
+                .description("Owner shards currently resident in memory")
+                .register(metrics.registry());
+        Gauge.builder("thynkah.index.shards.bytes", this, VectorShardManager::residentBytes)
+                .description("Estimated heap used by resident shards")
+                .baseUnit("bytes")
+                .register(metrics.registry());
+        Gauge.builder("thynkah.index.shards.mapped.bytes", this, VectorShardManager::mappedBytes)
+                .description("Size of the memory-mapped segments behind resident shards (off-heap)")
+                .baseUnit("bytes")
+                .register(metrics.registry());
+    }
+
+    /** The owner's shard, loading it on first use. */
+    public VectorShard shard(String owner) {
+        VectorShard shard = touch(owner);
+        if (shard != null) {
+            return shard;
+        }
+        synchronized (lockFor(owner)) {
+            shard = touch(owner);
+            if (shard == null) {
+                shard = loadResident(owner);
+            }
+            return shard;
+        }
+    }
+
+    /**
+     * Opens the snapshots on disk, most recently used owners first, until the memory
+     * budget is reached. Returns the number of shards made resident.
+     */
+    public int preload() {
+        int loaded = 0;
+        for (String owner : snapshots.ownersByRecency()) {
+            if (residentBytes() >= budgetBytes) {
+                break;
+            }
+            synchronized (lockFor(owner)) {
+                if (touch(owner) == null) {
+                    loadResident(owner);
+                    loaded++;
+                }
+            }
+        }
+        return loaded;
+    }
+
+    /**
+     * Drops every resident shard and snapshot, so each owner is reloaded from the
+     * database on next use.
+     */
+    public void reset() {
+        snapshots.discardAll();
+        fullCache.clear();
+        for (String owner : new ArrayList<>(ownerLocks.keySet())) {
+            // a load in progress may still be reading the old snapshot: wait for it, then drop its shard
+            synchronized (lockFor(owner)) {
+                synchronized (this) {
+                    resident.remove(owner);
+                }
+            }
+        }
+        log.info("Discarded vector shards and snapshots; they are rebuilt from the database");
+    }
+
+    /** Applies a saved note (and its current passages) to its owner's shard, if resident. */
+    public void upsert(Note note, List<NotePassage> passages) {
+        if (note.getId() == null || note.getOwner() == null) {
+            return;
+        }
+        fullCache.remove(note.getId());
+        List<VectorShard.Passage> ps = new ArrayList<>();
+        for (NotePassage p : passages) {
+            VectorShard.Passage passage = passage(p.getStartOffset(), p.getEndOffset(), p.getEmbedding(), prefixDims);
+            if (passage != null) {
+                ps.add(passage);
+            }
+        }
+        VectorShard.Entry entry = entry(note.getId(), note.getCreatedAt(), note.getEmbeddingModel(),
+                note.getEmbedding(), ps, prefixDims);
+        synchronized (lockFor(note.getOwner())) {
+            snapshots.logPut(note.getOwner(), entry);
+            VectorShard shard = peek(note.getOwner());
+            if (shard == null) {
+                return; // loaded fresh on next use
+            }
+            shard.put(entry);
+        }
+        evictOverBudget(note.getOwner());
+    }
+
+    public void remove(String owner, Long noteId) {
+        if (owner == null || noteId == null) {
+            return;
+        }
+        fullCache.remove(noteId);
+        synchronized (lockFor(owner)) {
+            snapshots.logRemove(owner, noteId);
+            VectorShard shard = peek(owner);
+            if (shard != null) {
+                shard.remove(noteId);
+            }
+        }
+    }
+
+    /** True when shards hold prefix vectors and winners need a full-vector re-rank. */
+    public boolean usesPrefixVectors() {
+        return prefixDims > 0;
+    }
+
+    /**
+     * Full-dimension entries for the given notes (note id -> entry), from the
+     * cache or one database round trip for the rest. Unknown ids are left out.
+     */
+    public Map<Long, VectorShard.Entry> fullVectors(Collection<Long> noteIds) {
+        Map<Long, VectorShard.Entry> out = new HashMap<>();
+        List<Long> missing = new ArrayList<>();
+        for (Long id : noteIds) {
+            VectorShard.Entry e = fullCache.get(id);
+            if (e != null) {
+                out.put(id, e);
+            } else {
+                missing.add(id);
+            }
+        }
+        if (missing.isEmpty()) {
+            return out;
+        }
+        metrics.time("rerank.load", () -> {
+            Map<Long, List<VectorShard.Passage>> passages = passagesByNote(passageService.loadVectors(missing), 0);
+            for (NoteVector n : noteRepo.findVectorsByIdIn(missing)) {
+                VectorShard.Entry e = entry(n.getId(), n.getCreatedAt(), n.getEmbeddingModel(),
+                        n.getEmbedding(), passages.get(n.getId()), 0);
+                fullCache.put(n.getId(), e);
+                out.put(n.getId(), e);
+            }
+            return null;
+        });
+        return out;
+    }
+
+    /* ---------- Loading / eviction ---------- */
+
+    // caller holds the owner lock
+    private VectorShard loadResident(String owner) {
+        VectorShard shard = metrics.time("shard.load", () -> load(owner));
+        loads.increment();
+        synchronized (this) {
+            resident.put(owner, shard);
+        }
+        evictOverBudget(owner);
+        return shard;
+    }
+
+    /** From the owner's snapshot when there is a usable one, otherwise from the database (then snapshotted). */
+    private VectorShard load(String owner) {
+        VectorShard snapshot = snapshots.open(owner, prefixDims);
+        if (snapshot != null) {
+            return snapshot;
+        }
+
+        List<NoteVector> notes = noteRepo.findVectorsByOwner(owner);
+        Map<Long, List<VectorShard.Passage>> passages = passagesByNote(passageService.loadVectors(owner), prefixDims);
+
+        VectorShard shard = new VectorShard(owner);
+        for (NoteVector n : notes) {
+            shard.put(entry(n.getId(), n.getCreatedAt(), n.getEmbeddingModel(),
+                    n.getEmbedding(), passages.get(n.getId()), prefixDims));
+        }
+        log.debug("Loaded shard for {}: {} notes, ~{} KB", owner, shard.size(), shard.bytes() / 1024);
+        snapshots.save(shard, prefixDims);
+        return shard;
+    }
+
+    private static Map<Long, List<VectorShard.Passage>> passagesByNote(List<PassageVector> rows, int dims) {
+        Map<Long, List<VectorShard.Passage>> out = new HashMap<>();
+        for (PassageVector p : rows) {
+            VectorShard.Passage passage = passage(p.getStartOffset(), p.getEndOffset(), p.getEmbedding(), dims);
+            if (passage != null) {
+                out.computeIfAbsent(p.getNoteId(), k -> new ArrayList<>()).add(passage);
+            }
+        }
+        return out;
+    }
+
+    private static VectorShard.Entry entry(long noteId, LocalDateTime createdAt, String model, String embedding,
+                                           List<VectorShard.Passage> passages, int dims) {
+        return new VectorShard.Entry(noteId, createdAt, model,
+                VectorShard.prefix(VectorShard.parse(embedding), dims), passages);
+    }
+
+    private static VectorShard.Passage passage(int start, int end, String embedding, int dims) {
+        float[] v = VectorShard.parse(embedding);
+        return v.length == 0 ? null : new VectorShard.Passage(start, end, VectorShard.prefix(v, dims));
+    }
+
+    /** Evicts least recently used shards until the budget holds; {@code keep} is never evicted. */
+    private synchronized void evictOverBudget(String keep) {
+        long total = residentBytes();
+        Iterator<Map.Entry<String, VectorShard>> it = resident.entrySet().iterator();
+        while (total > budgetBytes && it.hasNext()) {
+            Map.Entry<String, VectorShard> eldest = it.next();
+            if (eldest.getKey().equals(keep)) {
+                continue;
+            }
+            total -= eldest.getValue().bytes();
+            it.remove();
+            evictions.increment();
+            log.debug("Evicted shard for {}", eldest.getKey());
+        }
+    }
+
+    private synchronized VectorShard touch(String owner) {
+        return resident.get(owner);
+    }
+
+    // lookup without counting as an access (mutations should not keep a shard alive)
+    private synchronized VectorShard peek(String owner) {
+        for (Map.Entry<String, VectorShard> e : resident.entrySet()) {
+            if (e.getKey().equals(owner)) {
+                return e.getValue();
+            }
+        }
+        return null;
+    }
+
+    private Object lockFor(String owner) {
+        return ownerLocks.computeIfAbsent(owner, k -> new Object());
+    }
+
+    private synchronized int residentShards() {
+        return resident.size();
+    }
+
+    private synchronized long residentEntries() {
+        long total = 0;
+        for (VectorShard shard : resident.values()) {
+            total += shard.size();
+        }
+        return total;
+    }
+
+    private synchronized long mappedBytes() {
+        long total = 0;
+        for (VectorShard shard : resident.values()) {
+            total += shard.mappedBytes();
+        }
+        return total;
+    }
+
+    private synchronized long residentBytes() {
+        long total = 0;
+        for (VectorShard shard : resident.values()) {
+            total += shard.bytes();
+        }
+        return total;
+    }
+}
@@ -0,0 +1,280 @@
+package com.thynkah.service;
+
+import com.thynkah.util.Hashing;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Per-owner {@link VectorSegment} snapshots plus their {@link VectorWal} tails under
+ * thynkah.index.segment-dir. Disabled when the directory is not configured.
+ * All I/O failures degrade to "no snapshot": the shard is then rebuilt from the database.
+ * The directory belongs to one instance (its WALs and journal cursor describe that
+ * instance's shards): startup fails when another process holds it.
+ */
+@Component
+public class VectorSnapshotStore {
+
+    private static final Logger log = LoggerFactory.getLogger(VectorSnapshotStore.class);
+
+    private final Path dir;
+    private final int compactAfter;
+
+    private FileChannel lockChannel;
+
+    public VectorSnapshotStore(@Value("${thynkah.index.segment-dir:}") String dir,
+                               @Value("${thynkah.index.wal-compact-records:1000}") int compactAfter) {
+        this.dir = (dir == null || dir.isBlank()) ? null : Paths.get(dir);
+        this.compactAfter = Math.max(1, compactAfter);
+    }
+
+    public boolean enabled() {
+        return dir != null;
+    }
+
+    /** Locks the directory for the life of the process (released by the OS if it dies). */
+    @PostConstruct
+    public void lock() {
+        if (!enabled()) {
+            return;
+        }
+        FileLock lock = null;
+        try {
+            Files.createDirectories(dir);
+            lockChannel = FileChannel.open(dir.resolve(".lock"), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            lock = lockChannel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            // held by another store in this JVM
+        } catch (IOException e) {
+            log.warn("Could not lock vector segment directory {}: {}", dir, e.getMessage());
+            return;
+        }
+        if (lock == null) {
+            unlock();
+            throw new IllegalStateException("Vector segment directory " + dir.toAbsolutePath()
+                    + " is in use by another instance; give each instance its own thynkah.node-id"
+                    + " or thynkah.index.segment-dir");
+        }
+    }
+
+    @PreDestroy
+    public void unlock() {
+        if (lockChannel == null) {
+            return;
+        }
+        try {
+            lockChannel.close(); // releases the lock
+        } catch (IOException e) {
+            log.warn("Could not unlock vector segment directory {}: {}", dir, e.getMessage());
+        }
+        lockChannel = null;
+    }
+
+    /**
+     * Opens the owner's snapshot and replays its WAL. Returns null when there is no
+     * usable snapshot (missing, corrupt, or cut to a different prefix length).
+     */
+    public VectorShard open(String owner, int dims) {
+        if (!enabled()) {
+            return null;
+        }
+        Path segment = segmentFile(owner);
+        if (!Files.exists(segment)) {
+            return null;
+        }
+        try {
+            VectorSegment seg = VectorSegment.open(segment);
+            if (seg.dims() != dims || !owner.equals(seg.owner())) {
+                log.info("Discarding vector segment {} (dims {} / owner mismatch)", segment, seg.dims());
+                discard(owner);
+                return null;
+            }
+            VectorShard shard = new VectorShard(owner, seg.mappedBytes());
+            for (VectorShard.Entry e : seg.entries()) {
+                shard.put(e);
+            }
+            int replayed = VectorWal.replay(walFile(owner), shard);
+            log.debug("Opened vector segment for {}: {} notes, {} WAL records", owner, shard.size(), replayed);
+            if (replayed >= compactAfter) {
+                save(shard, dims);
+            }
+            return shard;
+        } catch (IOException | RuntimeException e) {
+            log.warn("Could not open vector segment {}: {}", segment, e.getMessage());
+            discard(owner);
+            return null;
+        }
+    }
+
+    /** Writes a fresh snapshot of the shard and drops the WAL it supersedes. */
+    public void save(VectorShard shard, int dims) {
+        if (!enabled()) {
+            return;
+        }
+        try {
+            Files.createDirectories(dir);
+            VectorSegment.write(segmentFile(shard.getOwner()), shard.getOwner(), dims, shard.entries(), null);
+            Files.deleteIfExists(walFile(shard.getOwner()));
+        } catch (IOException e) {
+            log.warn("Could not write vector segment for {}: {}", shard.getOwner(), e.getMessage());
+            discard(shard.getOwner());
+        }
+    }
+
+    /** Records a change for an owner that has a snapshot on disk (resident or not). */
+    public void logPut(String owner, VectorShard.Entry entry) {
+        if (!hasSnapshot(owner)) {
+            return;
+        }
+        try {
+            VectorWal.appendPut(walFile(owner), entry);
+        } catch (IOException e) {
+            log.warn("Could not append to vector WAL for {}: {}", owner, e.getMessage());
+            discard(owner); // a snapshot missing a change must not be reopened
+        }
+    }
+
+    public void logRemove(String owner, long noteId) {
+        if (!hasSnapshot(owner)) {
+            return;
+        }
+        try {
+            VectorWal.appendRemove(walFile(owner), noteId);
+        } catch (IOException e) {
+            log.warn("Could not append to vector WAL for {}: {}", owner, e.getMessage());
+            discard(owner);
+        }
+    }
+
+    /** Deletes every snapshot and WAL, e.g. when the journal no longer covers the changes they miss. */
+    public void discardAll() {
+        if (!enabled() || !Files.isDirectory(dir)) {
+            return;
+        }
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path p : files.collect(Collectors.toList())) {
+                String name = p.getFileName().toString();
+                if (name.endsWith(".seg") || name.endsWith(".wal")) {
+                    Files.deleteIfExists(p);
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Could not delete vector segments in {}: {}", dir, e.getMessage());
+        }
+    }
+
+    /**
+     * Last change-journal seq the snapshots reflect, or -1 when unknown
+     * (no snapshot dir, or first start).
+     */
+    public long readCursor() {
+        if (!enabled()) {
+            return -1;
+        }
+        try {
+            Path file = dir.resolve("journal.cursor");
+            return Files.exists(file) ? Long.parseLong(Files.readString(file).trim()) : -1;
+        } catch (IOException | NumberFormatException e) {
+            log.warn("Could not read journal cursor: {}", e.getMessage());
+            return -1;
+        }
+    }
+
+    public void writeCursor(long seq) {
+        if (!enabled()) {
+            return;
+        }
+        try {
+            Files.createDirectories(dir);
+            Path tmp = dir.resolve("journal.cursor.tmp");
+            Files.writeString(tmp, Long.toString(seq));
+            Files.move(tmp, dir.resolve("journal.cursor"),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("Could not write journal cursor: {}", e.getMessage());
+        }
+    }
+
+    /** Owners with a snapshot on disk, most recently written first (used for warm-up). */
+    public List<String> ownersByRecency() {
+        if (!enabled() || !Files.isDirectory(dir)) {
+            return new ArrayList<>();
+        }
+        try (Stream<Path> files = Files.list(dir)) {
+            List<Path> segments = files
+                    .filter(p -> p.getFileName().toString().endsWith(".seg"))
+                    .sorted(Comparator.comparingLong(VectorSnapshotStore::lastModified).reversed())
+                    .collect(Collectors.toList());
+            List<String> owners = new ArrayList<>();
+            for (Path p : segments) {
+                try {
+                    owners.add(VectorSegment.readOwner(p));
+                } catch (IOException e) {
+                    log.warn("Skipping unreadable vector segment {}: {}", p, e.getMessage());
+                }
+            }
+            return owners;
+        } catch (IOException e) {
+            log.warn("Could not list vector segments in {}: {}", dir, e.getMessage());
+            return new ArrayList<>();
+        }
+    }
+
+    private boolean hasSnapshot(String owner) {
+        return enabled() && Files.exists(segmentFile(owner));
+    }
+
+    private void discard(String owner) {
+        try {
+            Files.deleteIfExists(segmentFile(owner));
+            Files.deleteIfExists(walFile(owner));
+        } catch (IOException e) {
+            log.warn("Could not delete vector segment files for {}: {}", owner, e.getMessage());
+        }
+    }
+
+    // owner names are not filesystem-safe; files are named by a hash of the owner
+    private Path segmentFile(String owner) {
+        return dir.resolve(fileKey(owner) + ".seg");
+    }
+
+    private Path walFile(String owner) {
+        return dir.resolve(fileKey(owner) + ".wal");
+    }
+
+    private static String fileKey(String owner) {
+        return Hashing.sha256Hex(owner).substring(0, 32);
+    }
+
+    private static long lastModified(Path p) {
+        try {
+            return Math.max(Files.getLastModifiedTime(p).toMillis(),
+                    Files.getLastModifiedTime(p.resolveSibling(p.getFileName().toString().replace(".seg", ".wal")))
+                            .toMillis());
+        } catch (IOException e) {
+            try {
+                return Files.getLastModifiedTime(p).toMillis();
+            } catch (IOException ignored) {
+                return 0L;
+            }
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.thynkah.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Write-ahead tail of a {@link VectorSegment}: note changes made after the snapshot
+ * was written, replayed on top of it when the shard is opened.
+ * <pre>
+ * record: int payloadLength, int crc32(payload), payload
+ * payload: byte op (1 = put, 2 = remove), then an entry (VectorSegment codec) or a long note id
+ * </pre>
+ * A torn or corrupt record (crash mid-append) ends the log; the file is truncated there.
+ */
+final class VectorWal {
+
+    private static final Logger log = LoggerFactory.getLogger(VectorWal.class);
+
+    private static final byte OP_PUT = 1;
+    private static final byte OP_REMOVE = 2;
+
+    private VectorWal() {
+    }
+
+    static void appendPut(Path file, VectorShard.Entry entry) throws IOException {
+        ByteBuffer payload = ByteBuffer.allocate(1 + VectorSegment.size(entry)).order(ByteOrder.LITTLE_ENDIAN);
+        payload.put(OP_PUT);
+        VectorSegment.put(payload, entry);
+        append(file, payload);
+    }
+
+    static void appendRemove(Path file, long noteId) throws IOException {
+        ByteBuffer payload = ByteBuffer.allocate(1 + 8).order(ByteOrder.LITTLE_ENDIAN);
+        payload.put(OP_REMOVE).putLong(noteId);
+        append(file, payload);
+    }
+
+    private static void append(Path file, ByteBuffer payload) throws IOException {
+        payload.flip();
+        CRC32 crc = new CRC32();
+        crc.update(payload.duplicate());
+
+        ByteBuffer record = ByteBuffer.allocate(8 + payload.remaining()).order(ByteOrder.LITTLE_ENDIAN);
+        record.putInt(payload.remaining()).putInt((int) crc.getValue()).put(payload).flip();
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND)) {
+            while (record.hasRemaining()) {
+                ch.write(record);
+            }
+            ch.force(false);
+        }
+    }
+
+    /** Applies every intact record to {@code shard}; returns the number of records applied. */
+    static int replay(Path file, VectorShard shard) throws IOException {
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(file)).order(ByteOrder.LITTLE_ENDIAN);
+        int applied = 0;
+        while (buf.hasRemaining()) {
+            int start = buf.position();
+            if (buf.remaining() < 8) {
+                truncate(file, start);
+                break;
+            }
+            int length = buf.getInt();
+            int expectedCrc = buf.getInt();
+            if (length <= 0 || length > buf.remaining()) {
+                truncate(file, start);
+                break;
+            }
+            ByteBuffer payload = buf.slice().limit(length).order(ByteOrder.LITTLE_ENDIAN);
+            CRC32 crc = new CRC32();
+            crc.update(payload.duplicate());
+            if ((int) crc.getValue() != expectedCrc) {
+                truncate(file, start);
+                break;
+            }
+            buf.position(buf.position() + length);
+
+            byte op = payload.get();
+            if (op == OP_PUT) {
+                shard.put(VectorSegment.get(payload));
+            } else if (op == OP_REMOVE) {
+                shard.remove(payload.getLong());
+            }
+            applied++;
+        }
+        return applied;
+    }
+
+    private static void truncate(Path file, long size) throws IOException {
+        log.warn("Truncating vector WAL {} at byte {} (torn or corrupt record)", file, size);
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            ch.truncate(size);
+        }
+    }
+}
@@ -0,0 +1,20 @@
+-- prompts holds both saved prompts (kind = 'SAVED') and the question log (kind = 'ASKED', see QuestionLog).
+-- createdat (VARCHAR) is kept for instances still running older code: it is still written
+-- (ISO-8601 text, same instant as created_at) but no longer read.
+ALTER TABLE prompts
+    MODIFY COLUMN prompt TEXT NULL,
+    ADD COLUMN kind         VARCHAR(16)   NOT NULL DEFAULT 'SAVED',
+    ADD COLUMN owner_id     VARCHAR(64)   NULL,
+    ADD COLUMN endpoint     VARCHAR(32)   NULL,
+    ADD COLUMN created_at   DATETIME(3)   NULL,
+    ADD COLUMN total_ms     INT           NULL,
+    ADD COLUMN embed_ms     INT           NULL,
+    ADD COLUMN retrieval_ms INT           NULL,
+    ADD COLUMN chat_ms      INT           NULL,
+    ADD COLUMN note_ids     VARCHAR(1024) NULL;
+
+UPDATE prompts
+   SET created_at = STR_TO_DATE(LEFT(REPLACE(createdat, 'T', ' '), 19), '%Y-%m-%d %H:%i:%s')
+ WHERE createdat REGEXP '^[0-9]{4}-[0-9]{2}-[0-9]{2}[ T][0-9]{2}:[0-9]{2}:[0-9]{2}';
+
+CREATE INDEX idx_prompts_kind_created ON prompts (kind, created_at);
@@ -0,0 +1,5 @@
+-- Refresh queue of NeighborIndex, shared by all instances: set when a note changes (or a
+-- neighbour is deleted), cleared once the list is recomputed. A changed note without a list
+-- gets an empty one so the mark has a row to live on.
+ALTER TABLE note_neighbors ADD COLUMN stale_at DATETIME(6) NULL;
+CREATE INDEX idx_note_neighbors_stale ON note_neighbors (stale_at);
@@ -0,0 +1,12 @@
+-- Passage-level embeddings for long notes (see PassageService)
+CREATE TABLE note_passages (
+    id           BIGINT AUTO_INCREMENT PRIMARY KEY,
+    note_id      BIGINT      NOT NULL,
+    ordinal      INT         NOT NULL,
+    start_offset INT         NOT NULL,
+    end_offset   INT         NOT NULL,
+    text_hash    CHAR(64)    NOT NULL,
+    text         TEXT        NOT NULL,
+    embedding    TEXT,
+    KEY idx_note_passages_note (note_id, ordinal)
+) CHARACTER SET utf8mb4 COLLATE utf8mb4_unicode_ci;
@@ -0,0 +1,8 @@
+-- Content-addressed embeddings shared across notes / passages (see EmbeddingStore)
+CREATE TABLE embedding_store (
+    content_hash CHAR(64)    NOT NULL PRIMARY KEY,
+    model        VARCHAR(64) NOT NULL,
+    dims         INT         NOT NULL,
+    vector       TEXT        NOT NULL,
+    createdat    DATETIME    NOT NULL
+);
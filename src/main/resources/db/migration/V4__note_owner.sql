@@ -0,0 +1,8 @@
+-- Per-owner partitioning of notes (see VectorShardManager).
+-- Existing rows go to the default owner, which must match thynkah.default-owner:
+-- edit @default_owner below before running if it is set to something other than 'local'.
+SET @default_owner = 'local';
+
+ALTER TABLE notes ADD COLUMN owner_id VARCHAR(64) NOT NULL DEFAULT 'local';
+UPDATE notes SET owner_id = @default_owner WHERE @default_owner <> 'local';
+CREATE INDEX idx_notes_owner_created ON notes (owner_id, createdat);
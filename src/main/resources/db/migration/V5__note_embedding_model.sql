@@ -0,0 +1,8 @@
+-- Model / dimension of each note's embedding, so mixed corpora can be searched during a model change.
+ALTER TABLE notes
+    ADD COLUMN embedding_model VARCHAR(64) NULL,
+    ADD COLUMN embedding_dims  INT         NULL;
+
+-- Everything embedded so far came from text-embedding-3-small; dims are derived from the vector when NULL.
+UPDATE notes SET embedding_model = 'text-embedding-3-small'
+ WHERE embedding IS NOT NULL AND embedding <> '' AND embedding <> '[]';
@@ -0,0 +1,10 @@
+-- Change journal tailed by every app instance (see ChangeJournal)
+CREATE TABLE note_changes (
+    seq        BIGINT AUTO_INCREMENT PRIMARY KEY,
+    note_id    BIGINT      NOT NULL,
+    owner_id   VARCHAR(64) NOT NULL,
+    op         VARCHAR(16) NOT NULL,
+    origin     VARCHAR(64) NOT NULL,
+    changed_at DATETIME(3) NOT NULL,
+    KEY idx_note_changes_changed_at (changed_at)
+);
@@ -0,0 +1,2 @@
+-- Per-owner collection version (max seq per owner) for ETags
+CREATE INDEX idx_note_changes_owner_seq ON note_changes (owner_id, seq);
@@ -0,0 +1,7 @@
+-- Precomputed nearest neighbours per note (see NeighborIndex); neighbors = k x (BIGINT id, FLOAT score), little-endian
+CREATE TABLE note_neighbors (
+    note_id    BIGINT      NOT NULL PRIMARY KEY,
+    owner_id   VARCHAR(64) NOT NULL,
+    neighbors  BLOB        NOT NULL,
+    updated_at DATETIME(3) NOT NULL
+);
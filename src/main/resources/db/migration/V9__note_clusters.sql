@@ -0,0 +1,14 @@
+-- Topic clusters per owner (mini-batch k-means over note embeddings, see ClusterIndex)
+CREATE TABLE note_clusters (
+    id           BIGINT AUTO_INCREMENT PRIMARY KEY,
+    owner_id     VARCHAR(64) NOT NULL,
+    dims         INT         NOT NULL,
+    centroid     BLOB        NOT NULL,
+    sample_count BIGINT      NOT NULL,
+    updated_at   DATETIME(3) NOT NULL,
+    KEY idx_note_clusters_owner (owner_id)
+);
+
+-- NULL = not clustered yet, 0 = no usable embedding
+ALTER TABLE notes ADD COLUMN cluster_id BIGINT NULL;
+CREATE INDEX idx_notes_owner_cluster ON notes (owner_id, cluster_id);
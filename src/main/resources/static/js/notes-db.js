@@ -0,0 +1,63 @@
+// IndexedDB mirror of the user's notes, kept current by offline.js through
+// GET /notes/changes and read by the service worker when the network is down.
+// Loaded in pages (<script>) and in sw.js (importScripts), so no DOM access here.
+(function (scope) {
+    const DB_NAME = "thynkah";
+    const DB_VERSION = 1;
+
+    function open() {
+        return new Promise((resolve, reject) => {
+            const req = indexedDB.open(DB_NAME, DB_VERSION);
+            req.onupgradeneeded = () => {
+                const db = req.result;
+                if (!db.objectStoreNames.contains("notes")) db.createObjectStore("notes", { keyPath: "id" });
+                if (!db.objectStoreNames.contains("meta")) db.createObjectStore("meta");
+            };
+            req.onsuccess = () => resolve(req.result);
+            req.onerror = () => reject(req.error);
+        });
+    }
+
+    function done(tx) {
+        return new Promise((resolve, reject) => {
+            tx.oncomplete = () => resolve();
+            tx.onerror = () => reject(tx.error);
+            tx.onabort = () => reject(tx.error);
+        });
+    }
+
+    async function getCursor() {
+        const db = await open();
+        return new Promise((resolve, reject) => {
+            const req = db.transaction("meta").objectStore("meta").get("cursor");
+            req.onsuccess = () => resolve(req.result || null);
+            req.onerror = () => reject(req.error);
+        });
+    }
+
+    // Applies one /notes/changes batch and its cursor in a single transaction,
+    // so an interrupted sync resumes from the last fully applied batch.
+    async function apply(batch) {
+        const db = await open();
+        const tx = db.transaction(["notes", "meta"], "readwrite");
+        const notes = tx.objectStore("notes");
+        if (batch.reset) notes.clear();
+        (batch.notes || []).forEach((n) => notes.put(n));
+        (batch.deleted || []).forEach((id) => notes.delete(id));
+        tx.objectStore("meta").put(batch.cursor, "cursor");
+        return done(tx);
+    }
+
+    // All mirrored notes, newest first (same order as GET /notes)
+    async function all() {
+        const db = await open();
+        const list = await new Promise((resolve, reject) => {
+            const req = db.transaction("notes").objectStore("notes").getAll();
+            req.onsuccess = () => resolve(req.result || []);
+            req.onerror = () => reject(req.error);
+        });
+        return list.sort((a, b) => String(b.createdAt || "").localeCompare(String(a.createdAt || "")));
+    }
+
+    scope.NotesDb = { open, getCursor, apply, all };
+})(self);
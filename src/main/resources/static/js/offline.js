@@ -17,4 +17,38 @@
 }
 });
 
-    updateOfflineBanner(); // initial check
\ No newline at end of file
+    updateOfflineBanner(); // initial check
+
+
+// ---------- Note sync (IndexedDB mirror, see notes-db.js) ----------
+// Pulls only what changed since the stored cursor; a fresh client (or one offline
+// longer than the server keeps its change journal) gets a full copy in pages.
+let syncing = false;
+
+async function syncNotes() {
+    if (syncing || !navigator.onLine || !self.NotesDb || !self.indexedDB) return;
+    syncing = true;
+    try {
+        let cursor = await NotesDb.getCursor();
+        for (;;) {
+            const url = "/notes/changes" + (cursor ? "?since=" + encodeURIComponent(cursor) : "");
+            const res = await fetch(url, { cache: "no-store" });
+            if (!res.ok) break;
+            const batch = await res.json();
+            await NotesDb.apply(batch);
+            cursor = batch.cursor;
+            if (!batch.more) break;
+        }
+    } catch (e) {
+        console.warn("Note sync failed", e);
+    } finally {
+        syncing = false;
+    }
+}
+
+window.addEventListener("online", syncNotes);
+document.addEventListener("visibilitychange", () => {
+    if (document.visibilityState === "visible") syncNotes();
+});
+setInterval(syncNotes, 60000);
+syncNotes();
@@ -1,10 +1,14 @@
-const CACHE = "thynkah-v3";
+importScripts("/js/notes-db.js");
+
+const CACHE = "thynkah-v4";
+// the static assets here are served no-cache (StaticResourceConfig): keep the lists in line
 const SHELL = [
     "/",
     "/browse",
     "/add",
     "/askui",
     "/css/style.css",
+    "/js/notes-db.js",
     "/manifest.json",
     "/icons/icon-192.png",
     "/icons/icon-512.png"
@@ -40,6 +44,17 @@ self.addEventListener("fetch", (event) => {
         return;
     }
 
+    // Delta sync is stateful: never serve it from cache
+    if (url.pathname === "/notes/changes") {
+        return;
+    }
+
+    // Note JSON: network first, offline answers come from the synced IndexedDB mirror
+    if (url.pathname === "/notes" || url.pathname === "/tags") {
+        event.respondWith(fetch(req).catch(() => fromMirror(url.pathname)));
+        return;
+    }
+
     // ✅ HTML navigations: NETWORK FIRST (prevents stale /browse after saving)
     if (req.mode === "navigate") {
         event.respondWith(
@@ -84,3 +99,16 @@ self.addEventListener("fetch", (event) => {
             .catch(() => caches.match(req))
     );
 });
+
+async function fromMirror(path) {
+    const notes = await NotesDb.all();
+    let body = notes;
+    if (path === "/tags") {
+        const tags = new Set();
+        notes.forEach((n) => (n.tag || "").split(",").map((t) => t.trim()).filter(Boolean).forEach((t) => tags.add(t)));
+        body = Array.from(tags).sort();
+    }
+    return new Response(JSON.stringify(body), {
+        headers: { "Content-Type": "application/json" }
+    });
+}
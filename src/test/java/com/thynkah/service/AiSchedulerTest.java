@@ -0,0 +1,162 @@
+package com.thynkah.service;
+
+import com.thynkah.service.AiScheduler.Priority;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AiSchedulerTest {
+
+  private final ExecutorService executor = Executors.newSingleThreadExecutor();
+  private final List<String> started = Collections.synchronizedList(new ArrayList<>());
+
+  @AfterEach
+  void tearDown() {
+    executor.shutdownNow();
+  }
+
+  private AiScheduler scheduler(int maxInFlight, int interactiveConcurrent, int backgroundConcurrent,
+                                int backgroundQueue, int requestsPerMinute) {
+    return new AiScheduler(new AiMetrics(new SimpleMeterRegistry()), executor, maxInFlight,
+        interactiveConcurrent, backgroundConcurrent, 100, backgroundQueue, requestsPerMinute, 0);
+  }
+
+  /** Submits a call that records its start and finishes when {@code done} completes. */
+  private AiScheduler.Submitted<String> submit(AiScheduler s, Priority priority, String name,
+                                               CompletableFuture<String> done) {
+    return s.submit(priority, 1, () -> {
+      started.add(name);
+      return done;
+    });
+  }
+
+  private AiScheduler.Submitted<String> submit(AiScheduler s, Priority priority, String name) {
+    return submit(s, priority, name, CompletableFuture.completedFuture(name));
+  }
+
+  @Test
+  void interactiveCallsGoBeforeQueuedBackgroundCalls() {
+    AiScheduler s = scheduler(1, 10, 10, 100, 0);
+    CompletableFuture<String> blocker = new CompletableFuture<>();
+    submit(s, Priority.BACKGROUND, "blocker", blocker);
+    submit(s, Priority.BACKGROUND, "background");
+    submit(s, Priority.INTERACTIVE, "interactive");
+    assertEquals(List.of("blocker"), started);
+
+    blocker.complete("done");
+
+    assertEquals(List.of("blocker", "interactive", "background"), started);
+  }
+
+  @Test
+  void backgroundClassCannotTakeEverySlot() {
+    AiScheduler s = scheduler(10, 10, 1, 100, 0);
+    CompletableFuture<String> first = new CompletableFuture<>();
+    submit(s, Priority.BACKGROUND, "background-1", first);
+    submit(s, Priority.BACKGROUND, "background-2");
+    submit(s, Priority.INTERACTIVE, "interactive");
+
+    assertEquals(List.of("background-1", "interactive"), started);
+
+    first.complete("done");
+    assertEquals(List.of("background-1", "interactive", "background-2"), started);
+  }
+
+  @Test
+  void fullQueueShedsTheCall() {
+    AiScheduler s = scheduler(10, 10, 1, 1, 0);
+    submit(s, Priority.BACKGROUND, "running", new CompletableFuture<>());
+    AiScheduler.Submitted<String> queued = submit(s, Priority.BACKGROUND, "queued");
+    AiScheduler.Submitted<String> shed = submit(s, Priority.BACKGROUND, "shed");
+
+    assertNotNull(queued.ticket);
+    assertFalse(queued.future.isDone());
+    assertNull(shed.ticket);
+    ExecutionException e = assertThrows(ExecutionException.class, () -> shed.future.get());
+    assertTrue(e.getCause() instanceof AiOverloadedException);
+    assertTrue(((AiOverloadedException) e.getCause()).getRetryAfterSeconds() >= 1);
+    assertFalse(started.contains("shed"));
+  }
+
+  @Test
+  void promotedCallOvertakesItsOldClass() {
+    AiScheduler s = scheduler(1, 10, 10, 100, 0);
+    CompletableFuture<String> blocker = new CompletableFuture<>();
+    submit(s, Priority.INTERACTIVE, "blocker", blocker);
+    submit(s, Priority.BACKGROUND, "background-1");
+    AiScheduler.Submitted<String> second = submit(s, Priority.BACKGROUND, "background-2");
+
+    s.promote(second.ticket, Priority.INTERACTIVE);
+    blocker.complete("done");
+
+    assertEquals(List.of("blocker", "background-2", "background-1"), started);
+  }
+
+  @Test
+  void callResultAndFailurePassThrough() throws Exception {
+    AiScheduler s = scheduler(10, 10, 10, 100, 0);
+    assertEquals("ok", submit(s, Priority.INTERACTIVE, "ok").future.get(1, TimeUnit.SECONDS));
+
+    AiScheduler.Submitted<String> failed = s.submit(Priority.INTERACTIVE, 1, () -> {
+      throw new IllegalStateException("boom");
+    });
+    ExecutionException e = assertThrows(ExecutionException.class, () -> failed.future.get(1, TimeUnit.SECONDS));
+    assertTrue(e.getCause() instanceof IllegalStateException);
+
+    // the failed call released its slot
+    assertEquals("after", submit(s, Priority.INTERACTIVE, "after").future.get(1, TimeUnit.SECONDS));
+  }
+
+  @Test
+  void rateLimitPauseHoldsCallsUntilItEnds() throws Exception {
+    AiScheduler s = scheduler(10, 10, 10, 100, 0);
+    s.pause(300);
+    long start = System.nanoTime();
+    AiScheduler.Submitted<String> call = submit(s, Priority.INTERACTIVE, "after-pause");
+    assertTrue(started.isEmpty());
+
+    assertEquals("after-pause", call.future.get(5, TimeUnit.SECONDS));
+    assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 250);
+  }
+
+  @Test
+  void requestBucketRefillsContinuously() throws Exception {
+    // 600 requests per minute = one every 100 ms; pause(0) empties the bucket
+    AiScheduler s = scheduler(10, 10, 10, 100, 600);
+    s.pause(0);
+    CountDownLatch all = new CountDownLatch(3);
+    long start = System.nanoTime();
+    for (int i = 0; i < 3; i++) {
+      submit(s, Priority.INTERACTIVE, "call-" + i).future.thenRun(all::countDown);
+    }
+    assertTrue(started.isEmpty());
+
+    assertTrue(all.await(5, TimeUnit.SECONDS));
+    assertEquals(List.of("call-0", "call-1", "call-2"), started);
+    assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 250);
+  }
+
+  @Test
+  void fullBucketAdmitsABurst() {
+    AiScheduler s = scheduler(100, 100, 100, 100, 60);
+    for (int i = 0; i < 60; i++) {
+      submit(s, Priority.INTERACTIVE, "call-" + i);
+    }
+    submit(s, Priority.INTERACTIVE, "over-quota");
+
+    assertEquals(60, started.size());
+    assertFalse(started.contains("over-quota"));
+  }
+}
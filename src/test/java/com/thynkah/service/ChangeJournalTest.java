@@ -0,0 +1,189 @@
+package com.thynkah.service;
+
+import com.thynkah.model.Note;
+import com.thynkah.model.NoteChange;
+import com.thynkah.repository.NoteChangeRepository;
+import com.thynkah.repository.NoteRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class ChangeJournalTest {
+
+  private NoteChangeRepository changes;
+  private NoteRepository notes;
+  private VectorShardManager shards;
+  private VectorSnapshotStore snapshots;
+  private NoteCache noteCache;
+  private ChangeJournal journal;
+
+  @BeforeEach
+  void setUp() {
+    changes = mock(NoteChangeRepository.class);
+    notes = mock(NoteRepository.class);
+    shards = mock(VectorShardManager.class);
+    snapshots = mock(VectorSnapshotStore.class);
+    noteCache = mock(NoteCache.class);
+    journal = new ChangeJournal(changes, notes, mock(PassageService.class), shards, snapshots,
+        mock(MarkdownService.class), noteCache, new AiMetrics(new SimpleMeterRegistry()), "node-a", 200, 7);
+    ReflectionTestUtils.setField(journal, "gapWaitMs", 5000L);
+
+    // the snapshots on disk were written up to seq 10
+    when(snapshots.readCursor()).thenReturn(10L);
+    when(changes.maxSeq()).thenReturn(10L);
+  }
+
+  private static NoteChange change(long seq, long noteId, String op, String origin, LocalDateTime at) {
+    NoteChange c = new NoteChange(noteId, "alice", op, origin);
+    ReflectionTestUtils.setField(c, "seq", seq);
+    ReflectionTestUtils.setField(c, "changedAt", at);
+    return c;
+  }
+
+  private static NoteChange change(long seq, long noteId, String origin) {
+    return change(seq, noteId, NoteChange.TEXT, origin, LocalDateTime.now());
+  }
+
+  private static Note note(long id) {
+    Note note = new Note();
+    ReflectionTestUtils.setField(note, "id", id);
+    note.setOwner("alice");
+    return note;
+  }
+
+  private void fetched(long after, NoteChange... rows) {
+    List<NoteChange> list = List.of(rows);
+    when(changes.findBySeqGreaterThanOrderBySeqAsc(eq(after), any())).thenReturn(list);
+  }
+
+  @Test
+  void appliesOtherInstancesChangesAndSavesTheCursor() {
+    fetched(10, change(11, 1, "node-b"), change(12, 2, "node-b"));
+    Note one = note(1);
+    Note two = note(2);
+    List<Note> rows = List.of(one, two);
+    when(notes.findAllById(any())).thenReturn(rows);
+
+    journal.poll();
+
+    verify(shards).upsert(eq(one), any());
+    verify(shards).upsert(eq(two), any());
+    verify(noteCache).evict(1L);
+    verify(noteCache).evict(2L);
+    verify(snapshots).writeCursor(12);
+  }
+
+  @Test
+  void ownChangesAdvanceTheCursorWithoutBeingApplied() {
+    fetched(10, change(11, 1, "node-a"));
+
+    journal.poll();
+
+    verify(notes, never()).findAllById(any());
+    verify(shards, never()).upsert(any(), any());
+    verify(snapshots).writeCursor(11);
+  }
+
+  @Test
+  void deletedNoteLeavesItsOwnersShard() {
+    fetched(10, change(11, 4, NoteChange.DELETE, "node-b", LocalDateTime.now()));
+
+    journal.poll();
+
+    verify(shards).remove("alice", 4L);
+    verify(noteCache).evict(4L);
+    verify(shards, never()).upsert(any(), any());
+  }
+
+  @Test
+  void stopsAtAFreshGapUntilItFills() {
+    // seq 12 is handed out but not committed yet
+    fetched(10, change(11, 1, "node-b"), change(13, 3, "node-b"));
+    Note one = note(1);
+    Note three = note(3);
+    List<Note> rows = List.of(one, three);
+    when(notes.findAllById(any())).thenReturn(rows);
+
+    journal.poll();
+
+    verify(shards).upsert(eq(one), any());
+    verify(shards, never()).upsert(eq(three), any());
+    verify(snapshots).writeCursor(11);
+    verify(snapshots, never()).writeCursor(13);
+
+    fetched(11, change(12, 2, "node-b"), change(13, 3, "node-b"));
+    journal.poll();
+
+    verify(shards).upsert(eq(three), any());
+    verify(snapshots).writeCursor(13);
+  }
+
+  @Test
+  void skipsAGapOlderThanGapWait() {
+    // seq 12 was rolled back a minute ago and will never appear
+    LocalDateTime old = LocalDateTime.now().minusMinutes(1);
+    fetched(10, change(11, 1, NoteChange.TEXT, "node-b", old), change(13, 3, NoteChange.TEXT, "node-b", old));
+
+    journal.poll();
+
+    verify(snapshots).writeCursor(13);
+  }
+
+  @Test
+  void freshNodeStartsAtTheHead() {
+    when(snapshots.readCursor()).thenReturn(-1L);
+    when(changes.maxSeq()).thenReturn(42L);
+
+    journal.poll();
+
+    verify(changes).findBySeqGreaterThanOrderBySeqAsc(eq(42L), any());
+    verify(changes, never()).findBySeqGreaterThanOrderBySeqAsc(eq(-1L), any());
+  }
+
+  @Test
+  void coversOnlyCursorsWhoseLaterChangesAreStillRetained() {
+    when(changes.maxSeq()).thenReturn(50L);
+    when(changes.minSeqSince(any())).thenReturn(20L); // rows before 20 were cleaned up
+
+    assertTrue(journal.covers(19));
+    assertTrue(journal.covers(50));
+    assertFalse(journal.covers(18));
+    assertFalse(journal.covers(51)); // ahead of this journal
+    assertFalse(journal.covers(-1));
+  }
+
+  @Test
+  void resumeFromACursorTheJournalNoLongerCoversRebuildsTheShards() {
+    when(snapshots.readCursor()).thenReturn(5L);
+    when(changes.maxSeq()).thenReturn(50L);
+    when(changes.minSeqSince(any())).thenReturn(20L);
+
+    journal.poll();
+
+    verify(shards).reset();
+    verify(snapshots).writeCursor(50);
+    verify(changes).findBySeqGreaterThanOrderBySeqAsc(eq(50L), any());
+    verify(changes, never()).findBySeqGreaterThanOrderBySeqAsc(eq(5L), any());
+  }
+
+  @Test
+  void resumeFromACoveredCursorReplaysTheJournal() {
+    when(snapshots.readCursor()).thenReturn(25L);
+    when(changes.maxSeq()).thenReturn(50L);
+    when(changes.minSeqSince(any())).thenReturn(20L);
+
+    journal.poll();
+
+    verify(shards, never()).reset();
+    verify(changes).findBySeqGreaterThanOrderBySeqAsc(eq(25L), any());
+  }
+}
@@ -0,0 +1,100 @@
+package com.thynkah.service;
+
+import com.thynkah.model.Note;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ContextBuilderTest {
+
+  private ContextBuilder builder;
+
+  @BeforeEach
+  void setUp() {
+    builder = new ContextBuilder(new AiMetrics(new SimpleMeterRegistry()));
+    ReflectionTestUtils.setField(builder, "maxTokens", 3000);
+    ReflectionTestUtils.setField(builder, "maxNoteTokens", 100);
+  }
+
+  private static String filler(int sentences) {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < sentences; i++) {
+      sb.append("Filler sentence ").append(i).append(" about nothing much at all. ");
+    }
+    return sb.toString().trim();
+  }
+
+  private static Note note(String text) {
+    Note note = new Note();
+    note.setText(text);
+    return note;
+  }
+
+  /* ---------- excerpt ---------- */
+
+  @Test
+  void excerptKeepsTheBestMatchingSentence() {
+    String text = filler(20) + " The plumber fixes the boiler on Tuesday. " + filler(20);
+    String excerpt = builder.excerpt(text, ContextBuilder.terms("when does the plumber come?"), 40);
+
+    assertTrue(excerpt.contains("The plumber fixes the boiler on Tuesday."), excerpt);
+    assertTrue(TokenEstimator.estimate(excerpt) <= 40 + 4, excerpt); // + the gap marks
+  }
+
+  @Test
+  void excerptMarksGapsAroundKeptSegments() {
+    String text = filler(20) + " The plumber fixes the boiler on Tuesday. " + filler(20);
+    String excerpt = builder.excerpt(text, ContextBuilder.terms("plumber"), 40);
+
+    assertTrue(excerpt.startsWith("… "), excerpt);
+    assertTrue(excerpt.endsWith(" …"), excerpt);
+  }
+
+  @Test
+  void excerptWithoutMatchKeepsTheBeginning() {
+    String text = filler(40);
+    String excerpt = builder.excerpt(text, ContextBuilder.terms("zebra"), 40);
+
+    assertTrue(excerpt.startsWith("Filler sentence 0 "), excerpt);
+    assertTrue(excerpt.endsWith(" …"), excerpt);
+  }
+
+  @Test
+  void termsSkipStopWordsAndShortWords() {
+    assertEquals(Set.of("plumber", "come"), ContextBuilder.terms("When does the plumber come, at 9?"));
+  }
+
+  /* ---------- budgets ---------- */
+
+  @Test
+  void severalNotesAreCappedAtMaxNoteTokens() {
+    ContextBuilder.PromptContext ctx = builder.build("plumber", List.of(note(filler(60)), note(filler(60))));
+
+    assertEquals(2, ctx.getNotesIncluded());
+    assertEquals(2, ctx.getNotesExcerpted());
+  }
+
+  @Test
+  void aSingleNoteMayUseTheWholeBudget() {
+    String text = filler(60); // well above max-note-tokens, well below max-tokens
+    ContextBuilder.PromptContext ctx = builder.build("plumber", List.of(note(text)));
+
+    assertEquals(1, ctx.getNotesIncluded());
+    assertEquals(0, ctx.getNotesExcerpted());
+    assertTrue(ctx.getText().contains(text));
+  }
+
+  @Test
+  void noNotesSaysSo() {
+    ContextBuilder.PromptContext ctx = builder.build("plumber", List.of());
+
+    assertEquals(0, ctx.getTokens());
+    assertTrue(ctx.getText().contains("NO relevant notes"));
+  }
+}
@@ -0,0 +1,76 @@
+package com.thynkah.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LocalEmbeddingProviderTest {
+
+  private static LocalEmbeddingProvider provider(int dims, long seed) {
+    return new LocalEmbeddingProvider(new AiMetrics(new SimpleMeterRegistry()), dims, seed);
+  }
+
+  private static double dot(float[] a, float[] b) {
+    double sum = 0;
+    for (int i = 0; i < a.length; i++) {
+      sum += a[i] * b[i];
+    }
+    return sum;
+  }
+
+  @Test
+  void sameTextGivesTheSameVector() {
+    String text = "Repotted the tomatoes, watered the basil.";
+    assertArrayEquals(provider(384, 1).embed(text), provider(384, 1).embed(text));
+  }
+
+  @Test
+  void vectorsAreUnitLengthWithTheConfiguredDims() {
+    float[] v = provider(128, 1).embed("Meeting notes: budget review with Sam on Friday.");
+    assertEquals(128, v.length);
+    assertEquals(1.0, Math.sqrt(dot(v, v)), 1e-5);
+  }
+
+  @Test
+  void caseAndPunctuationDoNotMatter() {
+    LocalEmbeddingProvider p = provider(384, 1);
+    assertArrayEquals(p.embed("garden plan for spring"), p.embed("Garden PLAN, for spring!"));
+  }
+
+  @Test
+  void sharedWordingScoresHigherThanUnrelatedText() {
+    LocalEmbeddingProvider p = provider(384, 1);
+    float[] query = p.embed("meetings with the landlord");
+    double related = dot(query, p.embed("Meeting with the landlord about the boiler"));
+    double unrelated = dot(query, p.embed("Ran five kilometres along the river"));
+    assertTrue(related > unrelated, related + " <= " + unrelated);
+  }
+
+  @Test
+  void textWithoutWordsHasNoVector() {
+    LocalEmbeddingProvider p = provider(384, 1);
+    assertEquals(0, p.embed("  ... !? ").length);
+    assertEquals(0, p.embed(null).length);
+  }
+
+  @Test
+  void seedAndDimsArePartOfTheModelId() {
+    assertEquals(provider(384, 1).model(), provider(384, 1).model());
+    assertNotEquals(provider(384, 1).model(), provider(384, 2).model());
+    assertNotEquals(provider(384, 1).model(), provider(256, 1).model());
+    assertFalse(Arrays.equals(provider(384, 1).embed("same text"), provider(384, 2).embed("same text")));
+  }
+
+  @Test
+  void batchAndAsyncMatchSingleEmbeddings() {
+    LocalEmbeddingProvider p = provider(64, 1);
+    List<float[]> batch = p.embedAll(List.of("first note", "second note"));
+    assertArrayEquals(p.embed("first note"), batch.get(0));
+    assertArrayEquals(p.embed("second note"), batch.get(1));
+    assertArrayEquals(p.embed("first note"), p.embedAsync("first note", AiScheduler.Priority.INTERACTIVE).join());
+  }
+}
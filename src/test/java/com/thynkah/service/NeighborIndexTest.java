@@ -0,0 +1,156 @@
+package com.thynkah.service;
+
+import com.thynkah.model.NoteNeighbors;
+import com.thynkah.repository.NoteNeighborsRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class NeighborIndexTest {
+
+  private NoteNeighborsRepository repo;
+  private VectorShardManager shards;
+  private ClusterLock lock;
+  private NeighborIndex index;
+
+  @BeforeEach
+  void setUp() {
+    repo = mock(NoteNeighborsRepository.class);
+    shards = mock(VectorShardManager.class);
+    lock = mock(ClusterLock.class);
+    when(lock.runExclusive(eq("neighbors"), any())).thenAnswer(inv -> {
+      Runnable work = inv.getArgument(1);
+      work.run();
+      return true;
+    });
+    index = new NeighborIndex(repo, shards, lock, new AiMetrics(new SimpleMeterRegistry()), 2, 5, 100, 0);
+  }
+
+  private static VectorShard.Entry entry(long id, float... vector) {
+    return new VectorShard.Entry(id, null, "model-a", vector, null);
+  }
+
+  private static NoteNeighbors row(long noteId, String owner, long... neighbours) {
+    List<NeighborIndex.Neighbor> list = new ArrayList<>();
+    for (long n : neighbours) {
+      list.add(new NeighborIndex.Neighbor(n, 0.5f));
+    }
+    return new NoteNeighbors(noteId, owner, NeighborIndex.pack(list));
+  }
+
+  @Test
+  void packedListRoundTripsInOrder() {
+    List<NeighborIndex.Neighbor> list = List.of(
+        new NeighborIndex.Neighbor(42L, 0.93f),
+        new NeighborIndex.Neighbor(Long.MAX_VALUE, 0.5f),
+        new NeighborIndex.Neighbor(7L, -0.25f));
+
+    byte[] packed = NeighborIndex.pack(list);
+    assertEquals(12 * list.size(), packed.length);
+
+    List<NeighborIndex.Neighbor> unpacked = NeighborIndex.unpack(packed);
+    assertEquals(list.size(), unpacked.size());
+    for (int i = 0; i < list.size(); i++) {
+      assertEquals(list.get(i).getNoteId(), unpacked.get(i).getNoteId());
+      assertEquals(list.get(i).getScore(), unpacked.get(i).getScore(), 0f);
+    }
+  }
+
+  @Test
+  void emptyAndMissingListsUnpackToEmpty() {
+    assertEquals(0, NeighborIndex.pack(List.of()).length);
+    assertTrue(NeighborIndex.unpack(new byte[0]).isEmpty());
+    assertTrue(NeighborIndex.unpack(null).isEmpty());
+  }
+
+  @Test
+  void trailingPartialPairIsIgnored() {
+    byte[] packed = NeighborIndex.pack(List.of(new NeighborIndex.Neighbor(1L, 0.1f), new NeighborIndex.Neighbor(2L, 0.2f)));
+    List<NeighborIndex.Neighbor> unpacked = NeighborIndex.unpack(Arrays.copyOf(packed, packed.length - 5));
+
+    assertEquals(1, unpacked.size());
+    assertEquals(1L, unpacked.get(0).getNoteId());
+  }
+
+  @Test
+  void unpackedListCanBeExtended() {
+    List<NeighborIndex.Neighbor> unpacked = NeighborIndex.unpack(NeighborIndex.pack(List.of(new NeighborIndex.Neighbor(1L, 0.1f))));
+    unpacked.add(new NeighborIndex.Neighbor(2L, 0.2f)); // offer() inserts into unpacked lists
+    assertEquals(2, unpacked.size());
+  }
+
+  @Test
+  void refreshIsSkippedWhileAnotherInstanceHoldsTheLock() {
+    ClusterLock taken = mock(ClusterLock.class);
+    when(taken.runExclusive(any(), any())).thenReturn(false);
+    new NeighborIndex(repo, shards, taken, new AiMetrics(new SimpleMeterRegistry()), 2, 5, 100, 0).refresh();
+
+    verify(repo, never()).findStale(any(), any());
+    verify(repo, never()).findUnindexed(any());
+  }
+
+  @Test
+  void queuedListIsRecomputedAndOnlyTheMarkReadIsCleared() {
+    VectorShard shard = new VectorShard("alice");
+    shard.put(entry(1, 1f, 0f));
+    shard.put(entry(2, 0.9f, 0.1f));
+    shard.put(entry(3, 0f, 1f));
+    when(shards.shard("alice")).thenReturn(shard);
+    LocalDateTime mark = LocalDateTime.of(2026, 10, 1, 12, 0);
+    when(repo.findStale(any(), any())).thenReturn(List.<Object[]>of(new Object[] {1L, "alice", mark}));
+
+    index.refresh();
+
+    verify(repo).save(argThat(row -> row.getNoteId() == 1L
+        && NeighborIndex.unpack(row.getPacked()).get(0).getNoteId() == 2L));
+    verify(repo).clearStale(1L, mark);
+    verify(repo, never()).findUnindexed(any());
+  }
+
+  @Test
+  void deletedNoteDropsItsListAndQueuesItsNeighbours() {
+    NoteNeighbors row = row(5, "alice", 6, 7);
+    when(repo.findById(5L)).thenReturn(Optional.of(row));
+
+    index.noteDeleted("alice", 5L);
+
+    verify(repo).markStale(eq(List.of(6L, 7L)), any());
+    verify(repo).delete(row);
+  }
+
+  @Test
+  void relatedNeverQueuesAnotherOwnersOrAMissingNote() {
+    when(repo.findById(5L)).thenReturn(Optional.of(row(5, "bob", 6)));
+
+    assertTrue(index.related("alice", 5L, ids -> Set.copyOf(ids)).isEmpty());
+    assertTrue(index.related("alice", 9L, ids -> Set.copyOf(ids)).isEmpty());
+    verify(repo, never()).markStale(anyLong(), any(), any());
+    verify(repo, never()).markStale(anyCollection(), any());
+  }
+
+  @Test
+  void listWithADeletedNeighbourIsFilteredAndQueued() {
+    when(repo.findById(5L)).thenReturn(Optional.of(row(5, "alice", 6, 7)));
+
+    List<NeighborIndex.Neighbor> related = index.related("alice", 5L, ids -> Set.of(6L));
+
+    assertEquals(1, related.size());
+    assertEquals(6L, related.get(0).getNoteId());
+    verify(repo).markStale(eq(List.of(5L)), any());
+  }
+}
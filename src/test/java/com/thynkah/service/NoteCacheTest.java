@@ -0,0 +1,160 @@
+package com.thynkah.service;
+
+import com.thynkah.model.Note;
+import com.thynkah.repository.NoteRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class NoteCacheTest {
+
+  private NoteRepository repo;
+  private NoteCache cache;
+
+  @BeforeEach
+  void setUp() {
+    repo = mock(NoteRepository.class);
+    cache = new NoteCache(repo, new AiMetrics(new SimpleMeterRegistry()), 100);
+  }
+
+  private static Note note(long id, String owner, String text) {
+    Note note = new Note();
+    ReflectionTestUtils.setField(note, "id", id);
+    note.setOwner(owner);
+    note.setText(text);
+    return note;
+  }
+
+  private void stored(Note note) {
+    Optional<Note> row = Optional.of(note);
+    when(repo.findByIdAndOwner(note.getId(), note.getOwner())).thenReturn(row);
+  }
+
+  @Test
+  void secondReadIsServedFromTheCache() {
+    stored(note(1, "alice", "first"));
+
+    assertEquals("first", cache.find(1L, "alice").get().getText());
+    assertEquals("first", cache.find(1L, "alice").get().getText());
+
+    verify(repo, times(1)).findByIdAndOwner(1L, "alice");
+  }
+
+  @Test
+  void readersGetCopies() {
+    stored(note(1, "alice", "first"));
+    cache.find(1L, "alice").get().setText("changed by a caller");
+
+    assertEquals("first", cache.find(1L, "alice").get().getText());
+  }
+
+  @Test
+  void anotherOwnersCachedNoteIsMissingWithoutAQuery() {
+    stored(note(1, "alice", "first"));
+    cache.find(1L, "alice");
+
+    assertFalse(cache.find(1L, "bob").isPresent());
+    verify(repo, never()).findByIdAndOwner(1L, "bob");
+  }
+
+  @Test
+  void putReplacesTheEntry() {
+    stored(note(1, "alice", "first"));
+    cache.find(1L, "alice");
+
+    cache.put(note(1, "alice", "edited"));
+
+    assertEquals("edited", cache.find(1L, "alice").get().getText());
+    verify(repo, times(1)).findByIdAndOwner(1L, "alice");
+  }
+
+  @Test
+  void evictedNoteIsReadAgain() {
+    stored(note(1, "alice", "first"));
+    cache.find(1L, "alice");
+
+    cache.evict(1L);
+    stored(note(1, "alice", "changed on another instance"));
+
+    assertEquals("changed on another instance", cache.find(1L, "alice").get().getText());
+    verify(repo, times(2)).findByIdAndOwner(1L, "alice");
+  }
+
+  @Test
+  void missingNoteIsNotCached() {
+    assertFalse(cache.find(9L, "alice").isPresent());
+    assertFalse(cache.find(9L, "alice").isPresent());
+
+    verify(repo, times(2)).findByIdAndOwner(any(), any());
+  }
+
+  @Test
+  void entriesAreKeptWithoutTheEmbedding() {
+    Note row = note(1, "alice", "first");
+    row.setEmbedding("[0.1, 0.2]");
+    stored(row);
+
+    assertNull(cache.find(1L, "alice").get().getEmbedding());
+    assertNull(cache.find(1L, "alice").get().getEmbedding());
+    assertEquals("[0.1, 0.2]", row.getEmbedding());
+  }
+
+  @Test
+  void writeDuringALoadKeepsTheLoadedRowOutOfTheCache() {
+    // a writer evicts the note while this reader is still loading the old row
+    when(repo.findByIdAndOwner(1L, "alice")).thenAnswer(inv -> {
+      cache.evict(1L);
+      return Optional.of(note(1, "alice", "old"));
+    });
+
+    assertEquals("old", cache.find(1L, "alice").get().getText());
+    cache.find(1L, "alice");
+
+    verify(repo, times(2)).findByIdAndOwner(1L, "alice");
+  }
+
+  @Test
+  void writeInATransactionIsAppliedAgainAfterCommit() {
+    stored(note(1, "alice", "old"));
+    TransactionSynchronizationManager.initSynchronization();
+    try {
+      cache.evict(1L);
+      // until the commit, a reader still loads (and caches) the old row
+      cache.find(1L, "alice");
+      for (TransactionSynchronization s : TransactionSynchronizationManager.getSynchronizations()) {
+        s.afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+      }
+    } finally {
+      TransactionSynchronizationManager.clearSynchronization();
+    }
+    stored(note(1, "alice", "new"));
+
+    assertEquals("new", cache.find(1L, "alice").get().getText());
+  }
+
+  @Test
+  void putInARolledBackTransactionIsDropped() {
+    stored(note(1, "alice", "committed"));
+    cache.find(1L, "alice");
+    TransactionSynchronizationManager.initSynchronization();
+    try {
+      cache.put(note(1, "alice", "never committed"));
+      for (TransactionSynchronization s : TransactionSynchronizationManager.getSynchronizations()) {
+        s.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK);
+      }
+    } finally {
+      TransactionSynchronizationManager.clearSynchronization();
+    }
+
+    assertEquals("committed", cache.find(1L, "alice").get().getText());
+  }
+}
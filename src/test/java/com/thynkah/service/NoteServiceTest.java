@@ -0,0 +1,172 @@
+package com.thynkah.service;
+
+import com.thynkah.model.Note;
+import com.thynkah.model.NoteChange;
+import com.thynkah.repository.NoteRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.*;
+
+class NoteServiceTest {
+
+  private NoteRepository repo;
+  private EmbeddingStore embeddingStore;
+  private PassageService passageService;
+  private ChangeJournal journal;
+  private NoteCache noteCache;
+  private NoteService service;
+  private boolean inTransaction;
+
+  @BeforeEach
+  void setUp() {
+    repo = mock(NoteRepository.class);
+    embeddingStore = mock(EmbeddingStore.class);
+    passageService = mock(PassageService.class);
+    journal = mock(ChangeJournal.class);
+    noteCache = mock(NoteCache.class);
+    OwnerContext owners = mock(OwnerContext.class);
+    when(owners.current()).thenReturn("alice");
+    TransactionTemplate tx = mock(TransactionTemplate.class);
+    when(tx.execute(any())).thenAnswer(inv -> {
+      TransactionCallback<?> work = inv.getArgument(0);
+      inTransaction = true;
+      try {
+        return work.doInTransaction(null);
+      } finally {
+        inTransaction = false;
+      }
+    });
+    service = new NoteService(repo, embeddingStore, mock(AiGateway.class), mock(ExecutorService.class),
+        new AiMetrics(new SimpleMeterRegistry()), mock(MarkdownService.class), mock(ContextBuilder.class),
+        passageService, mock(VectorShardManager.class), owners, journal, mock(NeighborIndex.class),
+        mock(ClusterIndex.class), noteCache, tx, 10);
+
+    PassageService.Prepared none = new PassageService.Prepared(List.of(), List.of());
+    when(embeddingStore.model()).thenReturn("local");
+    when(embeddingStore.embed(any())).thenAnswer(inv -> {
+      assertFalse(inTransaction, "the note must be embedded before the transaction starts");
+      return new float[] {1f, 0f};
+    });
+    when(passageService.prepare(any(), any(), anyBoolean())).thenAnswer(inv -> {
+      assertFalse(inTransaction, "passages must be embedded before the transaction starts");
+      return none;
+    });
+    when(repo.save(any())).thenAnswer(inv -> {
+      assertTrue(inTransaction, "the row must be written inside the transaction");
+      return inv.getArgument(0);
+    });
+    doAnswer(inv -> {
+      assertTrue(inTransaction, "the journal row must commit with the note");
+      return null;
+    }).when(journal).record(any(), any());
+  }
+
+  private static Note note(long id, String owner, String text) {
+    Note note = new Note();
+    ReflectionTestUtils.setField(note, "id", id);
+    note.setOwner(owner);
+    note.setText(text);
+    note.setEmbeddingModel("local");
+    return note;
+  }
+
+  @Test
+  void saveEmbedsFirstThenWritesInOneTransaction() {
+    Note saved = service.save(new Note());
+
+    assertEquals("alice", saved.getOwner());
+    assertEquals("local", saved.getEmbeddingModel());
+    verify(repo).save(saved);
+    verify(journal).record(saved, NoteChange.SAVE);
+  }
+
+  @Test
+  void updateTextEmbedsFirstThenWritesInOneTransaction() {
+    Note note = note(3L, "alice", "old text");
+    when(noteCache.find(3L, "alice")).thenReturn(Optional.of(note));
+
+    Note saved = service.updateText(3L, "new text");
+
+    assertEquals("new text", saved.getText());
+    verify(passageService).prepare(eq(3L), eq("new text"), eq(true));
+    verify(passageService).write(eq(saved), any());
+    verify(journal).record(saved, NoteChange.TEXT);
+  }
+
+  @Test
+  void updateTextAfterAModelSwitchReEmbedsEveryPassage() {
+    Note note = note(3L, "alice", "old text");
+    note.setEmbeddingModel("openai:text-embedding-3-small");
+    when(noteCache.find(3L, "alice")).thenReturn(Optional.of(note));
+
+    service.updateText(3L, "new text");
+
+    verify(passageService).prepare(eq(3L), eq("new text"), eq(false));
+  }
+
+  @Test
+  void failedWriteIsNotJournaled() {
+    doThrow(new IllegalStateException("connection lost")).when(repo).save(any());
+
+    assertThrows(IllegalStateException.class, () -> service.save(new Note()));
+    verify(journal, never()).record(any(), any());
+  }
+
+  @Test
+  void saveNeverOverwritesAnExistingNote() {
+    Note bobs = note(5L, "bob", "bob's note");
+    Note request = note(5L, null, "alice's text");
+
+    Note saved = service.save(request);
+
+    assertNull(saved.getId(), "the client's id must not reach the insert");
+    assertEquals("alice", saved.getOwner());
+    assertEquals("alice's text", saved.getText());
+    verify(repo, never()).save(argThat(n -> Long.valueOf(5L).equals(n.getId())));
+    verify(passageService).prepare(isNull(), eq("alice's text"), eq(true));
+    assertEquals("bob", bobs.getOwner());
+    assertEquals("bob's note", bobs.getText());
+  }
+
+  @Test
+  void reembedWritesTheNoteAndFreshPassagesInOneTransaction() {
+    Note note = note(3L, "alice", "text");
+    note.setEmbeddingModel("openai:text-embedding-3-small");
+
+    assertTrue(service.reembed(note));
+
+    assertEquals("local", note.getEmbeddingModel());
+    verify(passageService).prepare(eq(3L), eq("text"), eq(false));
+    verify(passageService).write(eq(note), any());
+    verify(passageService, never()).delete(any());
+    verify(journal).record(note, NoteChange.TEXT);
+  }
+
+  @Test
+  void failedReembedKeepsTheOldVector() {
+    when(embeddingStore.embed(any())).thenReturn(new float[0]);
+    Note note = note(3L, "alice", "text");
+    note.setEmbeddingModel("openai:text-embedding-3-small");
+
+    assertFalse(service.reembed(note));
+
+    assertEquals("openai:text-embedding-3-small", note.getEmbeddingModel());
+    verify(repo, never()).save(any());
+    verify(passageService, never()).prepare(any(), any(), anyBoolean());
+  }
+}
@@ -0,0 +1,131 @@
+package com.thynkah.service;
+
+import com.thynkah.model.Note;
+import com.thynkah.model.NoteChange;
+import com.thynkah.repository.NoteChangeRepository;
+import com.thynkah.repository.NoteRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class NoteSyncServiceTest {
+
+  private NoteRepository notes;
+  private NoteChangeRepository changes;
+  private ChangeJournal journal;
+  private NoteSyncService sync;
+
+  @BeforeEach
+  void setUp() {
+    notes = mock(NoteRepository.class);
+    changes = mock(NoteChangeRepository.class);
+    journal = mock(ChangeJournal.class);
+    OwnerContext owners = mock(OwnerContext.class);
+    when(owners.current()).thenReturn("alice");
+    sync = new NoteSyncService(notes, changes, journal, owners, 500);
+  }
+
+  private static Note note(long id, String text) {
+    Note note = new Note();
+    ReflectionTestUtils.setField(note, "id", id);
+    note.setOwner("alice");
+    note.setText(text);
+    return note;
+  }
+
+  private static NoteChange change(long seq, long noteId, String op) {
+    NoteChange c = new NoteChange(noteId, "alice", op, "node-b");
+    ReflectionTestUtils.setField(c, "seq", seq);
+    return c;
+  }
+
+  private static List<Long> ids(NoteSyncService.Batch batch) {
+    return batch.getNotes().stream().map(NoteSyncService.SyncedNote::getId).collect(Collectors.toList());
+  }
+
+  @Test
+  void bootstrapPagesByIdThenHandsOverToTheJournalAtThePinnedSeq() {
+    when(journal.stableSeq()).thenReturn(10L);
+    when(notes.findByOwnerAndIdGreaterThanOrderByIdAsc(eq("alice"), eq(0L), any()))
+        .thenReturn(List.of(note(1, "one"), note(2, "two")));
+    when(notes.findByOwnerAndIdGreaterThanOrderByIdAsc(eq("alice"), eq(2L), any()))
+        .thenReturn(List.of(note(3, "three")));
+
+    NoteSyncService.Batch first = sync.changesSince(null, 2);
+    assertTrue(first.isReset());
+    assertTrue(first.isMore());
+    assertEquals(List.of(1L, 2L), ids(first));
+    assertEquals("10.2", first.getCursor());
+
+    // notes changed while the bootstrap was paging: the journal moved on
+    when(journal.stableSeq()).thenReturn(12L);
+    when(journal.version("alice")).thenReturn(12L);
+
+    NoteSyncService.Batch last = sync.changesSince(first.getCursor(), 2);
+    assertFalse(last.isReset());
+    assertEquals(List.of(3L), ids(last));
+    assertEquals("10", last.getCursor(), "the delta must start where the bootstrap was pinned");
+
+    // ... so the changes made meanwhile are replayed from the journal
+    when(journal.covers(10L)).thenReturn(true);
+    when(changes.findForOwner(eq("alice"), eq(10L), eq(12L), any()))
+        .thenReturn(List.of(change(11, 1, NoteChange.TEXT), change(12, 2, NoteChange.DELETE)));
+    when(notes.findAllById(any())).thenReturn(List.of(note(1, "one, edited")));
+
+    NoteSyncService.Batch delta = sync.changesSince(last.getCursor(), 2);
+    assertFalse(delta.isReset());
+    assertEquals(List.of(1L), ids(delta));
+    assertEquals("one, edited", delta.getNotes().get(0).getText());
+    assertEquals(List.of(2L), delta.getDeleted());
+    assertEquals("12", delta.getCursor());
+  }
+
+  @Test
+  void upToDateCursorGetsAnEmptyBatchWithoutQueries() {
+    when(journal.stableSeq()).thenReturn(10L);
+    when(journal.version("alice")).thenReturn(8L);
+
+    NoteSyncService.Batch batch = sync.changesSince("10", 100);
+
+    assertFalse(batch.isMore());
+    assertTrue(batch.getNotes().isEmpty());
+    assertTrue(batch.getDeleted().isEmpty());
+    assertEquals("10", batch.getCursor());
+    verify(changes, never()).findForOwner(any(), anyLong(), anyLong(), any());
+  }
+
+  @Test
+  void cursorOutsideJournalRetentionRestartsTheBootstrap() {
+    when(journal.stableSeq()).thenReturn(50L);
+    when(journal.version("alice")).thenReturn(50L);
+    when(journal.covers(3L)).thenReturn(false);
+    when(notes.findByOwnerAndIdGreaterThanOrderByIdAsc(eq("alice"), eq(0L), any()))
+        .thenReturn(List.of(note(1, "one")));
+
+    NoteSyncService.Batch batch = sync.changesSince("3", 100);
+
+    assertTrue(batch.isReset());
+    assertEquals(List.of(1L), ids(batch));
+    assertEquals("50", batch.getCursor());
+  }
+
+  @Test
+  void unreadableCursorRestartsTheBootstrap() {
+    when(journal.stableSeq()).thenReturn(5L);
+    when(notes.findByOwnerAndIdGreaterThanOrderByIdAsc(eq("alice"), eq(0L), any())).thenReturn(List.of());
+
+    NoteSyncService.Batch batch = sync.changesSince("not-a-cursor", 100);
+
+    assertTrue(batch.isReset());
+    assertEquals("5", batch.getCursor());
+  }
+}
@@ -0,0 +1,94 @@
+package com.thynkah.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PassageChunkerTest {
+
+  // ~15 estimated tokens per sentence
+  private static String sentences(int from, int count) {
+    StringBuilder sb = new StringBuilder();
+    for (int i = from; i < from + count; i++) {
+      if (sb.length() > 0) sb.append(' ');
+      sb.append("Sentence number ").append(i).append(" talks about the garden again.");
+    }
+    return sb.toString();
+  }
+
+  @Test
+  void shortTextIsOnePassage() {
+    String text = sentences(0, 3);
+    List<PassageChunker.Chunk> chunks = PassageChunker.chunk(text, 200, 40);
+    assertEquals(1, chunks.size());
+    assertEquals(0, chunks.get(0).start);
+    assertEquals(text.length(), chunks.get(0).end);
+    assertEquals(text, chunks.get(0).text);
+  }
+
+  @Test
+  void passagesStartAndEndOnSentenceBoundaries() {
+    String text = sentences(0, 40);
+    List<PassageChunker.Chunk> chunks = PassageChunker.chunk(text, 50, 0);
+    assertTrue(chunks.size() > 1);
+    assertEquals(0, chunks.get(0).start);
+    assertEquals(text.length(), chunks.get(chunks.size() - 1).end);
+    for (PassageChunker.Chunk c : chunks) {
+      assertEquals(text.substring(c.start, c.end), c.text);
+      assertTrue(c.text.startsWith("Sentence number "), c.text);
+      assertTrue(c.text.endsWith("."), c.text);
+      assertTrue(TokenEstimator.estimate(c.text) <= 50, c.text);
+    }
+  }
+
+  @Test
+  void withoutOverlapPassagesFollowEachOther() {
+    List<PassageChunker.Chunk> chunks = PassageChunker.chunk(sentences(0, 40), 50, 0);
+    for (int i = 1; i < chunks.size(); i++) {
+      assertTrue(chunks.get(i).start >= chunks.get(i - 1).end);
+    }
+  }
+
+  @Test
+  void overlapRereadsTheLastSentencesOfThePreviousPassage() {
+    String text = sentences(0, 40);
+    List<PassageChunker.Chunk> chunks = PassageChunker.chunk(text, 50, 20);
+    assertTrue(chunks.size() > 1);
+    for (int i = 1; i < chunks.size(); i++) {
+      PassageChunker.Chunk prev = chunks.get(i - 1);
+      PassageChunker.Chunk next = chunks.get(i);
+      assertTrue(next.start > prev.start, "passages must make progress");
+      assertTrue(next.start < prev.end, "expected overlap between passages " + (i - 1) + " and " + i);
+      assertTrue(TokenEstimator.estimate(text.substring(next.start, prev.end)) <= 20);
+    }
+  }
+
+  @Test
+  void paragraphBreakEndsAPassageWithoutOverlap() {
+    String first = sentences(0, 3);
+    String second = sentences(100, 3);
+    String text = first + "\n\n" + second;
+    List<PassageChunker.Chunk> chunks = PassageChunker.chunk(text, 50, 20);
+    assertEquals(2, chunks.size());
+    assertEquals(first, chunks.get(0).text);
+    assertEquals(second, chunks.get(1).text);
+  }
+
+  @Test
+  void longSentenceIsCutAtWordBoundaries() {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 400; i++) {
+      sb.append("word ");
+    }
+    String text = sb.toString().trim() + ".";
+    List<PassageChunker.Chunk> chunks = PassageChunker.chunk(text, 50, 0);
+    assertTrue(chunks.size() > 1);
+    for (PassageChunker.Chunk c : chunks) {
+      assertTrue(TokenEstimator.estimate(c.text) <= 50, c.text);
+      assertFalse(c.text.startsWith(" ") || c.text.endsWith(" "));
+      assertTrue(c.text.startsWith("word"));
+    }
+  }
+}
@@ -0,0 +1,178 @@
+package com.thynkah.service;
+
+import com.thynkah.model.Note;
+import com.thynkah.model.NotePassage;
+import com.thynkah.repository.NotePassageRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+class PassageServiceTest {
+
+  private NotePassageRepository repo;
+  private EmbeddingStore embeddingStore;
+  private PassageService service;
+  private List<NotePassage> saved;
+
+  @BeforeEach
+  void setUp() {
+    repo = mock(NotePassageRepository.class);
+    embeddingStore = mock(EmbeddingStore.class);
+    service = new PassageService(repo, embeddingStore, new AiMetrics(new SimpleMeterRegistry()));
+    ReflectionTestUtils.setField(service, "minNoteTokens", 100);
+    ReflectionTestUtils.setField(service, "sizeTokens", 40);
+    ReflectionTestUtils.setField(service, "overlapTokens", 10);
+
+    saved = new ArrayList<>();
+    when(repo.saveAll(anyList())).thenAnswer(inv -> {
+      List<NotePassage> passages = inv.getArgument(0);
+      saved = new ArrayList<>(passages);
+      return passages;
+    });
+    when(embeddingStore.embedAll(anyList())).thenAnswer(inv -> {
+      List<float[]> out = new ArrayList<>();
+      for (Object ignored : (List<?>) inv.getArgument(0)) {
+        out.add(new float[] {1f, 0f});
+      }
+      return out;
+    });
+  }
+
+  private static Note note(long id, String text) {
+    Note note = new Note();
+    ReflectionTestUtils.setField(note, "id", id);
+    note.setText(text);
+    return note;
+  }
+
+  private static String longText() {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 30; i++) {
+      sb.append("Sentence number ").append(i).append(" talks about the garden again. ");
+    }
+    return sb.toString().trim();
+  }
+
+  /** Re-chunks the note; returns the passages written for it. */
+  private List<NotePassage> reindex(Note note) {
+    saved = new ArrayList<>();
+    service.write(note, service.prepare(note.getId(), note.getText(), true));
+    return saved;
+  }
+
+  @Test
+  void noteBelowMinNoteTokensHasNoPassages() {
+    when(repo.findByNoteIdOrderByOrdinalAsc(1L)).thenReturn(new ArrayList<>());
+
+    assertTrue(reindex(note(1L, "A short note about the garden.")).isEmpty());
+    verify(embeddingStore, never()).embedAll(anyList());
+    verify(repo, never()).saveAll(anyList());
+  }
+
+  @Test
+  void noteShrunkBelowMinNoteTokensDropsItsPassages() {
+    NotePassage old = new NotePassage();
+    List<NotePassage> existing = new ArrayList<>(List.of(old));
+    when(repo.findByNoteIdOrderByOrdinalAsc(1L)).thenReturn(existing);
+
+    assertTrue(reindex(note(1L, "Now short.")).isEmpty());
+    verify(repo).deleteAll(existing);
+  }
+
+  @Test
+  void longNoteIsSplitIntoEmbeddedPassages() {
+    when(repo.findByNoteIdOrderByOrdinalAsc(1L)).thenReturn(new ArrayList<>());
+    String text = longText();
+
+    List<NotePassage> passages = reindex(note(1L, text));
+
+    assertTrue(passages.size() > 1);
+    for (int i = 0; i < passages.size(); i++) {
+      NotePassage p = passages.get(i);
+      assertEquals(i, p.getOrdinal());
+      assertEquals(1L, (long) p.getNoteId());
+      assertEquals(text.substring(p.getStartOffset(), p.getEndOffset()), p.getText());
+      assertNotNull(p.getEmbedding());
+    }
+    verify(repo, never()).deleteAll(any());
+  }
+
+  @Test
+  void unchangedPassagesKeepTheirEmbedding() {
+    String text = longText();
+    when(repo.findByNoteIdOrderByOrdinalAsc(1L)).thenReturn(new ArrayList<>());
+    List<NotePassage> first = reindex(note(1L, text));
+
+    when(repo.findByNoteIdOrderByOrdinalAsc(1L)).thenReturn(new ArrayList<>(first));
+    clearInvocations(embeddingStore);
+    List<NotePassage> second = reindex(note(1L, text));
+
+    verify(embeddingStore, never()).embedAll(anyList());
+    assertEquals(first.size(), second.size());
+  }
+
+  @Test
+  void editedPassageIsTheOnlyOneReEmbedded() {
+    String text = longText();
+    when(repo.findByNoteIdOrderByOrdinalAsc(1L)).thenReturn(new ArrayList<>());
+    List<NotePassage> first = reindex(note(1L, text));
+
+    when(repo.findByNoteIdOrderByOrdinalAsc(1L)).thenReturn(new ArrayList<>(first));
+    clearInvocations(embeddingStore);
+    reindex(note(1L, text + " One more sentence about the tomatoes at the very end."));
+
+    verify(embeddingStore).embedAll(List.of(saved.get(saved.size() - 1).getText()));
+  }
+
+  @Test
+  void prepareEmbedsWithoutWriting() {
+    NotePassage old = new NotePassage();
+    when(repo.findByNoteIdOrderByOrdinalAsc(1L)).thenReturn(new ArrayList<>(List.of(old)));
+
+    service.prepare(1L, longText(), true);
+
+    verify(embeddingStore).embedAll(anyList());
+    verify(repo, never()).deleteAll(any());
+    verify(repo, never()).saveAll(anyList());
+  }
+
+  @Test
+  void newNoteGetsItsIdWhenWritten() {
+    PassageService.Prepared prepared = service.prepare(null, longText(), true);
+    verify(repo, never()).findByNoteIdOrderByOrdinalAsc(any());
+
+    saved = new ArrayList<>();
+    service.write(note(7L, longText()), prepared);
+
+    assertFalse(saved.isEmpty());
+    for (NotePassage p : saved) {
+      assertEquals(7L, (long) p.getNoteId());
+    }
+  }
+
+  @Test
+  void withoutReuseEveryPassageIsReEmbeddedAndTheOldOnesDropped() {
+    String text = longText();
+    when(repo.findByNoteIdOrderByOrdinalAsc(1L)).thenReturn(new ArrayList<>());
+    List<NotePassage> first = reindex(note(1L, text));
+
+    when(repo.findByNoteIdOrderByOrdinalAsc(1L)).thenReturn(new ArrayList<>(first));
+    clearInvocations(embeddingStore);
+    saved = new ArrayList<>();
+    service.write(note(1L, text), service.prepare(1L, text, false));
+
+    verify(embeddingStore).embedAll(first.stream().map(NotePassage::getText).collect(Collectors.toList()));
+    verify(repo).deleteAll(first);
+    assertEquals(first.size(), saved.size());
+  }
+}
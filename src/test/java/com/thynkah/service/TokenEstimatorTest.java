@@ -0,0 +1,37 @@
+package com.thynkah.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenEstimatorTest {
+
+  @Test
+  void emptyTextHasNoTokens() {
+    assertEquals(0, TokenEstimator.estimate(null));
+    assertEquals(0, TokenEstimator.estimate(""));
+    assertEquals(0, TokenEstimator.estimate("   \n\t"));
+  }
+
+  @Test
+  void wordsCountOneTokenPerFourCharacters() {
+    assertEquals(1, TokenEstimator.estimate("the"));
+    assertEquals(1, TokenEstimator.estimate("note"));
+    assertEquals(2, TokenEstimator.estimate("notes"));
+    assertEquals(3, TokenEstimator.estimate("a cat sat"));
+  }
+
+  @Test
+  void punctuationAndNonAsciiCountAsOwnTokens() {
+    assertEquals(2, TokenEstimator.estimate("hi!"));
+    assertEquals(3, TokenEstimator.estimate("a, b"));
+    assertEquals(3, TokenEstimator.estimate("été"));
+  }
+
+  @Test
+  void errsOnTheHighSideForEnglishProse() {
+    String text = "Yesterday I repotted the tomatoes and watered the herbs before the rain came in.";
+    // about 4 characters per token, so never less than that
+    assertTrue(TokenEstimator.estimate(text) >= text.length() / 4);
+  }
+}
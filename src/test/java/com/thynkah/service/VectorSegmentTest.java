@@ -0,0 +1,111 @@
+package com.thynkah.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VectorSegmentTest {
+
+  @TempDir
+  Path dir;
+
+  static float[] floats(FloatBuffer v) {
+    float[] out = new float[v.limit()];
+    for (int i = 0; i < out.length; i++) {
+      out[i] = v.get(i);
+    }
+    return out;
+  }
+
+  static VectorShard.Entry entry(long id, float... vector) {
+    return new VectorShard.Entry(id, LocalDateTime.of(2026, 3, 1, 9, 30, 15, 123_000_000), "model-a", vector,
+        List.of(new VectorShard.Passage(0, 12, new float[] {0.5f, -0.5f})));
+  }
+
+  @Test
+  void roundTripsOwnerDimsEntriesAndPassages() throws IOException {
+    Path file = dir.resolve("owner.seg");
+    VectorShard.Entry a = entry(1, 0.1f, 0.2f, 0.3f);
+    VectorShard.Entry b = new VectorShard.Entry(2, null, null, new float[0], null);
+    VectorSegment.write(file, "alice@example.com", 3, List.of(a, b), null);
+
+    VectorSegment seg = VectorSegment.open(file);
+    assertEquals("alice@example.com", seg.owner());
+    assertEquals(3, seg.dims());
+    assertEquals(Files.size(file), seg.mappedBytes());
+    assertEquals("alice@example.com", VectorSegment.readOwner(file));
+
+    Map<Long, VectorShard.Entry> byId = new HashMap<>();
+    seg.entries().forEach(e -> byId.put(e.getNoteId(), e));
+    assertEquals(2, byId.size());
+
+    VectorShard.Entry a2 = byId.get(1L);
+    assertEquals(a.getCreatedAt(), a2.getCreatedAt());
+    assertEquals("model-a", a2.getModel());
+    assertArrayEquals(new float[] {0.1f, 0.2f, 0.3f}, floats(a2.getVector()));
+    assertEquals(1, a2.getPassages().size());
+    assertEquals(0, a2.getPassages().get(0).getStart());
+    assertEquals(12, a2.getPassages().get(0).getEnd());
+    assertArrayEquals(new float[] {0.5f, -0.5f}, floats(a2.getPassages().get(0).getVector()));
+
+    VectorShard.Entry b2 = byId.get(2L);
+    assertNull(b2.getCreatedAt());
+    assertNull(b2.getModel());
+    assertFalse(b2.hasVector());
+    assertTrue(b2.getPassages().isEmpty());
+  }
+
+  @Test
+  void roundTripsTheGraphBlock() throws IOException {
+    Path file = dir.resolve("graph.seg");
+    ByteBuffer graph = ByteBuffer.wrap(new byte[] {1, 2, 3, 4, 5});
+    VectorSegment.write(file, "bob", 2, List.of(entry(7, 1f, 0f)), graph);
+
+    ByteBuffer read = VectorSegment.open(file).graph();
+    byte[] bytes = new byte[read.remaining()];
+    read.get(bytes);
+    assertArrayEquals(new byte[] {1, 2, 3, 4, 5}, bytes);
+  }
+
+  @Test
+  void rejectsACorruptedBody() throws IOException {
+    Path file = dir.resolve("corrupt.seg");
+    VectorSegment.write(file, "carol", 3, List.of(entry(1, 0.1f, 0.2f, 0.3f)), null);
+    byte[] bytes = Files.readAllBytes(file);
+    bytes[bytes.length - 5] ^= 0x40; // flip a bit inside a vector
+    Files.write(file, bytes);
+
+    IOException e = assertThrows(IOException.class, () -> VectorSegment.open(file));
+    assertTrue(e.getMessage().contains("checksum"), e.getMessage());
+  }
+
+  @Test
+  void rejectsATruncatedFile() throws IOException {
+    Path file = dir.resolve("short.seg");
+    VectorSegment.write(file, "dave", 3, List.of(entry(1, 0.1f, 0.2f, 0.3f)), null);
+    byte[] bytes = Files.readAllBytes(file);
+    Files.write(file, java.util.Arrays.copyOf(bytes, bytes.length - 8));
+
+    assertThrows(IOException.class, () -> VectorSegment.open(file));
+  }
+
+  @Test
+  void rejectsOtherFiles() throws IOException {
+    Path file = dir.resolve("other.seg");
+    Files.write(file, new byte[64]);
+
+    assertThrows(IOException.class, () -> VectorSegment.open(file));
+    assertThrows(IOException.class, () -> VectorSegment.readOwner(file));
+  }
+}
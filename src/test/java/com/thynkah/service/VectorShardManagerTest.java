@@ -0,0 +1,107 @@
+package com.thynkah.service;
+
+import com.thynkah.model.Note;
+import com.thynkah.repository.NoteRepository;
+import com.thynkah.repository.NoteVector;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class VectorShardManagerTest {
+
+  private NoteRepository noteRepo;
+  private PassageService passageService;
+  private SimpleMeterRegistry registry;
+  private VectorShardManager shards;
+
+  @BeforeEach
+  void setUp() {
+    noteRepo = mock(NoteRepository.class);
+    passageService = mock(PassageService.class);
+    registry = new SimpleMeterRegistry();
+    shards = new VectorShardManager(noteRepo, passageService, mock(VectorSnapshotStore.class),
+        new AiMetrics(registry), 256, 0, 100);
+  }
+
+  private static NoteVector row(long id) {
+    NoteVector row = mock(NoteVector.class);
+    when(row.getId()).thenReturn(id);
+    when(row.getEmbedding()).thenReturn("[1.0, 0.0]");
+    return row;
+  }
+
+  private static Note note(long id, String owner) {
+    Note note = new Note();
+    ReflectionTestUtils.setField(note, "id", id);
+    note.setOwner(owner);
+    note.setEmbedding("[0.0, 1.0]");
+    return note;
+  }
+
+  private static Set<Long> ids(VectorShard shard) {
+    return shard.entries().stream().map(VectorShard.Entry::getNoteId).collect(Collectors.toSet());
+  }
+
+  @Test
+  void eachOwnerLoadsOnlyTheirOwnVectors() {
+    List<NoteVector> alice = List.of(row(1), row(2));
+    List<NoteVector> bob = List.of(row(3));
+    when(noteRepo.findVectorsByOwner("alice")).thenReturn(alice);
+    when(noteRepo.findVectorsByOwner("bob")).thenReturn(bob);
+
+    assertEquals(Set.of(1L, 2L), ids(shards.shard("alice")));
+    assertEquals(Set.of(3L), ids(shards.shard("bob")));
+    verify(passageService).loadVectors("alice");
+    verify(passageService).loadVectors("bob");
+  }
+
+  @Test
+  void writesReachOnlyTheNoteOwnersShard() {
+    List<NoteVector> aliceRows = List.of(row(1));
+    List<NoteVector> bobRows = List.of(row(2));
+    when(noteRepo.findVectorsByOwner("alice")).thenReturn(aliceRows);
+    when(noteRepo.findVectorsByOwner("bob")).thenReturn(bobRows);
+    VectorShard alice = shards.shard("alice");
+    VectorShard bob = shards.shard("bob");
+
+    shards.upsert(note(5, "bob"), List.of());
+    shards.remove("bob", 1L); // alice's note, removed under the wrong owner
+
+    assertEquals(Set.of(1L), ids(alice));
+    assertEquals(Set.of(2L, 5L), ids(bob));
+  }
+
+  @Test
+  void writesDoNotLoadAShard() {
+    shards.upsert(note(7, "carol"), List.of());
+    shards.remove("carol", 8L);
+    verify(noteRepo, never()).findVectorsByOwner("carol");
+
+    List<NoteVector> rows = List.of(row(7));
+    when(noteRepo.findVectorsByOwner("carol")).thenReturn(rows);
+    assertEquals(Set.of(7L), ids(shards.shard("carol")));
+    shards.shard("carol");
+    verify(noteRepo, times(1)).findVectorsByOwner("carol");
+  }
+
+  @Test
+  void indexSizeCountsTheNotesOfEveryResidentShard() {
+    List<NoteVector> aliceRows = List.of(row(1), row(2));
+    List<NoteVector> bobRows = List.of(row(3));
+    when(noteRepo.findVectorsByOwner("alice")).thenReturn(aliceRows);
+    when(noteRepo.findVectorsByOwner("bob")).thenReturn(bobRows);
+    shards.shard("alice");
+    shards.shard("bob");
+    shards.upsert(note(4, "bob"), List.of());
+
+    assertEquals(4.0, registry.get("thynkah.index.size").gauge().value(), 0.0);
+  }
+}
@@ -0,0 +1,47 @@
+package com.thynkah.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VectorSnapshotStoreTest {
+
+  @TempDir
+  Path dir;
+
+  @Test
+  void secondInstanceOnTheSameDirectoryFailsToStart() {
+    VectorSnapshotStore first = new VectorSnapshotStore(dir.toString(), 1000);
+    first.lock();
+    try {
+      VectorSnapshotStore second = new VectorSnapshotStore(dir.toString(), 1000);
+      assertThrows(IllegalStateException.class, second::lock);
+    } finally {
+      first.unlock();
+    }
+  }
+
+  @Test
+  void directoryCanBeTakenOverOnceReleased() {
+    VectorSnapshotStore first = new VectorSnapshotStore(dir.toString(), 1000);
+    first.lock();
+    first.unlock();
+
+    VectorSnapshotStore next = new VectorSnapshotStore(dir.toString(), 1000);
+    next.lock();
+    next.writeCursor(7);
+    assertEquals(7, next.readCursor());
+    next.unlock();
+  }
+
+  @Test
+  void disabledStoreTakesNoLock() {
+    VectorSnapshotStore store = new VectorSnapshotStore("", 1000);
+    store.lock();
+    assertFalse(store.enabled());
+    assertEquals(-1, store.readCursor());
+  }
+}
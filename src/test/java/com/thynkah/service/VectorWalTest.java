@@ -0,0 +1,87 @@
+package com.thynkah.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static com.thynkah.service.VectorSegmentTest.entry;
+import static com.thynkah.service.VectorSegmentTest.floats;
+import static org.junit.jupiter.api.Assertions.*;
+
+class VectorWalTest {
+
+  @TempDir
+  Path dir;
+
+  private static VectorShard.Entry get(VectorShard shard, long noteId) {
+    return shard.entries().stream().filter(e -> e.getNoteId() == noteId).findFirst().orElse(null);
+  }
+
+  @Test
+  void replaysPutsAndRemovesInOrder() throws IOException {
+    Path wal = dir.resolve("owner.wal");
+    VectorWal.appendPut(wal, entry(1, 1f, 0f));
+    VectorWal.appendPut(wal, entry(2, 0f, 1f));
+    VectorWal.appendPut(wal, entry(1, 0.6f, 0.8f)); // replaces the first put
+    VectorWal.appendRemove(wal, 2);
+
+    VectorShard shard = new VectorShard("owner");
+    shard.put(entry(3, 1f, 1f));
+    assertEquals(4, VectorWal.replay(wal, shard));
+
+    assertEquals(2, shard.size());
+    assertNull(get(shard, 2));
+    assertArrayEquals(new float[] {0.6f, 0.8f}, floats(get(shard, 1).getVector()));
+    assertNotNull(get(shard, 3));
+  }
+
+  @Test
+  void missingLogReplaysNothing() throws IOException {
+    assertEquals(0, VectorWal.replay(dir.resolve("none.wal"), new VectorShard("owner")));
+  }
+
+  @Test
+  void tornTailIsTruncated() throws IOException {
+    Path wal = dir.resolve("torn.wal");
+    VectorWal.appendPut(wal, entry(1, 1f, 0f));
+    long intact = Files.size(wal);
+    VectorWal.appendPut(wal, entry(2, 0f, 1f));
+    byte[] bytes = Files.readAllBytes(wal);
+    Files.write(wal, Arrays.copyOf(bytes, bytes.length - 3)); // crash mid-append
+
+    VectorShard shard = new VectorShard("owner");
+    assertEquals(1, VectorWal.replay(wal, shard));
+    assertNotNull(get(shard, 1));
+    assertNull(get(shard, 2));
+    assertEquals(intact, Files.size(wal));
+
+    // appends after the truncation are replayed again
+    VectorWal.appendRemove(wal, 1);
+    VectorShard again = new VectorShard("owner");
+    assertEquals(2, VectorWal.replay(wal, again));
+    assertEquals(0, again.size());
+  }
+
+  @Test
+  void corruptRecordEndsTheLog() throws IOException {
+    Path wal = dir.resolve("corrupt.wal");
+    VectorWal.appendPut(wal, entry(1, 1f, 0f));
+    long intact = Files.size(wal);
+    VectorWal.appendPut(wal, entry(2, 0f, 1f));
+    VectorWal.appendPut(wal, entry(3, 1f, 1f));
+    byte[] bytes = Files.readAllBytes(wal);
+    bytes[(int) intact + 12] ^= 0x01; // inside the second record's payload
+    Files.write(wal, bytes);
+
+    VectorShard shard = new VectorShard("owner");
+    assertEquals(1, VectorWal.replay(wal, shard));
+    assertNotNull(get(shard, 1));
+    assertNull(get(shard, 2));
+    assertNull(get(shard, 3)); // records after a corrupt one are not trusted either
+    assertEquals(intact, Files.size(wal));
+  }
+}